@@ -0,0 +1,125 @@
+/*
+ Copyright 2016 Urban Airship and Contributors
+*/
+
+package com.urbanairship.extension.analytics;
+
+import com.google.android.gms.analytics.Tracker;
+
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Enforces the allocation guarantees of the hot paths: collecting the properties of a hit, naming
+ * its event, and dropping a filtered or suppressed hit allocate nothing once warmed up, apart from
+ * the iterator over the hit map. Counts the bytes allocated by the calling thread with
+ * <code>com.sun.management.ThreadMXBean</code>, and exits with an error if a path allocates more
+ * than {@link #MAX_BYTES_PER_HIT} per hit on average.
+ *
+ * Run by the <code>allocationCheck</code> task, which the <code>check</code> task depends on.
+ */
+public final class AllocationCheck {
+
+    /**
+     * Room for the entry set iterator of the hit map, which escape analysis may or may not remove.
+     */
+    static final long MAX_BYTES_PER_HIT = 64;
+
+    private static final String[] HIT_TYPES = { "screenview", "event", "timing" };
+    private static final int EXTRA_FIELDS = 32;
+    private static final int WARMUP_HITS = 200000;
+    private static final int MEASURED_HITS = 100000;
+
+    private AllocationCheck() {}
+
+    public static void main(String[] args) {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)
+                || !((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+            System.out.println("Thread allocation counting is not supported by this JVM, skipping the check.");
+            return;
+        }
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        final GoogleAnalyticsTracker tracker = newTracker();
+        tracker.setScreenName("BenchmarkScreen");
+
+        final GoogleAnalyticsTracker filteredTracker = newTracker()
+                .setHitFilter(HitFilter.newBuilder()
+                        .drop(HitFilter.rule("all").present("&t"))
+                        .build());
+
+        final GoogleAnalyticsTracker coalescingTracker = newTracker()
+                .enableCoalescing(CoalescingPolicy.newBuilder()
+                        .setWindow(1, TimeUnit.DAYS)
+                        .build());
+
+        boolean failed = false;
+        for (String hitType : HIT_TYPES) {
+            final Map<String, String> hit = BenchmarkHits.create(hitType, EXTRA_FIELDS);
+
+            failed |= !check(threads, hitType + " collectProperties", new Runnable() {
+                @Override
+                public void run() {
+                    PropertyBuffer properties = PropertyBuffer.acquire();
+                    tracker.collectProperties(hit, properties, false);
+                    properties.clear();
+                }
+            });
+
+            failed |= !check(threads, hitType + " getEventName", new Runnable() {
+                @Override
+                public void run() {
+                    tracker.getEventName(hit);
+                }
+            });
+
+            failed |= !check(threads, hitType + " filtered send", new Runnable() {
+                @Override
+                public void run() {
+                    filteredTracker.send(hit);
+                }
+            });
+
+            failed |= !check(threads, hitType + " suppressed send", new Runnable() {
+                @Override
+                public void run() {
+                    coalescingTracker.send(hit);
+                }
+            });
+        }
+
+        coalescingTracker.shutdown();
+        if (failed) {
+            System.exit(1);
+        }
+    }
+
+    private static GoogleAnalyticsTracker newTracker() {
+        return new GoogleAnalyticsTracker(new Tracker("UA-00000-1"))
+                .setGoogleAnalyticsEnabled(false)
+                .setUrbanAirshipEnabled(true)
+                .setCustomEventSink(new CountingEventSink());
+    }
+
+    private static boolean check(com.sun.management.ThreadMXBean threads, String name, Runnable path) {
+        for (int i = 0; i < WARMUP_HITS; i++) {
+            path.run();
+        }
+
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < MEASURED_HITS; i++) {
+            path.run();
+        }
+        long bytesPerHit = (threads.getThreadAllocatedBytes(threadId) - before) / MEASURED_HITS;
+
+        boolean passed = bytesPerHit <= MAX_BYTES_PER_HIT;
+        System.out.println(String.format(Locale.US, "%-32s %4d bytes/hit %s", name, bytesPerHit, passed ? "ok" : "FAILED"));
+        return passed;
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ Copyright 2016 Urban Airship and Contributors
+*/
+
+package com.urbanairship.extension.analytics;
+
+import com.urbanairship.analytics.CustomEvent;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Hit maps and extenders shaped like the ones built by the GA HitBuilders.
+ */
+final class BenchmarkHits {
+
+    private BenchmarkHits() {}
+
+    /**
+     * Creates a hit.
+     *
+     * @param hitType The hit type, one of <code>screenview</code>, <code>event</code> or <code>timing</code>.
+     * @param extraFields The number of custom dimensions added on top of the hit type fields.
+     * @return The hit.
+     */
+    static Map<String, String> create(String hitType, int extraFields) {
+        Map<String, String> hit = new HashMap<>();
+        hit.put("&t", hitType);
+
+        switch (hitType) {
+            case "event":
+                hit.put("&ec", "category");
+                hit.put("&ea", "action");
+                hit.put("&el", "label");
+                hit.put("&ev", "5");
+                break;
+
+            case "timing":
+                hit.put("&utc", "category");
+                hit.put("&utv", "variable");
+                hit.put("&utl", "label");
+                hit.put("&utt", "125");
+                break;
+
+            default:
+                break;
+        }
+
+        for (int i = 1; i <= extraFields; i++) {
+            hit.put("&cd" + i, "dimension" + i);
+        }
+
+        return hit;
+    }
+
+    /**
+     * Creates an extender that adds a single property.
+     *
+     * @param index The extender index, used for the property name.
+     * @return The extender.
+     */
+    static GoogleAnalyticsTracker.Extender extender(int index) {
+        final String name = "extender" + index;
+        return new GoogleAnalyticsTracker.Extender() {
+            @Override
+            public void extend(CustomEvent.Builder builder, Map<String, String> json, GoogleAnalyticsTracker tracker) {
+                builder.addProperty(name, json.get("&t"));
+            }
+        };
+    }
+}
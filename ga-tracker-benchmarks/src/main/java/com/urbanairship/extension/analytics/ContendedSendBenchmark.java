@@ -0,0 +1,100 @@
+/*
+ Copyright 2016 Urban Airship and Contributors
+*/
+
+package com.urbanairship.extension.analytics;
+
+import com.google.android.gms.analytics.Tracker;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link GoogleAnalyticsTracker#send(Map)} on a tracker shared by several sending threads.
+ * The benchmark thread sends while <code>threads - 1</code> background threads send the same hit to
+ * the same tracker, so the thread count is a parameter like the others, e.g.
+ * <code>-p threads=2,16</code>, and the score is the throughput of one of the contending threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ContendedSendBenchmark {
+
+    @Param({"screenview", "event"})
+    public String hitType;
+
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+
+    @Param({"false", "true"})
+    public boolean asyncDispatch;
+
+    private GoogleAnalyticsTracker tracker;
+    private Map<String, String> hit;
+    private final List<Thread> senders = new ArrayList<>();
+    private volatile boolean running;
+
+    @Setup
+    public void setup() {
+        tracker = new GoogleAnalyticsTracker(new Tracker("UA-00000-1"))
+                .setGoogleAnalyticsEnabled(false)
+                .setUrbanAirshipEnabled(true)
+                .setCustomEventSink(new CountingEventSink())
+                .addExtender(BenchmarkHits.extender(0));
+        tracker.setScreenName("BenchmarkScreen");
+
+        if (asyncDispatch) {
+            tracker.enableAsyncDispatch(4096, 64, OverflowPolicy.DROP_NEWEST);
+        }
+
+        hit = BenchmarkHits.create(hitType, 8);
+
+        running = true;
+        for (int i = 1; i < threads; i++) {
+            Thread sender = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    while (running) {
+                        tracker.send(hit);
+                    }
+                }
+            }, "ContendedSendBenchmark-" + i);
+            sender.setDaemon(true);
+            sender.start();
+            senders.add(sender);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        running = false;
+        for (Thread sender : senders) {
+            sender.join();
+        }
+        senders.clear();
+        tracker.shutdown();
+    }
+
+    @Benchmark
+    public void send() {
+        tracker.send(hit);
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ Copyright 2016 Urban Airship and Contributors
+*/
+
+package com.urbanairship.extension.analytics;
+
+import com.google.android.gms.analytics.Tracker;
+
+import java.io.File;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Replays a recording made with {@link GoogleAnalyticsTracker#enableHitRecording(File)} against a
+ * tracker whose GA leg is disabled and whose events go to a {@link CountingEventSink}, then reports
+ * the throughput and the latency percentiles of {@link GoogleAnalyticsTracker#send(java.util.Map)}.
+ *
+ * Hits are decoded up front and sent in recorded order. By default they keep their recorded
+ * timing, <code>--speed</code> replays them at a multiple of it, and <code>--speed max</code> as
+ * fast as possible. With <code>--threads</code> every thread replays the whole recording against
+ * its own tracker, like several devices sending the same burst at once. <code>--trackers shared</code>
+ * replays all threads against a single tracker instead, which measures the contention of concurrent
+ * senders on one instance rather than the throughput of independent ones. Warmup runs are replayed
+ * as fast as possible and left out of the report.
+ *
+ * <pre>
+ * ReplayLoadGenerator &lt;recording&gt; [--speed &lt;multiple&gt;|max] [--threads &lt;count&gt;]
+ *     [--trackers per-thread|shared] [--iterations &lt;count&gt;] [--warmup &lt;count&gt;]
+ * </pre>
+ */
+public final class ReplayLoadGenerator {
+
+    private static final double[] PERCENTILES = { 50, 90, 99, 99.9 };
+
+    private final List<HitRecorder.RecordedHit> hits;
+    private final double speed;
+    private final int threads;
+    private final boolean sharedTracker;
+
+    private ReplayLoadGenerator(List<HitRecorder.RecordedHit> hits, double speed, int threads, boolean sharedTracker) {
+        this.hits = hits;
+        this.speed = speed;
+        this.threads = threads;
+        this.sharedTracker = sharedTracker;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            usage();
+            return;
+        }
+
+        File recording = new File(args[0]);
+        double speed = 1;
+        int threads = 1;
+        boolean sharedTracker = false;
+        int iterations = 1;
+        int warmup = 1;
+
+        for (int i = 1; i < args.length; i += 2) {
+            if (i + 1 >= args.length) {
+                usage();
+                return;
+            }
+
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--speed":
+                    speed = "max".equals(value) ? 0 : Double.parseDouble(value);
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(value);
+                    break;
+                case "--trackers":
+                    if (!"shared".equals(value) && !"per-thread".equals(value)) {
+                        usage();
+                        return;
+                    }
+                    sharedTracker = "shared".equals(value);
+                    break;
+                case "--iterations":
+                    iterations = Integer.parseInt(value);
+                    break;
+                case "--warmup":
+                    warmup = Integer.parseInt(value);
+                    break;
+                default:
+                    usage();
+                    return;
+            }
+        }
+
+        if (speed < 0 || threads < 1 || iterations < 1 || warmup < 0) {
+            usage();
+            return;
+        }
+
+        List<HitRecorder.RecordedHit> hits = HitRecorder.read(recording);
+        if (hits.isEmpty()) {
+            System.out.println("The recording holds no hits.");
+            return;
+        }
+
+        long span = hits.get(hits.size() - 1).timeMicros;
+        System.out.println(String.format(Locale.US, "%d hits over %.1f ms, speed %s, %d thread(s), %s tracker(s)",
+                hits.size(), span / 1000.0, speed == 0 ? "max" : speed + "x", threads,
+                sharedTracker ? "shared" : "per-thread"));
+
+        for (int i = 0; i < warmup; i++) {
+            new ReplayLoadGenerator(hits, 0, threads, sharedTracker).run();
+        }
+
+        ReplayLoadGenerator generator = new ReplayLoadGenerator(hits, speed, threads, sharedTracker);
+        for (int i = 1; i <= iterations; i++) {
+            Result result = generator.run();
+            System.out.println(String.format(Locale.US, "Iteration %d: %s", i, result));
+        }
+    }
+
+    private static void usage() {
+        System.out.println("Usage: ReplayLoadGenerator <recording> [--speed <multiple>|max] [--threads <count>] "
+                + "[--trackers per-thread|shared] [--iterations <count>] [--warmup <count>]");
+    }
+
+    /**
+     * Replays the recording once on every thread against new trackers, one per thread unless the
+     * tracker is shared.
+     *
+     * @return The result.
+     * @throws InterruptedException If interrupted while waiting for the threads.
+     */
+    Result run() throws InterruptedException {
+        final CountingEventSink sink = new CountingEventSink();
+        final GoogleAnalyticsTracker[] trackers = new GoogleAnalyticsTracker[sharedTracker ? 1 : threads];
+        for (int i = 0; i < trackers.length; i++) {
+            trackers[i] = createTracker(sink);
+        }
+
+        final LogHistogram latency = new LogHistogram();
+        final CountDownLatch ready = new CountDownLatch(threads);
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+
+        for (int i = 0; i < threads; i++) {
+            final GoogleAnalyticsTracker tracker = trackers[i % trackers.length];
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    ready.countDown();
+                    try {
+                        start.await();
+                        replay(tracker, latency);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }, "ReplayLoadGenerator-" + i);
+            thread.start();
+        }
+
+        ready.await();
+        long startNanos = System.nanoTime();
+        start.countDown();
+        done.await();
+        for (GoogleAnalyticsTracker tracker : trackers) {
+            tracker.flush();
+        }
+        long elapsedNanos = System.nanoTime() - startNanos;
+
+        for (GoogleAnalyticsTracker tracker : trackers) {
+            tracker.shutdown();
+        }
+        return new Result(latency, elapsedNanos, sink.getEventCount());
+    }
+
+    private static GoogleAnalyticsTracker createTracker(CountingEventSink sink) {
+        return new GoogleAnalyticsTracker(new Tracker("UA-00000-1"))
+                .setGoogleAnalyticsEnabled(false)
+                .setUrbanAirshipEnabled(true)
+                .setCustomEventSink(sink);
+    }
+
+    private void replay(GoogleAnalyticsTracker tracker, LogHistogram latency) {
+        long startNanos = System.nanoTime();
+        for (HitRecorder.RecordedHit hit : hits) {
+            if (speed > 0) {
+                long due = startNanos + (long) (hit.timeMicros * 1000 / speed);
+                long wait = due - System.nanoTime();
+                while (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                    wait = due - System.nanoTime();
+                }
+            }
+
+            long sendStart = System.nanoTime();
+            tracker.send(hit.hit);
+            latency.record(System.nanoTime() - sendStart);
+        }
+    }
+
+    /**
+     * Throughput and send latency of one replay.
+     */
+    static final class Result {
+
+        private final long hits;
+        private final long events;
+        private final long elapsedNanos;
+        private final long[] percentiles;
+
+        Result(LogHistogram latency, long elapsedNanos, long events) {
+            this.hits = latency.getCount();
+            this.events = events;
+            this.elapsedNanos = elapsedNanos;
+            this.percentiles = latency.getPercentiles(PERCENTILES);
+        }
+
+        @Override
+        public String toString() {
+            double seconds = elapsedNanos / (double) TimeUnit.SECONDS.toNanos(1);
+            StringBuilder builder = new StringBuilder(String.format(Locale.US,
+                    "%d hits, %d events in %.1f ms, %.0f hits/s, send latency", hits, events,
+                    elapsedNanos / 1e6, hits / seconds));
+
+            for (int i = 0; i < PERCENTILES.length; i++) {
+                builder.append(String.format(Locale.US, " p%s=%.1f us", format(PERCENTILES[i]), percentiles[i] / 1000.0));
+            }
+            return builder.toString();
+        }
+
+        private static String format(double percentile) {
+            return percentile == Math.rint(percentile) ? String.valueOf((long) percentile) : String.valueOf(percentile);
+        }
+    }
+}
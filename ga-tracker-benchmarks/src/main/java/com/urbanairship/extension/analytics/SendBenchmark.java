@@ -0,0 +1,142 @@
+/*
+ Copyright 2016 Urban Airship and Contributors
+*/
+
+package com.urbanairship.extension.analytics;
+
+import com.google.android.gms.analytics.Tracker;
+import com.urbanairship.analytics.CustomEvent;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the UA leg of {@link GoogleAnalyticsTracker#send(Map)} and its parts. The GA leg is
+ * disabled and events go to a {@link CountingEventSink}, so the numbers only cover the wrapper.
+ * Run with <code>-prof gc</code> for allocation rates. Contention on a shared tracker is measured
+ * by {@link ContendedSendBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SendBenchmark {
+
+    @Param({"screenview", "event", "timing"})
+    public String hitType;
+
+    @Param({"0", "8", "32"})
+    public int extraFields;
+
+    @Param({"0", "1", "8"})
+    public int extenders;
+
+    private GoogleAnalyticsTracker tracker;
+    private GoogleAnalyticsTracker filteredTracker;
+    private GoogleAnalyticsTracker coalescingTracker;
+    private ExtenderRegistry registry;
+    private CustomEvent.Builder builder;
+    private Map<String, String> hit;
+
+    @Setup
+    public void setup() {
+        tracker = new GoogleAnalyticsTracker(new Tracker("UA-00000-1"))
+                .setGoogleAnalyticsEnabled(false)
+                .setUrbanAirshipEnabled(true)
+                .setCustomEventSink(new CountingEventSink());
+        tracker.setScreenName("BenchmarkScreen");
+
+        registry = new ExtenderRegistry();
+        for (int i = 0; i < extenders; i++) {
+            GoogleAnalyticsTracker.Extender extender = BenchmarkHits.extender(i);
+            tracker.addExtender(extender);
+            registry.add(extender, 0, Collections.<String>emptySet());
+        }
+
+        // Only the last rule matches, so every rule is checked before the hit is dropped
+        filteredTracker = new GoogleAnalyticsTracker(new Tracker("UA-00000-1"))
+                .setGoogleAnalyticsEnabled(false)
+                .setUrbanAirshipEnabled(true)
+                .setCustomEventSink(new CountingEventSink())
+                .setHitFilter(HitFilter.newBuilder()
+                        .drop(HitFilter.rule("debug").hitType("event").prefix("&ec", "debug_"))
+                        .drop(HitFilter.rule("internal").present("&cd99"))
+                        .drop(HitFilter.rule("all").present("&t"))
+                        .build());
+
+        // The same hit within the window, so every hit after the first is a suppressed duplicate
+        coalescingTracker = new GoogleAnalyticsTracker(new Tracker("UA-00000-1"))
+                .setGoogleAnalyticsEnabled(false)
+                .setUrbanAirshipEnabled(true)
+                .setCustomEventSink(new CountingEventSink())
+                .enableCoalescing(CoalescingPolicy.newBuilder()
+                        .setWindow(1, TimeUnit.DAYS)
+                        .build());
+        coalescingTracker.setScreenName("BenchmarkScreen");
+
+        hit = BenchmarkHits.create(hitType, extraFields);
+        builder = new CustomEvent.Builder(hitType);
+    }
+
+    @Benchmark
+    public void send() {
+        tracker.send(hit);
+    }
+
+    @Benchmark
+    public void sendFiltered() {
+        filteredTracker.send(hit);
+    }
+
+    @Benchmark
+    public void sendCoalesced() {
+        coalescingTracker.send(hit);
+    }
+
+    @Benchmark
+    public void createCustomEvent() {
+        tracker.createCustomEvent(hit);
+    }
+
+    @Benchmark
+    public CustomEvent buildCustomEvent() {
+        return tracker.buildCustomEvent(hit);
+    }
+
+    @Benchmark
+    public int collectProperties() {
+        PropertyBuffer properties = PropertyBuffer.acquire();
+        tracker.collectProperties(hit, properties, false);
+        int size = properties.size();
+        properties.clear();
+        return size;
+    }
+
+    @Benchmark
+    public String getEventName() {
+        return tracker.getEventName(hit);
+    }
+
+    @Benchmark
+    public CustomEvent.Builder extenderDispatch() {
+        for (GoogleAnalyticsTracker.Extender extender : registry.get(hitType)) {
+            extender.extend(builder, hit, tracker);
+        }
+        return builder;
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ Copyright 2016 Urban Airship and Contributors
+*/
+
+package com.urbanairship.extension.analytics;
+
+import com.google.android.gms.analytics.Tracker;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the time the Application class spends setting up the tracker, with the GA Tracker
+ * created on the calling thread versus with {@link GoogleAnalyticsTracker#createLazily}. The cost
+ * of creating the GA Tracker is simulated with CPU work.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StartupBenchmark {
+
+    @Param({"0", "100000", "1000000"})
+    public long trackerCreationTokens;
+
+    private final GoogleAnalyticsTracker.TrackerFactory factory = new GoogleAnalyticsTracker.TrackerFactory() {
+        @Override
+        public Tracker createTracker() {
+            Blackhole.consumeCPU(trackerCreationTokens);
+            return new Tracker("UA-00000-1");
+        }
+    };
+
+    private GoogleAnalyticsTracker tracker;
+
+    @Benchmark
+    public GoogleAnalyticsTracker eager() {
+        tracker = configure(new GoogleAnalyticsTracker(factory.createTracker()));
+        return tracker;
+    }
+
+    @Benchmark
+    public GoogleAnalyticsTracker lazy() {
+        tracker = configure(GoogleAnalyticsTracker.createLazily(factory, 64));
+        return tracker;
+    }
+
+    /**
+     * Waits for the background initialization outside of the measurement, so it never competes with
+     * the next invocation for the CPU.
+     */
+    @TearDown(Level.Invocation)
+    public void awaitReady() throws InterruptedException {
+        while (tracker != null && !tracker.isReady()) {
+            Thread.sleep(1);
+        }
+    }
+
+    private static GoogleAnalyticsTracker configure(GoogleAnalyticsTracker tracker) {
+        tracker.setGoogleAnalyticsEnabled(true)
+                .setUrbanAirshipEnabled(true)
+                .setCustomEventSink(new CountingEventSink())
+                .addExtender(BenchmarkHits.extender(0));
+        tracker.setAppName("benchmark");
+        tracker.setScreenName("LaunchScreen");
+        tracker.send(BenchmarkHits.create("screenview", 0));
+        return tracker;
+    }
+}
@@ -0,0 +1,9 @@
+package android.net;
+
+/**
+ * Plain JVM stand-in for the Android Uri, used only by the benchmarks.
+ */
+public abstract class Uri {
+
+    public abstract String getQueryParameter(String key);
+}
@@ -0,0 +1,11 @@
+package android.support.annotation;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+
+/**
+ * Plain JVM stand-in for the support annotation, used only by the benchmarks.
+ */
+@Retention(RetentionPolicy.CLASS)
+public @interface Nullable {
+}
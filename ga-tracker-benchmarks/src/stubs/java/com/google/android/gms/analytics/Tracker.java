@@ -0,0 +1,119 @@
+package com.google.android.gms.analytics;
+
+import android.net.Uri;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Plain JVM stand-in for the GA Tracker, used only by the benchmarks. Like the real Tracker, field
+ * access is synchronized and sending a hit copies the merged fields.
+ */
+public class Tracker {
+
+    private final Map<String, String> fields = new HashMap<>();
+
+    public Tracker(String trackingId) {
+        fields.put("&tid", trackingId);
+        fields.put("&v", "1");
+        fields.put("&an", "benchmark");
+        fields.put("&av", "1.0");
+        fields.put("&aid", "com.urbanairship.benchmark");
+    }
+
+    public synchronized String get(String key) {
+        return fields.get(key);
+    }
+
+    public synchronized void set(String key, String value) {
+        fields.put(key, value);
+    }
+
+    public void send(Map<String, String> params) {
+        Map<String, String> hit;
+        synchronized (this) {
+            hit = new HashMap<>(fields);
+        }
+        hit.putAll(params);
+    }
+
+    public void enableAdvertisingIdCollection(boolean enabled) {}
+
+    public void enableAutoActivityTracking(boolean enabled) {}
+
+    public void enableExceptionReporting(boolean enable) {}
+
+    public void setAnonymizeIp(boolean anonymize) {}
+
+    public void setAppId(String appId) {
+        set("&aid", appId);
+    }
+
+    public void setAppInstallerId(String appInstallerId) {
+        set("&aiid", appInstallerId);
+    }
+
+    public void setAppName(String appName) {
+        set("&an", appName);
+    }
+
+    public void setAppVersion(String appVersion) {
+        set("&av", appVersion);
+    }
+
+    public void setCampaignParamsOnNextHit(Uri uri) {}
+
+    public void setClientId(String clientId) {
+        set("&cid", clientId);
+    }
+
+    public void setEncoding(String encoding) {
+        set("&de", encoding);
+    }
+
+    public void setHostname(String hostname) {
+        set("&dh", hostname);
+    }
+
+    public void setLanguage(String language) {
+        set("&ul", language);
+    }
+
+    public void setLocation(String location) {
+        set("&dl", location);
+    }
+
+    public void setPage(String page) {
+        set("&dp", page);
+    }
+
+    public void setReferrer(String referrer) {
+        set("&dr", referrer);
+    }
+
+    public void setSampleRate(double sampleRate) {}
+
+    public void setScreenColors(String screenColors) {
+        set("&sd", screenColors);
+    }
+
+    public void setScreenName(String screenName) {
+        set("&cd", screenName);
+    }
+
+    public void setScreenResolution(int width, int height) {
+        set("&sr", width + "x" + height);
+    }
+
+    public void setSessionTimeout(long sessionTimeout) {}
+
+    public void setTitle(String title) {
+        set("&dt", title);
+    }
+
+    public void setUseSecure(boolean useSecure) {}
+
+    public void setViewportSize(String viewportSize) {
+        set("&vp", viewportSize);
+    }
+}
@@ -0,0 +1,16 @@
+package com.urbanairship;
+
+/**
+ * Plain JVM stand-in for the Urban Airship Logger, used only by the benchmarks.
+ */
+public class Logger {
+
+    public static void error(String message) {
+        System.err.println(message);
+    }
+
+    public static void error(String message, Throwable t) {
+        System.err.println(message);
+        t.printStackTrace();
+    }
+}
@@ -0,0 +1,26 @@
+package com.urbanairship;
+
+/**
+ * Plain JVM stand-in for UAirship, used only by the benchmarks. The airship is always ready.
+ */
+public class UAirship {
+
+    private static final UAirship sharedAirship = new UAirship();
+
+    public interface OnReadyCallback {
+        void onAirshipReady(UAirship airship);
+    }
+
+    public static UAirship shared() {
+        return sharedAirship;
+    }
+
+    public static Object shared(OnReadyCallback callback) {
+        callback.onAirshipReady(sharedAirship);
+        return null;
+    }
+
+    public static boolean isFlying() {
+        return true;
+    }
+}
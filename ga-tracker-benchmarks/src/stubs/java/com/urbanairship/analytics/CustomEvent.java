@@ -0,0 +1,115 @@
+package com.urbanairship.analytics;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Plain JVM stand-in for the Urban Airship CustomEvent, used only by the benchmarks. Tracking an
+ * event only counts it.
+ */
+public class CustomEvent {
+
+    private static volatile long trackedCount;
+
+    private final String eventName;
+    private final BigDecimal eventValue;
+    private final Map<String, Object> properties;
+
+    private CustomEvent(Builder builder) {
+        this.eventName = builder.eventName;
+        this.eventValue = builder.value;
+        this.properties = new HashMap<>(builder.properties);
+    }
+
+    public String getEventName() {
+        return eventName;
+    }
+
+    public BigDecimal getEventValue() {
+        return eventValue;
+    }
+
+    public Map<String, Object> getProperties() {
+        return properties;
+    }
+
+    public CustomEvent track() {
+        trackedCount++;
+        return this;
+    }
+
+    public static long getTrackedCount() {
+        return trackedCount;
+    }
+
+    public static class Builder {
+
+        private final String eventName;
+        private final Map<String, Object> properties = new HashMap<>();
+        private BigDecimal value;
+
+        public Builder(String eventName) {
+            this.eventName = eventName;
+        }
+
+        public Builder setEventValue(double value) {
+            this.value = BigDecimal.valueOf(value);
+            return this;
+        }
+
+        public Builder setEventValue(int value) {
+            this.value = new BigDecimal(value);
+            return this;
+        }
+
+        public Builder setEventValue(String value) {
+            this.value = value == null ? null : new BigDecimal(value);
+            return this;
+        }
+
+        public Builder setEventValue(BigDecimal value) {
+            this.value = value;
+            return this;
+        }
+
+        public Builder setTransactionId(String transactionId) {
+            return this;
+        }
+
+        public Builder addProperty(String name, String value) {
+            properties.put(name, value);
+            return this;
+        }
+
+        public Builder addProperty(String name, int value) {
+            properties.put(name, value);
+            return this;
+        }
+
+        public Builder addProperty(String name, long value) {
+            properties.put(name, value);
+            return this;
+        }
+
+        public Builder addProperty(String name, double value) {
+            properties.put(name, value);
+            return this;
+        }
+
+        public Builder addProperty(String name, boolean value) {
+            properties.put(name, value);
+            return this;
+        }
+
+        public Builder addProperty(String name, Collection<String> value) {
+            properties.put(name, value);
+            return this;
+        }
+
+        public CustomEvent create() {
+            return new CustomEvent(this);
+        }
+    }
+}
@@ -0,0 +1,297 @@
+/*
+ Copyright 2016 Urban Airship and Contributors
+*/
+
+package com.urbanairship.extension.analytics;
+
+import android.support.annotation.NonNull;
+
+import com.urbanairship.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Bounded, multi-producer hit queue drained in batches by a single background worker.
+ *
+ * Hits are queued under the read side of a lock and {@link #shutdown()} takes the write side, so every
+ * hit accepted before the shutdown is queued before the worker is told to stop, and none is accepted
+ * after. The worker stops once it has seen the shutdown flag and the queue is empty.
+ *
+ * Hits queued by the handler itself, e.g. from an extender calling send, never block: with
+ * {@link OverflowPolicy#BLOCK} they are dropped when the queue is full.
+ */
+class AsyncDispatcher {
+
+    /**
+     * Handler invoked on the worker thread with each drained batch of hits.
+     */
+    interface BatchHandler {
+        void onBatch(@NonNull List<QueuedHit> hits);
+    }
+
+    /**
+     * A queued hit with the tracker fields captured when it was sent.
+     */
+    static final class QueuedHit {
+        final Map<String, String> hit;
+        final TrackerFieldSnapshot fields;
+        final TrackerFieldSnapshot expensiveFields;
+
+        QueuedHit(@NonNull Map<String, String> hit, @NonNull TrackerFieldSnapshot fields, @NonNull TrackerFieldSnapshot expensiveFields) {
+            this.hit = hit;
+            this.fields = fields;
+            this.expensiveFields = expensiveFields;
+        }
+    }
+
+    private final BlockingQueue<QueuedHit> queue;
+    private final OverflowPolicy overflowPolicy;
+    private final int batchSize;
+    private final BatchHandler handler;
+    private final Thread worker;
+
+    private final Object completionLock = new Object();
+    private final AtomicLong enqueuedCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private long completedCount;
+
+    private final ReadWriteLock shutdownLock = new ReentrantReadWriteLock();
+    private volatile boolean isShutdown;
+
+    // Guarded by wakeLock, set while the worker waits for a hit so shutdown only interrupts the wait
+    private final Object wakeLock = new Object();
+    private boolean waiting;
+
+    /**
+     * Creates and starts the dispatcher.
+     *
+     * @param capacity The maximum number of queued hits.
+     * @param batchSize The maximum number of hits handed to the handler at once.
+     * @param overflowPolicy The policy applied when the queue is full.
+     * @param handler The batch handler.
+     */
+    AsyncDispatcher(int capacity, int batchSize, @NonNull OverflowPolicy overflowPolicy, @NonNull BatchHandler handler) {
+        if (capacity < 1 || batchSize < 1) {
+            throw new IllegalArgumentException("Capacity and batch size must be greater than 0");
+        }
+
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.batchSize = batchSize;
+        this.overflowPolicy = overflowPolicy;
+        this.handler = handler;
+        this.worker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                drainLoop();
+            }
+        }, "GoogleAnalyticsTracker-dispatch");
+
+        worker.setDaemon(true);
+        worker.setPriority(Thread.MIN_PRIORITY);
+        worker.start();
+    }
+
+    /**
+     * Queues a hit according to the overflow policy.
+     *
+     * @param hit The hit.
+     * @return <code>true</code> if the hit was queued, otherwise <code>false</code>.
+     */
+    boolean enqueue(@NonNull QueuedHit hit) {
+        shutdownLock.readLock().lock();
+        try {
+            return isShutdown ? false : offer(hit);
+        } finally {
+            shutdownLock.readLock().unlock();
+        }
+    }
+
+    private boolean offer(QueuedHit hit) {
+        switch (overflowPolicy) {
+            case DROP_NEWEST:
+                if (!queue.offer(hit)) {
+                    droppedCount.incrementAndGet();
+                    return false;
+                }
+                break;
+
+            case DROP_OLDEST:
+                while (!queue.offer(hit)) {
+                    if (queue.poll() != null) {
+                        droppedCount.incrementAndGet();
+                        complete(1);
+                    }
+                }
+                break;
+
+            case BLOCK:
+                // A hit sent from the handler must not wait for the worker to drain its own queue
+                if (Thread.currentThread() == worker) {
+                    if (!queue.offer(hit)) {
+                        droppedCount.incrementAndGet();
+                        return false;
+                    }
+                    break;
+                }
+
+                // The worker drains without the lock, so a blocked put only delays shutdown
+                try {
+                    queue.put(hit);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    droppedCount.incrementAndGet();
+                    return false;
+                }
+                break;
+        }
+
+        enqueuedCount.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Blocks until every hit queued before this call has been handled or dropped.
+     */
+    void flush() {
+        if (Thread.currentThread() == worker) {
+            return;
+        }
+
+        long target = enqueuedCount.get();
+        synchronized (completionLock) {
+            while (completedCount < target && worker.isAlive()) {
+                try {
+                    completionLock.wait(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops accepting hits, handles the hits that are already queued and stops the worker.
+     */
+    void shutdown() {
+        shutdownLock.writeLock().lock();
+        try {
+            if (isShutdown) {
+                return;
+            }
+            isShutdown = true;
+        } finally {
+            shutdownLock.writeLock().unlock();
+        }
+
+        synchronized (wakeLock) {
+            if (waiting) {
+                worker.interrupt();
+            }
+        }
+
+        if (Thread.currentThread() != worker) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Checks if the dispatcher has been shut down.
+     *
+     * @return <code>true</code> if the dispatcher no longer accepts hits, otherwise <code>false</code>.
+     */
+    boolean isShutdown() {
+        return isShutdown;
+    }
+
+    /**
+     * Gets the number of hits dropped by the overflow policy.
+     *
+     * @return The dropped hit count.
+     */
+    long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * Worker loop. Takes the first hit blocking, then drains up to a full batch without blocking.
+     */
+    private void drainLoop() {
+        List<QueuedHit> batch = new ArrayList<>(batchSize);
+
+        while (true) {
+            QueuedHit hit = queue.poll();
+            if (hit == null) {
+                hit = awaitHit();
+                if (hit == null) {
+                    if (isShutdown && queue.isEmpty()) {
+                        return;
+                    }
+                    continue;
+                }
+            }
+
+            batch.add(hit);
+            queue.drainTo(batch, batchSize - 1);
+            handle(batch);
+            batch.clear();
+        }
+    }
+
+    /**
+     * Waits for a hit, or returns <code>null</code> once the dispatcher was shut down.
+     */
+    private QueuedHit awaitHit() {
+        synchronized (wakeLock) {
+            if (isShutdown) {
+                return null;
+            }
+            waiting = true;
+        }
+
+        try {
+            return queue.take();
+        } catch (InterruptedException e) {
+            return null;
+        } finally {
+            synchronized (wakeLock) {
+                waiting = false;
+
+                // Clear an interrupt that raced a successful take, it must not reach the handler
+                Thread.interrupted();
+            }
+        }
+    }
+
+    private void handle(List<QueuedHit> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        try {
+            handler.onBatch(batch);
+        } catch (RuntimeException e) {
+            Logger.error("GoogleAnalyticsTracker - Failed to dispatch " + batch.size() + " hits.", e);
+        } finally {
+            complete(batch.size());
+        }
+    }
+
+    private void complete(int count) {
+        synchronized (completionLock) {
+            completedCount += count;
+            completionLock.notifyAll();
+        }
+    }
+}
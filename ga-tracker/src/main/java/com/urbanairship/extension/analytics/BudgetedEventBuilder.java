@@ -0,0 +1,145 @@
+/*
+ Copyright 2016 Urban Airship and Contributors
+*/
+
+package com.urbanairship.extension.analytics;
+
+import android.support.annotation.NonNull;
+
+import com.urbanairship.analytics.CustomEvent;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Custom event builder that holds the properties back until the event is created, so the
+ * {@link PayloadBudget} is enforced on every property of the finished event, including the
+ * ecommerce lists and the properties added by extenders. A property added again replaces the
+ * earlier value, like it does on the custom event.
+ */
+final class BudgetedEventBuilder extends CustomEvent.Builder {
+
+    private final PayloadBudget budget;
+    private final PropertyBuffer properties = new PropertyBuffer(16);
+    private final List<PayloadBudget.ListProperty> lists = new ArrayList<>();
+
+    /**
+     * Default constructor.
+     *
+     * @param eventName The event name.
+     * @param budget The budget enforced when the event is created.
+     */
+    BudgetedEventBuilder(@NonNull String eventName, @NonNull PayloadBudget budget) {
+        super(eventName);
+        this.budget = budget;
+    }
+
+    @NonNull
+    @Override
+    public CustomEvent.Builder addProperty(@NonNull String name, @NonNull String value) {
+        add(name, value, PropertyType.STRING);
+        return this;
+    }
+
+    @NonNull
+    @Override
+    public CustomEvent.Builder addProperty(@NonNull String name, int value) {
+        add(name, String.valueOf(value), PropertyType.INTEGER);
+        return this;
+    }
+
+    @NonNull
+    @Override
+    public CustomEvent.Builder addProperty(@NonNull String name, long value) {
+        add(name, String.valueOf(value), PropertyType.INTEGER);
+        return this;
+    }
+
+    @NonNull
+    @Override
+    public CustomEvent.Builder addProperty(@NonNull String name, double value) {
+        add(name, String.valueOf(value), PropertyType.NUMBER);
+        return this;
+    }
+
+    @NonNull
+    @Override
+    public CustomEvent.Builder addProperty(@NonNull String name, boolean value) {
+        add(name, String.valueOf(value), PropertyType.BOOLEAN);
+        return this;
+    }
+
+    @NonNull
+    @Override
+    public CustomEvent.Builder addProperty(@NonNull String name, @NonNull Collection<String> value) {
+        remove(name);
+        lists.add(new PayloadBudget.ListProperty(name, value));
+        return this;
+    }
+
+    /**
+     * Enforces the budget and creates the event with the properties that fit.
+     *
+     * @return The custom event.
+     */
+    @NonNull
+    @Override
+    public CustomEvent create() {
+        budget.enforce(properties, lists);
+
+        for (int i = 0; i < properties.size(); i++) {
+            String key = properties.getKey(i);
+            String value = properties.getValue(i);
+            try {
+                switch (properties.getType(i)) {
+                    case INTEGER:
+                        super.addProperty(key, Long.parseLong(value));
+                        continue;
+
+                    case NUMBER:
+                        super.addProperty(key, Double.parseDouble(value));
+                        continue;
+
+                    case BOOLEAN:
+                        super.addProperty(key, Boolean.parseBoolean(value));
+                        continue;
+
+                    default:
+                        break;
+                }
+            } catch (NumberFormatException e) {
+                // Truncated by the budget, fall back to the string value
+            }
+
+            super.addProperty(key, value);
+        }
+
+        for (PayloadBudget.ListProperty list : lists) {
+            super.addProperty(list.name, list.values);
+        }
+
+        properties.clear();
+        lists.clear();
+        return super.create();
+    }
+
+    private void add(String name, String value, PropertyType type) {
+        remove(name);
+        properties.add(name, value, type);
+    }
+
+    private void remove(String name) {
+        for (int i = properties.size() - 1; i >= 0; i--) {
+            if (properties.getKey(i).equals(name)) {
+                properties.remove(i);
+            }
+        }
+
+        for (int i = lists.size() - 1; i >= 0; i--) {
+            if (lists.get(i).name.equals(name)) {
+                lists.remove(i);
+            }
+        }
+    }
+}
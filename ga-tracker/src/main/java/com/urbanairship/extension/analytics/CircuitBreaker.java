@@ -0,0 +1,92 @@
+/*
+ Copyright 2016 Urban Airship and Contributors
+*/
+
+package com.urbanairship.extension.analytics;
+
+/**
+ * Circuit breaker for a dispatch leg. After <code>failureThreshold</code> consecutive failures the
+ * circuit opens and calls are refused until the open duration has passed. A single probe call is
+ * then let through, closing the circuit if it succeeds and opening it again if it fails.
+ */
+final class CircuitBreaker {
+
+    enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openNanos;
+
+    private State state = State.CLOSED;
+    private int failures;
+    private long openedAt;
+    private boolean probing;
+
+    CircuitBreaker(int failureThreshold, long openNanos) {
+        this.failureThreshold = failureThreshold;
+        this.openNanos = openNanos;
+    }
+
+    /**
+     * Checks if a call may be made. In the half open state only one probe call is allowed at a time.
+     *
+     * @return <code>true</code> if the call may be made, otherwise <code>false</code>.
+     */
+    synchronized boolean allowRequest() {
+        if (state == State.CLOSED) {
+            return true;
+        }
+
+        if (state == State.OPEN) {
+            if (System.nanoTime() - openedAt < openNanos) {
+                return false;
+            }
+            state = State.HALF_OPEN;
+            probing = false;
+        }
+
+        // Half open, let a single probe call through
+        if (probing) {
+            return false;
+        }
+        probing = true;
+        return true;
+    }
+
+    /**
+     * Records a successful call, closing the circuit.
+     */
+    synchronized void onSuccess() {
+        failures = 0;
+        probing = false;
+        state = State.CLOSED;
+    }
+
+    /**
+     * Records a failed call, opening the circuit once the threshold is reached or if the probe failed.
+     */
+    synchronized void onFailure() {
+        failures++;
+        if (state == State.HALF_OPEN || failures >= failureThreshold) {
+            state = State.OPEN;
+            openedAt = System.nanoTime();
+            probing = false;
+        }
+    }
+
+    /**
+     * Records an allowed call that was never made, releasing the probe slot.
+     */
+    synchronized void onCancelled() {
+        if (state == State.HALF_OPEN) {
+            probing = false;
+        }
+    }
+
+    synchronized State getState() {
+        return state;
+    }
+}
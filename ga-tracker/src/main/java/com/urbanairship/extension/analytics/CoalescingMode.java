@@ -0,0 +1,24 @@
+/*
+ Copyright 2016 Urban Airship and Contributors
+*/
+
+package com.urbanairship.extension.analytics;
+
+/**
+ * What happens to the duplicates of a hit within the coalescing window. See
+ * {@link GoogleAnalyticsTracker#enableCoalescing(CoalescingPolicy)}.
+ */
+public enum CoalescingMode {
+
+    /**
+     * Forward the first hit at once and drop its duplicates.
+     */
+    SUPPRESS,
+
+    /**
+     * Hold the first hit until the window expires and forward it once, with a
+     * {@link GoogleAnalyticsTracker#REPEAT_COUNT_PROPERTY repeat_count} property when duplicates
+     * were merged into it.
+     */
+    MERGE
+}
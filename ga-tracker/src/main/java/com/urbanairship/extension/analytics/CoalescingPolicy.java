@@ -0,0 +1,128 @@
+/*
+ Copyright 2016 Urban Airship and Contributors
+*/
+
+package com.urbanairship.extension.analytics;
+
+import android.support.annotation.NonNull;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Window, key fields, table size and mode of hit coalescing. See
+ * {@link GoogleAnalyticsTracker#enableCoalescing(CoalescingPolicy)}.
+ */
+public class CoalescingPolicy {
+
+    final long windowNanos;
+    final String[] keyFields;
+    final int capacity;
+    final CoalescingMode mode;
+
+    private CoalescingPolicy(Builder builder) {
+        this.windowNanos = builder.windowNanos;
+        this.keyFields = builder.keyFields;
+        this.capacity = builder.capacity;
+        this.mode = builder.mode;
+    }
+
+    /**
+     * Creates a new policy builder.
+     *
+     * @return A new builder.
+     */
+    @NonNull
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    /**
+     * Builds a {@link CoalescingPolicy}.
+     */
+    public static class Builder {
+
+        private long windowNanos = TimeUnit.SECONDS.toNanos(1);
+        private String[] keyFields;
+        private int capacity = 256;
+        private CoalescingMode mode = CoalescingMode.SUPPRESS;
+
+        private Builder() {}
+
+        /**
+         * Sets the window, starting with the first hit, in which identical hits are duplicates.
+         * Defaults to 1 second.
+         *
+         * @param window The window.
+         * @param unit The window unit.
+         * @return The builder.
+         */
+        @NonNull
+        public Builder setWindow(long window, @NonNull TimeUnit unit) {
+            if (window <= 0) {
+                throw new IllegalArgumentException("window must be positive");
+            }
+
+            this.windowNanos = unit.toNanos(window);
+            return this;
+        }
+
+        /**
+         * Sets the fields that make two hits identical, e.g. <code>&t</code>, <code>&ec</code> and
+         * <code>&ea</code> to treat events with a different label as duplicates. A
+         * {@link GoogleAnalyticsTracker#TRACKER_FIELDS tracker field} the hit does not set, e.g. the
+         * screen name (<code>&cd</code>), is read from the tracker. Defaults to every field of the hit
+         * and the screen name.
+         *
+         * @param keyFields The GA parameter codes.
+         * @return The builder.
+         */
+        @NonNull
+        public Builder setKeyFields(@NonNull String... keyFields) {
+            if (keyFields.length == 0) {
+                throw new IllegalArgumentException("keyFields must not be empty");
+            }
+
+            this.keyFields = keyFields.clone();
+            return this;
+        }
+
+        /**
+         * Sets the number of distinct hits remembered at once. It is rounded up to a power of two, and
+         * when the table is crowded the oldest hit is forgotten first. Defaults to 256.
+         *
+         * @param capacity The table capacity.
+         * @return The builder.
+         */
+        @NonNull
+        public Builder setCapacity(int capacity) {
+            if (capacity < 1 || capacity > 1 << 16) {
+                throw new IllegalArgumentException("capacity must be between 1 and 65536");
+            }
+
+            this.capacity = capacity;
+            return this;
+        }
+
+        /**
+         * Sets what happens to duplicates. Defaults to {@link CoalescingMode#SUPPRESS}.
+         *
+         * @param mode The coalescing mode.
+         * @return The builder.
+         */
+        @NonNull
+        public Builder setMode(@NonNull CoalescingMode mode) {
+            this.mode = mode;
+            return this;
+        }
+
+        /**
+         * Builds the policy.
+         *
+         * @return The policy.
+         */
+        @NonNull
+        public CoalescingPolicy build() {
+            return new CoalescingPolicy(this);
+        }
+    }
+}
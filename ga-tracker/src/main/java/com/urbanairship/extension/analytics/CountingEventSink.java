@@ -0,0 +1,59 @@
+/*
+ Copyright 2016 Urban Airship and Contributors
+*/
+
+package com.urbanairship.extension.analytics;
+
+import android.support.annotation.NonNull;
+
+import com.urbanairship.analytics.CustomEvent;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sink that only counts the custom events and batches it receives. Useful for load tests.
+ */
+public class CountingEventSink implements CustomEventSink {
+
+    private final AtomicLong eventCount = new AtomicLong();
+    private final AtomicLong batchCount = new AtomicLong();
+
+    @Override
+    public void submit(@NonNull CustomEvent event) {
+        eventCount.incrementAndGet();
+        batchCount.incrementAndGet();
+    }
+
+    @Override
+    public void submit(@NonNull List<CustomEvent> events) {
+        eventCount.addAndGet(events.size());
+        batchCount.incrementAndGet();
+    }
+
+    /**
+     * Gets the number of submitted events.
+     *
+     * @return The event count.
+     */
+    public long getEventCount() {
+        return eventCount.get();
+    }
+
+    /**
+     * Gets the number of submit calls.
+     *
+     * @return The batch count.
+     */
+    public long getBatchCount() {
+        return batchCount.get();
+    }
+
+    /**
+     * Resets the counts.
+     */
+    public void reset() {
+        eventCount.set(0);
+        batchCount.set(0);
+    }
+}
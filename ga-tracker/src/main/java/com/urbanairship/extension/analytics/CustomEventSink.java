@@ -0,0 +1,33 @@
+/*
+ Copyright 2016 Urban Airship and Contributors
+*/
+
+package com.urbanairship.extension.analytics;
+
+import android.support.annotation.NonNull;
+
+import com.urbanairship.analytics.CustomEvent;
+
+import java.util.List;
+
+/**
+ * Receives the custom events created by {@link GoogleAnalyticsTracker}.
+ */
+public interface CustomEventSink {
+
+    /**
+     * Submits a single custom event.
+     *
+     * @param event The custom event.
+     */
+    void submit(@NonNull CustomEvent event);
+
+    /**
+     * Submits a batch of custom events. Called with every event converted from one asynchronous
+     * dispatch batch, so an implementation can handle the whole batch at once. The list is reused
+     * once the call returns, copy it to keep the events.
+     *
+     * @param events The custom events, in the order the hits were sent.
+     */
+    void submit(@NonNull List<CustomEvent> events);
+}
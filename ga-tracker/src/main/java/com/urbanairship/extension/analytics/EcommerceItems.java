@@ -0,0 +1,364 @@
+/*
+ Copyright 2016 Urban Airship and Contributors
+*/
+
+package com.urbanairship.extension.analytics;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.urbanairship.analytics.CustomEvent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Products, impressions and promotions parsed from the indexed enhanced ecommerce parameters of a
+ * hit. Parameter codes are matched against a trie of the indexed prefixes (<code>&pr</code>,
+ * <code>&il</code> and <code>&promo</code>), so a key that is not an ecommerce parameter is usually
+ * rejected after its first two characters, and a matching key is split into its indexes and field
+ * in one pass without regular expressions.
+ *
+ * Items are ordered by index, and item fields by name.
+ */
+final class EcommerceItems {
+
+    static final String PRODUCT_PROPERTY_PREFIX = "&pr.";
+    static final String IMPRESSION_PROPERTY_PREFIX = "&il.pi.";
+    static final String IMPRESSION_LIST_NAME_PROPERTY = "&il.nm";
+    static final String PROMOTION_PROPERTY_PREFIX = "&promo.";
+
+    private static final int NONE = 0;
+    private static final int PRODUCT = 1;
+    private static final int IMPRESSION_LIST = 2;
+    private static final int PROMOTION = 3;
+
+    private static final int MAX_INDEX_DIGITS = 3;
+
+    private static final Node ROOT = new Node();
+
+    static {
+        ROOT.insert(HitParameters.PRODUCT_PREFIX, PRODUCT);
+        ROOT.insert(HitParameters.IMPRESSION_LIST_PREFIX, IMPRESSION_LIST);
+        ROOT.insert(HitParameters.PROMOTION_PREFIX, PROMOTION);
+    }
+
+    private final Map<Integer, Map<String, String>> products = new TreeMap<>();
+    private final Map<Integer, ImpressionList> impressionLists = new TreeMap<>();
+    private final Map<Integer, Map<String, String>> promotions = new TreeMap<>();
+
+    private List<Item> items;
+
+    /**
+     * Matches a parameter code against the indexed ecommerce prefixes. Allocates nothing.
+     *
+     * @param key The parameter code.
+     * @return The match to pass to {@link #add(int, String, String)}, or <code>0</code> if the key
+     * is not an indexed ecommerce parameter.
+     */
+    static int match(@NonNull String key) {
+        int match = 0;
+        Node node = ROOT;
+        int length = key.length();
+
+        // Keep the longest prefix followed by an index, so &promo1id is not taken for a product
+        for (int i = 0; i < length; i++) {
+            node = node.child(key.charAt(i));
+            if (node == null) {
+                break;
+            }
+
+            if (node.kind != NONE && i + 1 < length && isDigit(key.charAt(i + 1))) {
+                match = node.kind << 16 | (i + 1);
+            }
+        }
+
+        return match;
+    }
+
+    /**
+     * Adds a parameter.
+     *
+     * @param match The match returned by {@link #match(String)}.
+     * @param key The parameter code.
+     * @param value The value.
+     * @return <code>true</code> if the parameter was added, <code>false</code> if it is malformed
+     * and should be copied as is.
+     */
+    boolean add(int match, @NonNull String key, @NonNull String value) {
+        int start = match & 0xFFFF;
+        int end = indexEnd(key, start);
+        if (end < 0 || end == key.length()) {
+            return false;
+        }
+
+        int index = parseIndex(key, start, end);
+
+        switch (match >>> 16) {
+            case PRODUCT:
+                fields(products, index).put(key.substring(end), value);
+                items = null;
+                return true;
+
+            case PROMOTION:
+                fields(promotions, index).put(key.substring(end), value);
+                items = null;
+                return true;
+
+            case IMPRESSION_LIST:
+                return addImpression(index, key, end, value);
+
+            default:
+                return false;
+        }
+    }
+
+    private boolean addImpression(int listIndex, String key, int offset, String value) {
+        // &il<list>nm is the list name, &il<list>pi<product><field> an impression field
+        if (key.length() == offset + 2 && key.startsWith("nm", offset)) {
+            impressionList(listIndex).name = value;
+            items = null;
+            return true;
+        }
+
+        if (!key.startsWith("pi", offset)) {
+            return false;
+        }
+
+        int start = offset + 2;
+        int end = indexEnd(key, start);
+        if (end < 0 || end == key.length()) {
+            return false;
+        }
+
+        fields(impressionList(listIndex).impressions, parseIndex(key, start, end)).put(key.substring(end), value);
+        items = null;
+        return true;
+    }
+
+    /**
+     * Checks if any items were parsed.
+     *
+     * @return <code>true</code> if no items were parsed.
+     */
+    boolean isEmpty() {
+        return getItems().isEmpty();
+    }
+
+    /**
+     * Gets the number of parsed items.
+     *
+     * @return The number of products, impressions and promotions.
+     */
+    int size() {
+        return getItems().size();
+    }
+
+    /**
+     * Adds a list property per item field to the custom event builder. Lists of the same item type
+     * are aligned by item, with an empty string for a field the item does not set.
+     *
+     * @param builder The custom event builder.
+     * @param projection The projection, used to rename or drop the list properties.
+     */
+    void addLists(@NonNull CustomEvent.Builder builder, @Nullable PropertyProjection projection) {
+        addLists(builder, projection, PRODUCT_PROPERTY_PREFIX);
+        addLists(builder, projection, IMPRESSION_PROPERTY_PREFIX);
+        addLists(builder, projection, PROMOTION_PROPERTY_PREFIX);
+    }
+
+    private void addLists(CustomEvent.Builder builder, PropertyProjection projection, String prefix) {
+        List<Item> group = new ArrayList<>();
+        Set<String> fields = new TreeSet<>();
+        for (Item item : getItems()) {
+            if (item.prefix.equals(prefix)) {
+                group.add(item);
+                fields.addAll(item.fields.keySet());
+            }
+        }
+
+        if (group.isEmpty()) {
+            return;
+        }
+
+        if (prefix.equals(IMPRESSION_PROPERTY_PREFIX)) {
+            List<String> names = new ArrayList<>(group.size());
+            for (Item item : group) {
+                names.add(item.listName == null ? "" : item.listName);
+            }
+            addList(builder, projection, IMPRESSION_LIST_NAME_PROPERTY, names);
+        }
+
+        for (String field : fields) {
+            List<String> values = new ArrayList<>(group.size());
+            for (Item item : group) {
+                String value = item.fields.get(field);
+                values.add(value == null ? "" : value);
+            }
+            addList(builder, projection, prefix + field, values);
+        }
+    }
+
+    private static void addList(CustomEvent.Builder builder, PropertyProjection projection, String key, List<String> values) {
+        String name = projection == null ? key : projection.project(key);
+        if (name != null) {
+            builder.addProperty(name, values);
+        }
+    }
+
+    /**
+     * Adds the fields of one item to the property buffer.
+     *
+     * @param index The item index, from <code>0</code> to {@link #size()}.
+     * @param properties The property buffer.
+     * @param projection The projection, or <code>null</code> to copy every field.
+     * @param typed <code>true</code> to add the numeric fields as numbers.
+     */
+    void addItem(int index, @NonNull PropertyBuffer properties, @Nullable PropertyProjection projection, boolean typed) {
+        Item item = getItems().get(index);
+        if (item.listName != null) {
+            addProperty(properties, projection, IMPRESSION_LIST_NAME_PROPERTY, item.listName, false);
+        }
+
+        for (Map.Entry<String, String> field : item.fields.entrySet()) {
+            addProperty(properties, projection, item.prefix + field.getKey(), field.getValue(), typed);
+        }
+    }
+
+    private static void addProperty(PropertyBuffer properties, PropertyProjection projection, String key, String value, boolean typed) {
+        PropertyType type = typed ? PropertyType.of(key) : PropertyType.STRING;
+        if (projection == null) {
+            properties.add(key, value, type);
+        } else {
+            projection.apply(properties, key, value, type);
+        }
+    }
+
+    private List<Item> getItems() {
+        if (items != null) {
+            return items;
+        }
+
+        List<Item> items = new ArrayList<>();
+        for (Map<String, String> fields : products.values()) {
+            items.add(new Item(PRODUCT_PROPERTY_PREFIX, null, fields));
+        }
+
+        for (ImpressionList list : impressionLists.values()) {
+            for (Map<String, String> fields : list.impressions.values()) {
+                items.add(new Item(IMPRESSION_PROPERTY_PREFIX, list.name, fields));
+            }
+        }
+
+        for (Map<String, String> fields : promotions.values()) {
+            items.add(new Item(PROMOTION_PROPERTY_PREFIX, null, fields));
+        }
+
+        this.items = items;
+        return items;
+    }
+
+    private ImpressionList impressionList(int index) {
+        ImpressionList list = impressionLists.get(index);
+        if (list == null) {
+            list = new ImpressionList();
+            impressionLists.put(index, list);
+        }
+        return list;
+    }
+
+    private static Map<String, String> fields(Map<Integer, Map<String, String>> items, int index) {
+        Map<String, String> fields = items.get(index);
+        if (fields == null) {
+            fields = new TreeMap<>();
+            items.put(index, fields);
+        }
+        return fields;
+    }
+
+    /**
+     * Finds the end of the index starting at <code>start</code>.
+     *
+     * @return The offset after the last digit, or <code>-1</code> if there is no index or it is too long.
+     */
+    private static int indexEnd(String key, int start) {
+        int end = start;
+        while (end < key.length() && isDigit(key.charAt(end))) {
+            end++;
+        }
+
+        return end == start || end - start > MAX_INDEX_DIGITS ? -1 : end;
+    }
+
+    private static int parseIndex(String key, int start, int end) {
+        int index = 0;
+        for (int i = start; i < end; i++) {
+            index = index * 10 + (key.charAt(i) - '0');
+        }
+        return index;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static class ImpressionList {
+        String name;
+        final Map<Integer, Map<String, String>> impressions = new TreeMap<>();
+    }
+
+    private static class Item {
+        final String prefix;
+        final String listName;
+        final Map<String, String> fields;
+
+        Item(String prefix, String listName, Map<String, String> fields) {
+            this.prefix = prefix;
+            this.listName = listName;
+            this.fields = fields;
+        }
+    }
+
+    /**
+     * Trie node over the characters of the indexed prefixes.
+     */
+    private static class Node {
+        private char[] chars = new char[0];
+        private Node[] children = new Node[0];
+        int kind = NONE;
+
+        Node child(char c) {
+            for (int i = 0; i < chars.length; i++) {
+                if (chars[i] == c) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        void insert(String prefix, int kind) {
+            Node node = this;
+            for (int i = 0; i < prefix.length(); i++) {
+                Node child = node.child(prefix.charAt(i));
+                if (child == null) {
+                    child = new Node();
+                    int length = node.chars.length;
+                    char[] chars = new char[length + 1];
+                    Node[] children = new Node[length + 1];
+                    System.arraycopy(node.chars, 0, chars, 0, length);
+                    System.arraycopy(node.children, 0, children, 0, length);
+                    chars[length] = prefix.charAt(i);
+                    children[length] = child;
+                    node.chars = chars;
+                    node.children = children;
+                }
+                node = child;
+            }
+            node.kind = kind;
+        }
+    }
+}
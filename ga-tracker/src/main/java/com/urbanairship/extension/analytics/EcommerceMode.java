@@ -0,0 +1,29 @@
+/*
+ Copyright 2016 Urban Airship and Contributors
+*/
+
+package com.urbanairship.extension.analytics;
+
+/**
+ * How the indexed enhanced ecommerce parameters of a hit, e.g. <code>&pr1nm</code>,
+ * <code>&il1pi2id</code> or <code>&promo1id</code>, are converted to custom events.
+ */
+public enum EcommerceMode {
+
+    /**
+     * Copy every indexed parameter as its own property.
+     */
+    FLAT,
+
+    /**
+     * Group the parameters into products, impressions and promotions and create one custom event
+     * with a list property per item field, e.g. <code>&pr.nm</code> with the name of every product.
+     */
+    STRUCTURED,
+
+    /**
+     * Group the parameters into products, impressions and promotions and create one custom event
+     * per item, with the hit level properties and the item fields, e.g. <code>&pr.nm</code>.
+     */
+    PER_ITEM
+}
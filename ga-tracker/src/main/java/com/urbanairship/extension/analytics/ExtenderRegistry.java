@@ -0,0 +1,151 @@
+/*
+ Copyright 2016 Urban Airship and Contributors
+*/
+
+package com.urbanairship.extension.analytics;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Copy-on-write registry of custom event extenders. Writers rebuild an immutable dispatch index,
+ * readers only read a volatile reference, so hits never lock or allocate to find their extenders.
+ */
+class ExtenderRegistry {
+
+    private static final GoogleAnalyticsTracker.Extender[] EMPTY = new GoogleAnalyticsTracker.Extender[0];
+
+    private final List<Registration> registrations = new ArrayList<>();
+    private long nextSequence;
+
+    private volatile Index index = new Index(EMPTY, Collections.<String, GoogleAnalyticsTracker.Extender[]>emptyMap());
+
+    /**
+     * Adds an extender, replacing any previous registration of the same extender.
+     *
+     * @param extender The extender.
+     * @param priority The priority. Extenders with a higher priority are applied first, extenders
+     * with the same priority are applied in the order they were added.
+     * @param hitTypes The hit types the extender applies to, or an empty set for all hit types.
+     */
+    synchronized void add(@NonNull GoogleAnalyticsTracker.Extender extender, int priority, @NonNull Set<String> hitTypes) {
+        removeRegistration(extender);
+        registrations.add(new Registration(extender, priority, nextSequence++, hitTypes));
+        rebuild();
+    }
+
+    /**
+     * Removes an extender.
+     *
+     * @param extender The extender.
+     * @return <code>true</code> if the extender was registered, otherwise <code>false</code>.
+     */
+    synchronized boolean remove(@NonNull GoogleAnalyticsTracker.Extender extender) {
+        if (removeRegistration(extender)) {
+            rebuild();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Gets the extenders that apply to a hit type, in priority order. The returned array is shared
+     * and must not be modified.
+     *
+     * @param hitType The hit type, i.e. the <code>&t</code> value.
+     * @return The extenders.
+     */
+    @NonNull
+    GoogleAnalyticsTracker.Extender[] get(@Nullable String hitType) {
+        Index current = index;
+        if (hitType != null) {
+            GoogleAnalyticsTracker.Extender[] scoped = current.byHitType.get(hitType);
+            if (scoped != null) {
+                return scoped;
+            }
+        }
+        return current.unscoped;
+    }
+
+    private boolean removeRegistration(GoogleAnalyticsTracker.Extender extender) {
+        for (int i = 0; i < registrations.size(); i++) {
+            if (registrations.get(i).extender.equals(extender)) {
+                registrations.remove(i);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void rebuild() {
+        List<Registration> sorted = new ArrayList<>(registrations);
+        Collections.sort(sorted, new Comparator<Registration>() {
+            @Override
+            public int compare(Registration lhs, Registration rhs) {
+                if (lhs.priority != rhs.priority) {
+                    return lhs.priority > rhs.priority ? -1 : 1;
+                }
+                return lhs.sequence < rhs.sequence ? -1 : (lhs.sequence == rhs.sequence ? 0 : 1);
+            }
+        });
+
+        Set<String> hitTypes = new HashSet<>();
+        for (Registration registration : sorted) {
+            hitTypes.addAll(registration.hitTypes);
+        }
+
+        Map<String, GoogleAnalyticsTracker.Extender[]> byHitType = new HashMap<>();
+        for (String hitType : hitTypes) {
+            byHitType.put(hitType, select(sorted, hitType));
+        }
+
+        index = new Index(select(sorted, null), byHitType);
+    }
+
+    /**
+     * Selects the extenders that apply to the hit type, keeping the sorted order. Unscoped extenders
+     * apply to every hit type.
+     */
+    private static GoogleAnalyticsTracker.Extender[] select(List<Registration> sorted, @Nullable String hitType) {
+        List<GoogleAnalyticsTracker.Extender> selected = new ArrayList<>();
+        for (Registration registration : sorted) {
+            if (registration.hitTypes.isEmpty() || (hitType != null && registration.hitTypes.contains(hitType))) {
+                selected.add(registration.extender);
+            }
+        }
+        return selected.toArray(new GoogleAnalyticsTracker.Extender[selected.size()]);
+    }
+
+    private static class Registration {
+        final GoogleAnalyticsTracker.Extender extender;
+        final int priority;
+        final long sequence;
+        final Set<String> hitTypes;
+
+        Registration(GoogleAnalyticsTracker.Extender extender, int priority, long sequence, Set<String> hitTypes) {
+            this.extender = extender;
+            this.priority = priority;
+            this.sequence = sequence;
+            this.hitTypes = hitTypes;
+        }
+    }
+
+    private static class Index {
+        final GoogleAnalyticsTracker.Extender[] unscoped;
+        final Map<String, GoogleAnalyticsTracker.Extender[]> byHitType;
+
+        Index(GoogleAnalyticsTracker.Extender[] unscoped, Map<String, GoogleAnalyticsTracker.Extender[]> byHitType) {
+            this.unscoped = unscoped;
+            this.byHitType = byHitType;
+        }
+    }
+}
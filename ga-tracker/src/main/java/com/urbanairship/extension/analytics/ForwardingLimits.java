@@ -0,0 +1,343 @@
+/*
+ Copyright 2016 Urban Airship and Contributors
+*/
+
+package com.urbanairship.extension.analytics;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sampling and token bucket rate limits for forwarding hits to Urban Airship, configured per hit
+ * type (<code>&t</code>) and optionally per event category (<code>&ec</code>). A category limit
+ * replaces the hit type limit for hits in that category. Limits are checked before a hit is
+ * converted, so a throttled hit only costs two map lookups.
+ *
+ * The limits do not affect hits sent to GA. Use {@link GoogleAnalyticsTracker#setSampleRate(double)}
+ * to sample those.
+ */
+public class ForwardingLimits {
+
+    private final Map<String, HitTypeLimits> hitTypeLimits;
+
+    private ForwardingLimits(Builder builder) {
+        Map<String, HitTypeLimits> limits = new HashMap<>();
+        for (Map.Entry<String, LimitConfig> entry : builder.hitTypeConfigs.entrySet()) {
+            limits.put(entry.getKey(), new HitTypeLimits(new Limit(entry.getKey(), entry.getValue())));
+        }
+
+        for (Map.Entry<String, Map<String, LimitConfig>> entry : builder.categoryConfigs.entrySet()) {
+            String hitType = entry.getKey();
+            HitTypeLimits typeLimits = limits.get(hitType);
+            if (typeLimits == null) {
+                typeLimits = new HitTypeLimits(null);
+                limits.put(hitType, typeLimits);
+            }
+
+            for (Map.Entry<String, LimitConfig> categoryEntry : entry.getValue().entrySet()) {
+                String key = hitType + "/" + categoryEntry.getKey();
+                typeLimits.categoryLimits.put(categoryEntry.getKey(), new Limit(key, categoryEntry.getValue()));
+            }
+        }
+
+        this.hitTypeLimits = Collections.unmodifiableMap(limits);
+    }
+
+    /**
+     * Creates a new limits builder.
+     *
+     * @return A new builder.
+     */
+    @NonNull
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    /**
+     * Checks if a hit may be forwarded, consuming a token from the matching rate limit.
+     *
+     * @param json The event JSON.
+     * @return <code>true</code> if the hit may be forwarded, <code>false</code> if it is dropped.
+     */
+    boolean allow(@NonNull Map<String, String> json) {
+        String hitType = json.get(HitParameters.HIT_TYPE);
+        if (hitType == null) {
+            return true;
+        }
+
+        HitTypeLimits typeLimits = hitTypeLimits.get(hitType);
+        if (typeLimits == null) {
+            return true;
+        }
+
+        Limit limit = typeLimits.defaultLimit;
+        if (!typeLimits.categoryLimits.isEmpty()) {
+            String category = json.get(HitParameters.EVENT_CATEGORY);
+            Limit categoryLimit = category == null ? null : typeLimits.categoryLimits.get(category);
+            if (categoryLimit != null) {
+                limit = categoryLimit;
+            }
+        }
+
+        return limit == null || limit.allow();
+    }
+
+    /**
+     * Gets the number of hits dropped per limit. Limits are keyed by hit type, or by hit type and
+     * category separated by a <code>/</code>, e.g. <code>event/scroll</code>.
+     *
+     * @return The dropped hit counts.
+     */
+    @NonNull
+    public Map<String, Long> getDroppedHitCounts() {
+        Map<String, Long> counts = new HashMap<>();
+        for (HitTypeLimits typeLimits : hitTypeLimits.values()) {
+            if (typeLimits.defaultLimit != null) {
+                counts.put(typeLimits.defaultLimit.key, typeLimits.defaultLimit.getDroppedCount());
+            }
+
+            for (Limit limit : typeLimits.categoryLimits.values()) {
+                counts.put(limit.key, limit.getDroppedCount());
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Gets the total number of hits dropped by sampling.
+     *
+     * @return The sampled out hit count.
+     */
+    public long getSampledOutCount() {
+        long count = 0;
+        for (HitTypeLimits typeLimits : hitTypeLimits.values()) {
+            if (typeLimits.defaultLimit != null) {
+                count += typeLimits.defaultLimit.sampledOut.get();
+            }
+
+            for (Limit limit : typeLimits.categoryLimits.values()) {
+                count += limit.sampledOut.get();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Gets the total number of hits dropped by rate limits.
+     *
+     * @return The rate limited hit count.
+     */
+    public long getRateLimitedCount() {
+        long count = 0;
+        for (HitTypeLimits typeLimits : hitTypeLimits.values()) {
+            if (typeLimits.defaultLimit != null) {
+                count += typeLimits.defaultLimit.rateLimited.get();
+            }
+
+            for (Limit limit : typeLimits.categoryLimits.values()) {
+                count += limit.rateLimited.get();
+            }
+        }
+        return count;
+    }
+
+    private static class HitTypeLimits {
+        final Limit defaultLimit;
+        final Map<String, Limit> categoryLimits = new HashMap<>();
+
+        HitTypeLimits(@Nullable Limit defaultLimit) {
+            this.defaultLimit = defaultLimit;
+        }
+    }
+
+    /**
+     * Systematic sampler followed by a token bucket. Sampling keeps exactly the configured fraction
+     * of hits, so the true volume is the forwarded count divided by the sample rate.
+     */
+    private static class Limit {
+        final String key;
+        final double sampleFraction;
+        final TokenBucket bucket;
+
+        final AtomicLong seen = new AtomicLong();
+        final AtomicLong sampledOut = new AtomicLong();
+        final AtomicLong rateLimited = new AtomicLong();
+
+        Limit(String key, LimitConfig config) {
+            this.key = key;
+            this.sampleFraction = config.sampleRate / 100.0;
+            this.bucket = config.maxHits > 0 ? new TokenBucket(config.maxHits, config.periodNanos) : null;
+        }
+
+        boolean allow() {
+            if (sampleFraction < 1.0) {
+                long n = seen.incrementAndGet();
+                if (Math.floor(n * sampleFraction) == Math.floor((n - 1) * sampleFraction)) {
+                    sampledOut.incrementAndGet();
+                    return false;
+                }
+            }
+
+            if (bucket != null && !bucket.tryAcquire()) {
+                rateLimited.incrementAndGet();
+                return false;
+            }
+
+            return true;
+        }
+
+        long getDroppedCount() {
+            return sampledOut.get() + rateLimited.get();
+        }
+    }
+
+    /**
+     * Token bucket that allows bursts of up to its capacity and refills continuously.
+     */
+    private static class TokenBucket {
+        final double capacity;
+        final double tokensPerNano;
+
+        double tokens;
+        long lastRefill;
+
+        TokenBucket(int capacity, long periodNanos) {
+            this.capacity = capacity;
+            this.tokensPerNano = capacity / (double) periodNanos;
+            this.tokens = capacity;
+            this.lastRefill = System.nanoTime();
+        }
+
+        synchronized boolean tryAcquire() {
+            long now = System.nanoTime();
+            tokens = Math.min(capacity, tokens + (now - lastRefill) * tokensPerNano);
+            lastRefill = now;
+
+            if (tokens < 1) {
+                return false;
+            }
+
+            tokens -= 1;
+            return true;
+        }
+    }
+
+    private static class LimitConfig {
+        double sampleRate = 100;
+        int maxHits;
+        long periodNanos;
+    }
+
+    /**
+     * Builds {@link ForwardingLimits}.
+     */
+    public static class Builder {
+
+        private final Map<String, LimitConfig> hitTypeConfigs = new HashMap<>();
+        private final Map<String, Map<String, LimitConfig>> categoryConfigs = new HashMap<>();
+
+        private Builder() {}
+
+        /**
+         * Sets the percentage of hits of a hit type that are forwarded.
+         *
+         * @param hitType The hit type, e.g. <code>timing</code>.
+         * @param sampleRate The sample rate, between 0 and 100.
+         * @return The builder.
+         */
+        @NonNull
+        public Builder setSampleRate(@NonNull String hitType, double sampleRate) {
+            return setSampleRate(hitType, null, sampleRate);
+        }
+
+        /**
+         * Sets the percentage of hits of a hit type and event category that are forwarded.
+         *
+         * @param hitType The hit type, e.g. <code>event</code>.
+         * @param category The event category, or <code>null</code> for the whole hit type.
+         * @param sampleRate The sample rate, between 0 and 100.
+         * @return The builder.
+         */
+        @NonNull
+        public Builder setSampleRate(@NonNull String hitType, @Nullable String category, double sampleRate) {
+            if (sampleRate < 0 || sampleRate > 100) {
+                throw new IllegalArgumentException("Sample rate must be between 0 and 100");
+            }
+
+            config(hitType, category).sampleRate = sampleRate;
+            return this;
+        }
+
+        /**
+         * Limits the number of hits of a hit type that are forwarded per period.
+         *
+         * @param hitType The hit type, e.g. <code>timing</code>.
+         * @param maxHits The maximum number of hits per period, which is also the maximum burst.
+         * @param period The period.
+         * @param unit The period unit.
+         * @return The builder.
+         */
+        @NonNull
+        public Builder setRateLimit(@NonNull String hitType, int maxHits, long period, @NonNull TimeUnit unit) {
+            return setRateLimit(hitType, null, maxHits, period, unit);
+        }
+
+        /**
+         * Limits the number of hits of a hit type and event category that are forwarded per period.
+         *
+         * @param hitType The hit type, e.g. <code>event</code>.
+         * @param category The event category, or <code>null</code> for the whole hit type.
+         * @param maxHits The maximum number of hits per period, which is also the maximum burst.
+         * @param period The period.
+         * @param unit The period unit.
+         * @return The builder.
+         */
+        @NonNull
+        public Builder setRateLimit(@NonNull String hitType, @Nullable String category, int maxHits, long period, @NonNull TimeUnit unit) {
+            if (maxHits < 1 || period < 1) {
+                throw new IllegalArgumentException("Max hits and period must be greater than 0");
+            }
+
+            LimitConfig config = config(hitType, category);
+            config.maxHits = maxHits;
+            config.periodNanos = unit.toNanos(period);
+            return this;
+        }
+
+        /**
+         * Creates the limits.
+         *
+         * @return The limits.
+         */
+        @NonNull
+        public ForwardingLimits build() {
+            return new ForwardingLimits(this);
+        }
+
+        private LimitConfig config(String hitType, @Nullable String category) {
+            Map<String, LimitConfig> configs = hitTypeConfigs;
+            String key = hitType;
+            if (category != null) {
+                configs = categoryConfigs.get(hitType);
+                if (configs == null) {
+                    configs = new HashMap<>();
+                    categoryConfigs.put(hitType, configs);
+                }
+                key = category;
+            }
+
+            LimitConfig config = configs.get(key);
+            if (config == null) {
+                config = new LimitConfig();
+                configs.put(key, config);
+            }
+            return config;
+        }
+    }
+}
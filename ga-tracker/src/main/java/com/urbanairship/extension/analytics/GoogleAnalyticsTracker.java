@@ -6,16 +6,33 @@ package com.urbanairship.extension.analytics;
 
 import android.net.Uri;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 
 import com.google.android.gms.analytics.Tracker;
+import com.urbanairship.Logger;
+import com.urbanairship.UAirship;
 import com.urbanairship.analytics.CustomEvent;
 
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Urban Airship wrapper for the Google Analytics Tracker class.
@@ -30,68 +47,1272 @@ public class GoogleAnalyticsTracker {
      * Application Version, Application ID, and Application Installer ID.
      *
      * Client ID is not included here due to the possible deadlock incited by its retrieval while an
-     * event is being sent. If you would like to include the Client ID as a parameter, we recommend
-     * retrieving the value once when the Tracker instance is created in the Application class before
-     * including the field in an Extender. This will cache the value and prevent any future race conditions.
+     * event is being sent. It is one of the {@link #EXPENSIVE_TRACKER_FIELDS} instead, which are read on
+     * a background thread and cached. {@link #enableLegIsolation(IsolationPolicy, IsolationPolicy)}
+     * keeps a stalled GA call from blocking the UA conversion or the sending thread.
+     *
+     * The values are read from a snapshot that is refreshed whenever a field is set through this wrapper.
+     * Call {@link #refreshTrackerSnapshot()} after changing any of these fields directly on the Tracker.
+     */
+    public static final List<String> TRACKER_FIELDS = Arrays.asList("&v", "&an", "&tid", "&uid",
+            "&dr", "&cn", "&cs", "&cm", "&ck", "&cc", "&ci", "&gclid", "&dclid", "&dl", "&dh", "&dp",
+            "&dt", "&cd", "&av", "&aid", "&aiid");
+
+    /**
+     * Tracker level fields that are expensive or unsafe to read while a hit is sent - includes Client ID.
+     * They are read on a background thread when the tracker is created and after they are set through
+     * this wrapper, and the cached values are included in custom events. Until the first read finishes,
+     * custom events do not include them.
+     */
+    public static final List<String> EXPENSIVE_TRACKER_FIELDS = Arrays.asList(HitParameters.CLIENT_ID);
+
+    /**
+     * Tracker level fields that change with every screen - includes Document location URL, Document
+     * Path, Document Title and Screen Name. With delta encoding they stay on every custom event
+     * instead of being versioned, so a screen change does not create a context event.
+     */
+    public static final List<String> SCREEN_TRACKER_FIELDS = Arrays.asList("&dl", "&dp", "&dt", HitParameters.SCREEN_NAME);
+
+    private static final ThreadPoolExecutor FIELD_RESOLVER = createFieldResolver();
+
+    /**
+     * Hit type of the summary hits emitted by timing aggregation. The summary is converted like any
+     * other hit, so the custom event name is the hit type.
+     */
+    public static final String TIMING_SUMMARY_HIT_TYPE = "timing_summary";
+
+    /**
+     * Hit type of the summary hits emitted by session roll-up.
+     */
+    public static final String SESSION_SUMMARY_HIT_TYPE = "session_summary";
+
+    /**
+     * Hit type of the context events created by delta encoding.
+     */
+    public static final String TRACKER_CONTEXT_HIT_TYPE = "tracker_context";
+
+    /**
+     * Property holding the context version, on context events and on every event created with delta
+     * encoding. The version is a string made of a random epoch and a counter, e.g.
+     * <code>k3x9q0vbd1-4</code>, so it is unique across processes.
+     */
+    public static final String CONTEXT_VERSION_PROPERTY = "context_version";
+
+    /**
+     * Property of a context event holding the version it is a delta of. Absent when the context event
+     * holds every field.
+     */
+    public static final String CONTEXT_BASE_VERSION_PROPERTY = "context_base_version";
+
+    /**
+     * List property of a context event holding the fields that no longer have a value.
+     */
+    public static final String CONTEXT_REMOVED_PROPERTY = "context_removed";
+
+    /**
+     * Property holding the number of identical hits merged into an event by hit coalescing.
+     */
+    public static final String REPEAT_COUNT_PROPERTY = "repeat_count";
+
+    private volatile Tracker tracker;
+    private volatile Tracker[] additionalTrackers = new Tracker[0];
+    private final ExtenderRegistry extenders = new ExtenderRegistry();
+
+    private volatile boolean googleAnalyticsEnabled = true;
+    private volatile boolean urbanAirshipEnabled = true;
+    private volatile AsyncDispatcher asyncDispatcher;
+    private volatile IsolatedLeg googleAnalyticsLeg;
+    private volatile IsolatedLeg urbanAirshipLeg;
+    private volatile PropertyProjection projection;
+    private volatile EcommerceMode ecommerceMode = EcommerceMode.FLAT;
+    private volatile boolean typedProperties;
+    private volatile boolean deltaEncoding;
+    private final TrackerContext trackerContext = new TrackerContext(SCREEN_TRACKER_FIELDS);
+    private final TrackerContext.ChangeListener contextListener = new TrackerContext.ChangeListener() {
+        @Override
+        public void onContextChanged(@NonNull String version, @Nullable String baseVersion, @NonNull Map<String, String> changed, @NonNull List<String> removed) {
+            submitContextEvent(version, baseVersion, changed, removed);
+        }
+    };
+    private volatile PayloadBudget payloadBudget;
+    private volatile HitFilter hitFilter;
+    private volatile HitCoalescer hitCoalescer;
+    private volatile ForwardingLimits forwardingLimits;
+    private volatile TimingAggregator timingAggregator;
+    private volatile SessionRollup sessionRollup;
+    private volatile Long sessionTimeoutSeconds;
+    private volatile HitJournal hitJournal;
+    private volatile HitRecorder hitRecorder;
+    private volatile CustomEventSink sink = new TrackingEventSink();
+    private volatile TrackerMetrics metrics;
+    private ScheduledExecutorService metricsScheduler;
+
+    // Lazy initialization state, only used by trackers created with createLazily
+    private final Object pendingLock = new Object();
+    private final Object pendingDrainLock = new Object();
+    private Map<String, TrackerCall> pendingCalls;
+    private Map<String, String> pendingScreenFields;
+    private volatile HitRing pendingHits;
+    private final AtomicLong pendingDroppedCount = new AtomicLong();
+    private final AtomicLong legDroppedCount = new AtomicLong();
+    private final AtomicLong retiredDroppedCount = new AtomicLong();
+    private volatile boolean airshipReady;
+    private volatile boolean trackerFailed;
+
+    private final Object snapshotLock = new Object();
+    private volatile TrackerFieldSnapshot trackerSnapshot;
+    private volatile TrackerFieldSnapshot expensiveFieldSnapshot = TrackerFieldSnapshot.EMPTY;
+
+    // Set on the dispatch worker while it converts a queued hit, so the hit keeps the fields of its send
+    private final ThreadLocal<AsyncDispatcher.QueuedHit> convertingHit = new ThreadLocal<>();
+
+    /**
+     * Constructor for creating the UA Tracker wrapper.
+     *
+     * @param tracker The GA Tracker instance.
+     */
+    public GoogleAnalyticsTracker(Tracker tracker) {
+        this.tracker = tracker;
+        refreshTrackerSnapshot();
+        resolveExpensiveFields();
+    }
+
+    /**
+     * Constructor for creating a UA Tracker wrapper that fans hits out to several GA Trackers, e.g. one
+     * per GA property. See {@link #addTracker(Tracker)}.
+     *
+     * @param tracker The primary GA Tracker instance.
+     * @param additionalTrackers The additional GA Tracker instances.
+     */
+    public GoogleAnalyticsTracker(Tracker tracker, Tracker... additionalTrackers) {
+        this(tracker);
+        this.additionalTrackers = additionalTrackers.clone();
+    }
+
+    private GoogleAnalyticsTracker(int bufferSize) {
+        this.pendingCalls = new LinkedHashMap<>();
+        this.pendingScreenFields = new HashMap<>();
+        this.pendingHits = new HitRing(bufferSize);
+        this.trackerSnapshot = TrackerFieldSnapshot.EMPTY;
+    }
+
+    /**
+     * Creates a tracker that is usable at once, without creating the GA Tracker or waiting for UA on
+     * the calling thread. The GA Tracker is created by the factory on a background thread. Until it
+     * is created and <code>UAirship</code> has taken off, sent hits are held in a bounded in-memory
+     * buffer, overwriting the oldest hit when full, and Tracker setters are recorded and applied to
+     * the GA Tracker once it is created. The buffered hits are then sent in order. The
+     * {@link #SCREEN_TRACKER_FIELDS} are copied into each hit when it is buffered, so the hit keeps
+     * the screen it was sent on. The other tracker level fields of the buffered hits are read when
+     * they are sent. Only the last call of each setter, or of {@link #set(String, String)} per field,
+     * is recorded.
+     *
+     * If the factory throws or returns <code>null</code>, the tracker fails: the error is logged, the
+     * buffered hits and recorded setters are dropped, and later hits are dropped as well. See
+     * {@link #isFailed()}. Dropped hits are counted in {@link MetricsSnapshot#getDroppedCount()}.
+     *
+     * While the GA Tracker is being created, {@link #getTracker()} and {@link #get(String)} return
+     * <code>null</code>.
+     *
+     * @param factory The GA Tracker factory.
+     * @param bufferSize The maximum number of hits buffered until the tracker is ready.
+     * @return The UA Tracker instance.
+     */
+    @NonNull
+    public static GoogleAnalyticsTracker createLazily(@NonNull final TrackerFactory factory, int bufferSize) {
+        final GoogleAnalyticsTracker uaTracker = new GoogleAnalyticsTracker(bufferSize);
+
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Tracker tracker;
+                try {
+                    tracker = factory.createTracker();
+                } catch (RuntimeException e) {
+                    Logger.error("GoogleAnalyticsTracker - Failed to create the GA Tracker.", e);
+                    uaTracker.onTrackerCreationFailed();
+                    return;
+                }
+
+                if (tracker == null) {
+                    Logger.error("GoogleAnalyticsTracker - The TrackerFactory returned no GA Tracker.");
+                    uaTracker.onTrackerCreationFailed();
+                    return;
+                }
+
+                uaTracker.onTrackerCreated(tracker);
+            }
+        }, "GoogleAnalyticsTracker-init").start();
+
+        UAirship.shared(new UAirship.OnReadyCallback() {
+            @Override
+            public void onAirshipReady(UAirship airship) {
+                uaTracker.onAirshipReady();
+            }
+        });
+
+        return uaTracker;
+    }
+
+    /**
+     * Checks if the tracker is ready. Trackers created with the constructor are always ready, trackers
+     * created with {@link #createLazily(TrackerFactory, int)} are ready once the GA Tracker was created,
+     * <code>UAirship</code> has taken off and the buffered hits were sent. A failed tracker is never ready.
+     *
+     * @return <code>true</code> if hits are no longer buffered, otherwise <code>false</code>.
+     */
+    public boolean isReady() {
+        return pendingHits == null && !trackerFailed;
+    }
+
+    /**
+     * Checks if a tracker created with {@link #createLazily(TrackerFactory, int)} failed to create
+     * the GA Tracker. A failed tracker drops every hit.
+     *
+     * @return <code>true</code> if the GA Tracker could not be created, otherwise <code>false</code>.
+     */
+    public boolean isFailed() {
+        return trackerFailed;
+    }
+
+    /**
+     * Called once UA is ready.
+     */
+    void onAirshipReady() {
+        airshipReady = true;
+
+        // Ready callbacks run on the main thread, keep the buffered hits off it
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                sendPendingHits();
+            }
+        }, "GoogleAnalyticsTracker-init").start();
+    }
+
+    private void onTrackerCreated(Tracker created) {
+        synchronized (pendingLock) {
+            for (TrackerCall call : pendingCalls.values()) {
+                call.apply(created);
+            }
+            pendingCalls = null;
+            pendingScreenFields = null;
+            tracker = created;
+        }
+
+        refreshTrackerSnapshot();
+        resolveExpensiveFields();
+        sendPendingHits();
+    }
+
+    private void onTrackerCreationFailed() {
+        synchronized (pendingLock) {
+            trackerFailed = true;
+            pendingCalls = null;
+            pendingScreenFields = null;
+
+            HitRing ring = pendingHits;
+            if (ring != null) {
+                pendingDroppedCount.addAndGet(ring.size());
+                pendingHits = null;
+            }
+        }
+    }
+
+    /**
+     * Sends the buffered hits in order once both the GA Tracker and UA are ready. Hits sent while
+     * draining are buffered behind the existing hits until the buffer is empty.
+     */
+    private void sendPendingHits() {
+        if (tracker == null || !airshipReady) {
+            return;
+        }
+
+        // Only one thread drains, so the hits are sent in order
+        synchronized (pendingDrainLock) {
+            while (true) {
+                Map<String, String> hit;
+                synchronized (pendingLock) {
+                    HitRing ring = pendingHits;
+                    if (ring == null) {
+                        return;
+                    }
+
+                    hit = ring.poll();
+                    if (hit == null) {
+                        pendingHits = null;
+                        return;
+                    }
+                }
+
+                try {
+                    sendNow(hit);
+                } catch (RuntimeException e) {
+                    Logger.error("GoogleAnalyticsTracker - Failed to send buffered hit.", e);
+                }
+            }
+        }
+    }
+
+    private boolean bufferPendingHit(Map<String, String> json) {
+        synchronized (pendingLock) {
+            if (trackerFailed) {
+                pendingDroppedCount.incrementAndGet();
+                return true;
+            }
+
+            HitRing ring = pendingHits;
+            if (ring == null) {
+                return false;
+            }
+
+            // The buffered hit is sent after the screen may have changed, so it keeps its screen fields
+            Map<String, String> copy = new HashMap<>(json);
+            if (pendingScreenFields != null) {
+                for (Map.Entry<String, String> field : pendingScreenFields.entrySet()) {
+                    if (!copy.containsKey(field.getKey())) {
+                        copy.put(field.getKey(), field.getValue());
+                    }
+                }
+            } else {
+                TrackerFieldSnapshot snapshot = trackerSnapshot;
+                for (int i = 0; i < snapshot.size(); i++) {
+                    String key = snapshot.getKey(i);
+                    if (SCREEN_TRACKER_FIELDS.contains(key) && !copy.containsKey(key)) {
+                        copy.put(key, snapshot.getValue(i));
+                    }
+                }
+            }
+
+            if (ring.offer(copy)) {
+                pendingDroppedCount.incrementAndGet();
+            }
+            return true;
+        }
+    }
+
+    private void applyToTracker(String key, TrackerCall call) {
+        applyToTracker(key, null, null, call);
+    }
+
+    /**
+     * Applies a setter to every Tracker, or records it until the GA Tracker is created.
+     *
+     * @param key The setter key, only the last call per key is recorded.
+     * @param screenField The screen field the setter sets, or <code>null</code> if it sets none of
+     * the {@link #SCREEN_TRACKER_FIELDS}.
+     * @param value The screen field value.
+     * @param call The setter call.
+     */
+    private void applyToTracker(String key, @Nullable String screenField, @Nullable String value, TrackerCall call) {
+        applyToPrimaryTracker(key, screenField, value, call);
+
+        for (Tracker additional : additionalTrackers) {
+            call.apply(additional);
+        }
+    }
+
+    private void applyToPrimaryTracker(String key, @Nullable String screenField, @Nullable String value, TrackerCall call) {
+        Tracker current = tracker;
+        if (current == null) {
+            synchronized (pendingLock) {
+                current = tracker;
+                if (current == null) {
+                    // Only the last call per key is kept, moved behind the calls made since
+                    if (pendingCalls != null) {
+                        pendingCalls.remove(key);
+                        pendingCalls.put(key, call);
+                    }
+
+                    if (pendingScreenFields != null && screenField != null) {
+                        if (value == null) {
+                            pendingScreenFields.remove(screenField);
+                        } else {
+                            pendingScreenFields.put(screenField, value);
+                        }
+                    }
+                    return;
+                }
+            }
+        }
+
+        call.apply(current);
+    }
+
+    /**
+     * Adds a GA Tracker that every hit is also sent to, e.g. to report to another GA property. The
+     * hit is still converted to a single UA custom event, with the tracker level fields of the
+     * primary Tracker. Setters called on this wrapper afterwards are applied to every Tracker, so the
+     * Trackers share the same tracker level fields apart from the ones set directly on a Tracker,
+     * e.g. the tracking ID.
+     *
+     * @param tracker The GA Tracker instance.
+     * @return The UA Tracker instance.
+     */
+    public synchronized GoogleAnalyticsTracker addTracker(@NonNull Tracker tracker) {
+        Tracker[] current = additionalTrackers;
+        Tracker[] updated = Arrays.copyOf(current, current.length + 1);
+        updated[current.length] = tracker;
+        additionalTrackers = updated;
+        return this;
+    }
+
+    /**
+     * Removes a GA Tracker added with {@link #addTracker(Tracker)}.
+     *
+     * @param tracker The GA Tracker instance.
+     * @return The UA Tracker instance.
+     */
+    public synchronized GoogleAnalyticsTracker removeTracker(@NonNull Tracker tracker) {
+        List<Tracker> updated = new ArrayList<>(Arrays.asList(additionalTrackers));
+        if (updated.remove(tracker)) {
+            additionalTrackers = updated.toArray(new Tracker[updated.size()]);
+        }
+        return this;
+    }
+
+    /**
+     * Gets the GA Trackers hits are sent to, the primary Tracker first.
+     *
+     * @return The GA Tracker instances. Empty if a tracker created with
+     * {@link #createLazily(TrackerFactory, int)} has not created the primary Tracker yet and no
+     * additional Trackers were added.
+     */
+    @NonNull
+    public List<Tracker> getTrackers() {
+        List<Tracker> trackers = new ArrayList<>();
+        Tracker primary = tracker;
+        if (primary != null) {
+            trackers.add(primary);
+        }
+        Collections.addAll(trackers, additionalTrackers);
+        return trackers;
+    }
+
+    /**
+     * Set the flag to send events to GA. Defaults to <code>true</code>.
+     *
+     * @param enabled The flag - set to <code>true</code> to send events to GA, or <code>false</code>
+     *                to stop sending the events.
+     * @return The UA Tracker instance.
+     */
+    public GoogleAnalyticsTracker setGoogleAnalyticsEnabled(boolean enabled) {
+        googleAnalyticsEnabled = enabled;
+        return this;
+    }
+
+    /**
+     * Set the flag to send events to UA. Defaults to <code>false</code>.
+     *
+     * @param enabled The flag - set to <code>true</code> to send events to UA, or <code>false</code>
+     *                to stop sending the events.
+     * @return The UA Tracker instance.
+     */
+    public GoogleAnalyticsTracker setUrbanAirshipEnabled(boolean enabled) {
+        urbanAirshipEnabled = enabled;
+        return this;
+    }
+
+    /**
+     * Add a custom event extender. The extender is applied to every hit type with priority 0.
+     *
+     * @param extender The event extender.
+     * @return The UA Tracker instance.
+     */
+    public GoogleAnalyticsTracker addExtender(Extender extender) {
+        return addExtender(extender, 0);
+    }
+
+    /**
+     * Add a custom event extender that only applies to the given hit types. Extenders with a higher
+     * priority are applied first, extenders with the same priority are applied in the order they were
+     * added. Adding an extender that is already registered replaces its priority and hit types.
+     * Safe to call while other threads are sending hits.
+     *
+     * @param extender The event extender.
+     * @param priority The extender priority.
+     * @param hitTypes The hit types (<code>&t</code> values, e.g. "screenview", "event" or "timing")
+     *                 the extender applies to. Applies to all hit types if none are given.
+     * @return The UA Tracker instance.
+     */
+    public GoogleAnalyticsTracker addExtender(@NonNull Extender extender, int priority, String... hitTypes) {
+        Set<String> types = hitTypes.length == 0 ? Collections.<String>emptySet() : new HashSet<>(Arrays.asList(hitTypes));
+        extenders.add(extender, priority, types);
+        return this;
+    }
+
+    /**
+     * Remove a custom event extender. Safe to call while other threads are sending hits.
+     *
+     * @param extender The event extender.
+     * @return The UA Tracker instance.
+     */
+    public GoogleAnalyticsTracker removeExtender(Extender extender) {
+        extenders.remove(extender);
+
+        TrackerMetrics metrics = this.metrics;
+        if (metrics != null) {
+            metrics.removeExtender(extender);
+        }
+        return this;
+    }
+
+    /**
+     * Sets the sink that receives the created custom events. Defaults to a {@link TrackingEventSink},
+     * which tracks each event with Urban Airship analytics.
+     *
+     * @param sink The custom event sink.
+     * @return The UA Tracker instance.
+     */
+    public GoogleAnalyticsTracker setCustomEventSink(@NonNull CustomEventSink sink) {
+        this.sink = sink;
+        return this;
+    }
+
+    /**
+     * Gets the sink that receives the created custom events.
+     *
+     * @return The custom event sink.
+     */
+    @NonNull
+    public CustomEventSink getCustomEventSink() {
+        return sink;
+    }
+
+    /**
+     * Enables the built-in metrics: per hit type counts of hits sent to GA and custom events created,
+     * latency histograms for the GA Tracker, the conversion, each extender and the sink, and error
+     * counts. Disabled by default, disabling discards the recorded metrics.
+     *
+     * @param enabled <code>true</code> to record metrics, otherwise <code>false</code>.
+     * @return The UA Tracker instance.
+     */
+    public synchronized GoogleAnalyticsTracker setMetricsEnabled(boolean enabled) {
+        if (!enabled) {
+            metrics = null;
+        } else if (metrics == null) {
+            metrics = new TrackerMetrics();
+        }
+        return this;
+    }
+
+    /**
+     * Gets a snapshot of the metrics. The drop count also includes hits dropped while metrics were
+     * disabled, and hits dropped by filters, limits and coalescing that were replaced or disabled
+     * since. Duplicates merged into a repeat count are forwarded, so they are not counted as dropped.
+     *
+     * @return The metrics snapshot. Empty apart from the drop count if metrics are disabled.
+     */
+    @NonNull
+    public MetricsSnapshot getMetricsSnapshot() {
+        long dropped = getAsyncDroppedHitCount() + pendingDroppedCount.get() + getLegDroppedHitCount()
+                + retiredDroppedCount.get();
+
+        HitCoalescer coalescer = hitCoalescer;
+        if (coalescer != null) {
+            dropped += coalescer.getDroppedCount();
+        }
+
+        ForwardingLimits limits = forwardingLimits;
+        if (limits != null) {
+            dropped += limits.getSampledOutCount() + limits.getRateLimitedCount();
+        }
+
+        HitFilter filter = hitFilter;
+        if (filter != null) {
+            dropped += filter.getDroppedCount();
+        }
+
+        TrackerMetrics metrics = this.metrics;
+        return (metrics == null ? new TrackerMetrics() : metrics).snapshot(dropped);
+    }
+
+    /**
+     * Sets a listener that periodically receives a metrics snapshot on a background thread. Enables
+     * metrics if a listener is set.
+     *
+     * @param listener The listener, or <code>null</code> to stop the periodic snapshots.
+     * @param interval The snapshot interval.
+     * @param unit The interval unit.
+     * @return The UA Tracker instance.
+     */
+    public synchronized GoogleAnalyticsTracker setMetricsListener(@Nullable final MetricsListener listener, long interval, @NonNull TimeUnit unit) {
+        if (metricsScheduler != null) {
+            metricsScheduler.shutdown();
+            metricsScheduler = null;
+        }
+
+        if (listener == null) {
+            return this;
+        }
+
+        setMetricsEnabled(true);
+        metricsScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(@NonNull Runnable runnable) {
+                Thread thread = new Thread(runnable, "GoogleAnalyticsTracker-metrics");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        metricsScheduler.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    listener.onMetrics(getMetricsSnapshot());
+                } catch (RuntimeException e) {
+                    Logger.error("GoogleAnalyticsTracker - Metrics listener failed.", e);
+                }
+            }
+        }, interval, interval, unit);
+
+        return this;
+    }
+
+    /**
+     * Sets the projection applied to the hit and Tracker fields when they are copied to the custom
+     * event. Properties added by extenders are not projected.
+     *
+     * @param projection The projection, or <code>null</code> to copy every field unchanged.
+     * @return The UA Tracker instance.
+     */
+    public GoogleAnalyticsTracker setPropertyProjection(@Nullable PropertyProjection projection) {
+        this.projection = projection;
+        return this;
+    }
+
+    /**
+     * Sets how the indexed enhanced ecommerce parameters of a hit are converted. Defaults to
+     * {@link EcommerceMode#FLAT}. In {@link EcommerceMode#PER_ITEM} mode a hit with products,
+     * impressions or promotions is converted to one custom event per item, bypassing
+     * {@link #buildCustomEvent(Map)}. The extenders are applied to every event.
+     *
+     * @param ecommerceMode The ecommerce mode.
+     * @return The UA Tracker instance.
+     */
+    public GoogleAnalyticsTracker setEcommerceMode(@NonNull EcommerceMode ecommerceMode) {
+        this.ecommerceMode = ecommerceMode;
+        return this;
+    }
+
+    /**
+     * Sets whether the tracker level fields are delta encoded. Instead of repeating the
+     * {@link #TRACKER_FIELDS} and {@link #EXPENSIVE_TRACKER_FIELDS} on every custom event, they are
+     * sent in a custom event named {@link #TRACKER_CONTEXT_HIT_TYPE} with a
+     * {@link #CONTEXT_VERSION_PROPERTY}, and every other event only carries the version and the
+     * {@link #SCREEN_TRACKER_FIELDS}, which change too often to version.
+     *
+     * The first context event after enabling holds every field. When a field changes through this
+     * wrapper, the next event is preceded by a context event with a new version that only holds the
+     * changed fields, the {@link #CONTEXT_BASE_VERSION_PROPERTY} it applies to and the
+     * {@link #CONTEXT_REMOVED_PROPERTY} fields. The full fields of an event are rebuilt by applying
+     * the context events up to its version in order. Defaults to <code>false</code>.
+     *
+     * @param deltaEncoding <code>true</code> to delta encode the tracker fields.
+     * @return The UA Tracker instance.
+     */
+    public GoogleAnalyticsTracker setDeltaEncoding(boolean deltaEncoding) {
+        if (deltaEncoding && !this.deltaEncoding) {
+            trackerContext.reset();
+        }
+
+        this.deltaEncoding = deltaEncoding;
+        return this;
+    }
+
+    /**
+     * Sets whether the numeric and boolean GA parameters are added to the custom event as numbers and
+     * booleans instead of strings, e.g. the event value (<code>&ev</code>), timing
+     * (<code>&utt</code>), revenue (<code>&tr</code>), queue time (<code>&qt</code>), custom metrics
+     * and the non-interaction flag (<code>&ni</code>). Values that do not parse are still added as
+     * strings. When enabled, the custom event value is also set from the event value, or the revenue
+     * if the hit has no event value. Defaults to <code>false</code>.
+     *
+     * @param typedProperties <code>true</code> to add typed properties.
+     * @return The UA Tracker instance.
+     */
+    public GoogleAnalyticsTracker setTypedProperties(boolean typedProperties) {
+        this.typedProperties = typedProperties;
+        return this;
+    }
+
+    /**
+     * Sets the size limits enforced on the custom event properties. Oversized values are truncated
+     * and the lowest priority properties are shed until the event fits. The budget applies to the
+     * finished event, including the ecommerce lists, the context events and the properties added by
+     * extenders. The shed and truncated counts are available from the budget.
+     *
+     * @param payloadBudget The budget, or <code>null</code> to add every property.
+     * @return The UA Tracker instance.
+     */
+    public GoogleAnalyticsTracker setPayloadBudget(@Nullable PayloadBudget payloadBudget) {
+        this.payloadBudget = payloadBudget;
+        return this;
+    }
+
+    /**
+     * Gets the size limits enforced on the custom event properties.
+     *
+     * @return The budget, or <code>null</code> if no budget is set.
+     */
+    @Nullable
+    public PayloadBudget getPayloadBudget() {
+        return payloadBudget;
+    }
+
+    /**
+     * Sets the filter rules deciding which hits are forwarded to UA. The rules are checked before
+     * anything else is done with a hit, so a dropped hit is never converted, coalesced, counted by
+     * session roll-up or timing aggregation, or queued. Hits dropped by the rules are still sent to
+     * GA.
+     *
+     * @param filter The filter, or <code>null</code> to forward every hit.
+     * @return The UA Tracker instance.
+     */
+    public synchronized GoogleAnalyticsTracker setHitFilter(@Nullable HitFilter filter) {
+        HitFilter previous = hitFilter;
+        if (previous != null && previous != filter) {
+            retiredDroppedCount.addAndGet(previous.getDroppedCount());
+        }
+
+        this.hitFilter = filter;
+        return this;
+    }
+
+    /**
+     * Gets the filter rules deciding which hits are forwarded to UA.
+     *
+     * @return The filter, or <code>null</code> if no filter is set.
+     */
+    @Nullable
+    public HitFilter getHitFilter() {
+        return hitFilter;
+    }
+
+    /**
+     * Enables coalescing of identical hits forwarded to UA, e.g. a screenview sent again after a
+     * configuration change or an event sent twice by a double tap. Hits with the same key fields sent
+     * within the window of the first one are duplicates. With {@link CoalescingMode#SUPPRESS} the
+     * first hit is forwarded at once and its duplicates are dropped. With {@link CoalescingMode#MERGE}
+     * the first hit is held until its window expires, or until {@link #flush()}, and forwarded once
+     * with the {@link #REPEAT_COUNT_PROPERTY} when duplicates were merged into it, keeping the screen
+     * name it was sent on. Hits are still sent to GA as is.
+     *
+     * @param policy The coalescing policy.
+     * @return The UA Tracker instance.
+     */
+    public synchronized GoogleAnalyticsTracker enableCoalescing(@NonNull CoalescingPolicy policy) {
+        if (hitCoalescer != null) {
+            hitCoalescer.shutdown();
+            retiredDroppedCount.addAndGet(hitCoalescer.getDroppedCount());
+        }
+
+        hitCoalescer = new HitCoalescer(policy, new HitCoalescer.HitListener() {
+            @Override
+            public void onHit(@NonNull Map<String, String> hit) {
+                forwardCoalesced(hit);
+            }
+        });
+
+        return this;
+    }
+
+    /**
+     * Disables hit coalescing, forwarding the held hits.
+     *
+     * @return The UA Tracker instance.
+     */
+    public synchronized GoogleAnalyticsTracker disableCoalescing() {
+        if (hitCoalescer != null) {
+            HitCoalescer coalescer = hitCoalescer;
+            hitCoalescer = null;
+            coalescer.shutdown();
+            retiredDroppedCount.addAndGet(coalescer.getDroppedCount());
+        }
+        return this;
+    }
+
+    /**
+     * Gets the number of duplicate hits suppressed or merged since coalescing was enabled.
+     *
+     * @return The coalesced hit count, or <code>0</code> if coalescing is disabled.
+     */
+    public long getCoalescedHitCount() {
+        HitCoalescer coalescer = hitCoalescer;
+        return coalescer == null ? 0 : coalescer.getCoalescedCount();
+    }
+
+    /**
+     * Sets the sampling and rate limits applied to hits forwarded to UA. Hits dropped by the limits
+     * are still sent to GA.
+     *
+     * @param limits The limits, or <code>null</code> to forward every hit.
+     * @return The UA Tracker instance.
+     */
+    public synchronized GoogleAnalyticsTracker setForwardingLimits(@Nullable ForwardingLimits limits) {
+        ForwardingLimits previous = forwardingLimits;
+        if (previous != null && previous != limits) {
+            retiredDroppedCount.addAndGet(previous.getSampledOutCount() + previous.getRateLimitedCount());
+        }
+
+        this.forwardingLimits = limits;
+        return this;
+    }
+
+    /**
+     * Gets the sampling and rate limits applied to hits forwarded to UA.
+     *
+     * @return The limits, or <code>null</code> if no limits are set.
+     */
+    @Nullable
+    public ForwardingLimits getForwardingLimits() {
+        return forwardingLimits;
+    }
+
+    /**
+     * Enables asynchronous dispatch of UA custom events. Once enabled, {@link #send(Map)} only queues
+     * the hit and a background worker converts the queued hits to custom events in batches with
+     * {@link #buildCustomEvent(Map)}, submitting each batch to the {@link CustomEventSink} at once.
+     * Hits are still sent to GA on the calling thread, since the GA Tracker already dispatches
+     * asynchronously. Tracker level fields are captured when the hit is queued, so a field set between
+     * sending and converting a hit does not change its custom event.
+     *
+     * @param queueCapacity The maximum number of hits waiting to be converted.
+     * @param batchSize The maximum number of hits converted per batch.
+     * @param overflowPolicy The policy applied when a hit is sent while the queue is full.
+     * @return The UA Tracker instance.
+     */
+    public synchronized GoogleAnalyticsTracker enableAsyncDispatch(int queueCapacity, int batchSize, @NonNull OverflowPolicy overflowPolicy) {
+        if (asyncDispatcher != null) {
+            asyncDispatcher.shutdown();
+        }
+
+        asyncDispatcher = new AsyncDispatcher(queueCapacity, batchSize, overflowPolicy, new AsyncDispatcher.BatchHandler() {
+
+            // Only used by the worker thread, reused for every batch
+            private final List<CustomEvent> events = new ArrayList<>();
+
+            @Override
+            public void onBatch(@NonNull List<AsyncDispatcher.QueuedHit> hits) {
+                events.clear();
+                for (AsyncDispatcher.QueuedHit hit : hits) {
+                    convertingHit.set(hit);
+                    try {
+                        buildCustomEvents(hit.hit, events);
+                    } catch (RuntimeException e) {
+                        recordError();
+                        Logger.error("GoogleAnalyticsTracker - Failed to create custom event.", e);
+                    } finally {
+                        convertingHit.set(null);
+                    }
+                }
+
+                if (!events.isEmpty()) {
+                    submitBatch(events);
+                    events.clear();
+                }
+            }
+        });
+
+        return this;
+    }
+
+    /**
+     * Enables the hit journal. Until <code>UAirship</code> has taken off, hits forwarded to UA are
+     * appended to an on-disk journal instead of being converted, and they are replayed in order on a
+     * background thread once it is ready. Hits journaled by a previous process are replayed as well.
+     * Replayed hits are converted and submitted to the sink on the replay thread, bypassing
+     * asynchronous dispatch, so a segment is only deleted once its hits reached the sink. A process
+     * dying during the replay, or a hit failing to convert, leaves the segment to the next process,
+     * which can therefore replay some hits twice, but never loses them. Only the hit fields are
+     * journaled: replayed hits are converted with the tracker fields, such as the screen name, at
+     * the time of the replay rather than when they were sent.
+     *
+     * @param directory The journal directory.
+     * @param segmentSize The size of a journal segment file in bytes.
+     * @return The UA Tracker instance.
+     */
+    public synchronized GoogleAnalyticsTracker enableHitJournal(@NonNull File directory, int segmentSize) {
+        if (hitJournal != null) {
+            return this;
+        }
+
+        final HitJournal journal;
+        try {
+            journal = new HitJournal(directory, segmentSize);
+        } catch (IOException e) {
+            Logger.error("GoogleAnalyticsTracker - Unable to open the hit journal.", e);
+            return this;
+        }
+
+        hitJournal = journal;
+        UAirship.shared(new UAirship.OnReadyCallback() {
+            @Override
+            public void onAirshipReady(UAirship airship) {
+                // Ready callbacks run on the main thread, keep the replay off it
+                new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        journal.drain(new HitJournal.HitHandler() {
+                            @Override
+                            public void onHit(@NonNull Map<String, String> hit) {
+                                convert(hit);
+                            }
+                        });
+                    }
+                }, "GoogleAnalyticsTracker-journal").start();
+            }
+        });
+
+        return this;
+    }
+
+    /**
+     * Records every hit passed to {@link #send(Map)}, with its timing, to a binary file that the
+     * replay tool of the benchmark module can play back against the tracker. Meant for capturing a
+     * burst such as app launch or checkout on a test device, not for production builds: each hit is
+     * written and flushed to the file on the sending thread while holding the recorder lock, so
+     * every sending thread waits on the disk and on each other. Replaces any recording in progress.
+     *
+     * @param file The recording file. An existing file is overwritten.
+     * @return The UA Tracker instance.
+     */
+    public synchronized GoogleAnalyticsTracker enableHitRecording(@NonNull File file) {
+        disableHitRecording();
+
+        try {
+            hitRecorder = new HitRecorder(file);
+        } catch (IOException e) {
+            Logger.error("GoogleAnalyticsTracker - Unable to create the hit recording.", e);
+        }
+
+        return this;
+    }
+
+    /**
+     * Stops recording hits and closes the recording file.
+     *
+     * @return The UA Tracker instance.
+     */
+    public synchronized GoogleAnalyticsTracker disableHitRecording() {
+        if (hitRecorder != null) {
+            HitRecorder recorder = hitRecorder;
+            hitRecorder = null;
+            try {
+                recorder.close();
+            } catch (IOException e) {
+                Logger.error("GoogleAnalyticsTracker - Unable to close the hit recording.", e);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Enables aggregation of timing hits forwarded to UA. Timing hits are grouped by category
+     * (<code>&utc</code>), variable (<code>&utv</code>) and label (<code>&utl</code>), and one summary
+     * custom event named {@link #TIMING_SUMMARY_HIT_TYPE} is created per group with the
+     * <code>count</code>, <code>sum</code>, <code>min</code>, <code>max</code> and approximate
+     * <code>p50</code>, <code>p90</code> and <code>p99</code> timings. Summaries are created when the
+     * window expires, when a hit would exceed the group limit, and on {@link #flush()}.
+     *
+     * @param window The aggregation window.
+     * @param unit The window unit.
+     * @param maxGroups The maximum number of groups held at once.
+     * @return The UA Tracker instance.
+     */
+    public synchronized GoogleAnalyticsTracker enableTimingAggregation(long window, @NonNull TimeUnit unit, int maxGroups) {
+        if (timingAggregator != null) {
+            timingAggregator.shutdown();
+        }
+
+        timingAggregator = new TimingAggregator(window, unit, maxGroups, new TimingAggregator.SummaryListener() {
+            @Override
+            public void onSummary(@NonNull Map<String, String> summary) {
+                dispatchToUrbanAirship(summary);
+            }
+        });
+
+        return this;
+    }
+
+    /**
+     * Disables timing aggregation, creating the summaries for the current window.
+     *
+     * @return The UA Tracker instance.
+     */
+    public synchronized GoogleAnalyticsTracker disableTimingAggregation() {
+        if (timingAggregator != null) {
+            TimingAggregator aggregator = timingAggregator;
+            timingAggregator = null;
+            aggregator.shutdown();
+        }
+        return this;
+    }
+
+    /**
+     * Enables session roll-up. Instead of one custom event per hit, the hits of a session are
+     * recorded in memory and one custom event named {@link #SESSION_SUMMARY_HIT_TYPE} is created per
+     * session with the <code>hit_count</code>, <code>duration</code>, the <code>screen_path</code>
+     * of the last screens viewed, the event count per category (<code>events.&lt;category&gt;</code>),
+     * the timing count, mean and max per category (<code>timings.&lt;category&gt;.count</code>, ...)
+     * and the <code>exception_count</code>. Hits are still sent to GA as is.
+     *
+     * A session ends when no hit was sent for the session timeout, when a hit sets the session
+     * control to <code>end</code> or <code>start</code>, and on {@link #endSession()}, which the app
+     * should call when it goes to the background. The session timeout set with
+     * {@link #setSessionTimeout(long)} replaces the given one, before and after enabling, so the
+     * sessions end where GA ends them. A timeout set directly on the GA Tracker is not seen.
+     *
+     * @param sessionTimeout The session timeout, used until {@link #setSessionTimeout(long)} is called.
+     * @param unit The timeout unit.
+     * @param maxScreens The number of screens kept in the screen path.
+     * @param maxCategories The number of event and timing categories counted separately. Further
+     * categories are counted together as <code>(other)</code>.
+     * @return The UA Tracker instance.
+     */
+    public synchronized GoogleAnalyticsTracker enableSessionRollup(long sessionTimeout, @NonNull TimeUnit unit, int maxScreens, int maxCategories) {
+        if (sessionRollup != null) {
+            sessionRollup.shutdown();
+        }
+
+        SessionRollup rollup = new SessionRollup(sessionTimeout, unit, maxScreens, maxCategories, new SessionRollup.SummaryListener() {
+            @Override
+            public void onSummary(@NonNull Map<String, String> summary) {
+                dispatchToUrbanAirship(summary);
+            }
+        });
+
+        Long trackerTimeout = sessionTimeoutSeconds;
+        if (trackerTimeout != null) {
+            rollup.setTimeout(trackerTimeout, TimeUnit.SECONDS);
+        }
+
+        sessionRollup = rollup;
+
+        return this;
+    }
+
+    /**
+     * Disables session roll-up, creating the summary of the current session.
+     *
+     * @return The UA Tracker instance.
+     */
+    public synchronized GoogleAnalyticsTracker disableSessionRollup() {
+        if (sessionRollup != null) {
+            SessionRollup rollup = sessionRollup;
+            sessionRollup = null;
+            rollup.shutdown();
+        }
+        return this;
+    }
+
+    /**
+     * Ends the current session, creating its summary when session roll-up is enabled. Call this when
+     * the app goes to the background.
+     *
+     * @return The UA Tracker instance.
+     */
+    public GoogleAnalyticsTracker endSession() {
+        SessionRollup rollup = sessionRollup;
+        if (rollup != null) {
+            rollup.endSession();
+        }
+        return this;
+    }
+
+    /**
+     * Forwards the hits held by coalescing, creates the pending timing summaries, then blocks until
+     * all hits queued for asynchronous dispatch before this call have been converted.
+     */
+    public void flush() {
+        IsolatedLeg gaLeg = googleAnalyticsLeg;
+        if (gaLeg != null) {
+            gaLeg.flush();
+        }
+
+        IsolatedLeg uaLeg = urbanAirshipLeg;
+        if (uaLeg != null) {
+            uaLeg.flush();
+        }
+
+        HitCoalescer coalescer = hitCoalescer;
+        if (coalescer != null) {
+            coalescer.flush();
+        }
+
+        TimingAggregator aggregator = timingAggregator;
+        if (aggregator != null) {
+            aggregator.flush();
+        }
+
+        AsyncDispatcher dispatcher = asyncDispatcher;
+        if (dispatcher != null) {
+            dispatcher.flush();
+        }
+    }
+
+    /**
+     * Stops hit recording, disables hit coalescing, session roll-up and timing aggregation, converts
+     * any hits still queued for asynchronous dispatch and stops the background worker. Subsequent hits
+     * are converted on the calling thread.
+     */
+    public synchronized void shutdown() {
+        disableHitRecording();
+        disableCoalescing();
+        disableSessionRollup();
+        disableLegIsolation();
+        disableTimingAggregation();
+
+        if (asyncDispatcher != null) {
+            AsyncDispatcher dispatcher = asyncDispatcher;
+            asyncDispatcher = null;
+            dispatcher.shutdown();
+        }
+    }
+
+    /**
+     * Isolates the GA and UA legs of {@link #send(Map)}. Each leg runs on its own bounded background
+     * worker with its own timeout and circuit breaker, so a slow or failing leg neither delays the
+     * other leg nor the sending thread. A leg whose circuit is open drops its hits until a probe hit
+     * succeeds. Tracker level fields are read when a leg handles the hit, not when it is sent.
+     *
+     * @param googleAnalytics The GA leg policy.
+     * @param urbanAirship The UA leg policy.
+     * @return The UA Tracker instance.
+     */
+    public synchronized GoogleAnalyticsTracker enableLegIsolation(@NonNull IsolationPolicy googleAnalytics, @NonNull IsolationPolicy urbanAirship) {
+        disableLegIsolation();
+        googleAnalyticsLeg = new IsolatedLeg("GA", googleAnalytics);
+        urbanAirshipLeg = new IsolatedLeg("UA", urbanAirship);
+        return this;
+    }
+
+    /**
+     * Finishes the hits queued on the isolated legs and sends later hits on the calling thread again.
      */
-    public static final List<String> TRACKER_FIELDS = Arrays.asList("&v", "&an", "&tid", "&uid",
-            "&dr", "&cn", "&cs", "&cm", "&ck", "&cc", "&ci", "&gclid", "&dclid", "&dl", "&dh", "&dp",
-            "&dt", "&cd", "&av", "&aid", "&aiid");
+    public synchronized void disableLegIsolation() {
+        IsolatedLeg gaLeg = googleAnalyticsLeg;
+        IsolatedLeg uaLeg = urbanAirshipLeg;
+        googleAnalyticsLeg = null;
+        urbanAirshipLeg = null;
 
-    private final Tracker tracker;
-    private final Set<Extender> extenders = new HashSet<>();
+        if (gaLeg != null) {
+            legDroppedCount.addAndGet(gaLeg.getDroppedCount());
+            gaLeg.shutdown();
+        }
 
-    private volatile boolean googleAnalyticsEnabled = true;
-    private volatile boolean urbanAirshipEnabled = true;
+        if (uaLeg != null) {
+            legDroppedCount.addAndGet(uaLeg.getDroppedCount());
+            uaLeg.shutdown();
+        }
+    }
 
     /**
-     * Constructor for creating the UA Tracker wrapper.
+     * Gets the number of hits dropped by the isolated legs, because a leg queue was full or its
+     * circuit was open. A hit dropped by both legs is counted twice.
      *
-     * @param tracker The GA Tracker instance.
+     * @return The dropped hit count.
      */
-    public GoogleAnalyticsTracker(Tracker tracker) {
-        this.tracker = tracker;
+    public long getLegDroppedHitCount() {
+        long dropped = legDroppedCount.get();
+
+        IsolatedLeg gaLeg = googleAnalyticsLeg;
+        if (gaLeg != null) {
+            dropped += gaLeg.getDroppedCount();
+        }
+
+        IsolatedLeg uaLeg = urbanAirshipLeg;
+        if (uaLeg != null) {
+            dropped += uaLeg.getDroppedCount();
+        }
+
+        return dropped;
     }
 
     /**
-     * Set the flag to send events to GA. Defaults to <code>true</code>.
+     * Gets the number of hits dropped by the asynchronous dispatch overflow policy.
      *
-     * @param enabled The flag - set to <code>true</code> to send events to GA, or <code>false</code>
-     *                to stop sending the events.
-     * @return The UA Tracker instance.
+     * @return The dropped hit count, or 0 if asynchronous dispatch is not enabled.
      */
-    public GoogleAnalyticsTracker setGoogleAnalyticsEnabled(boolean enabled) {
-        googleAnalyticsEnabled = enabled;
-        return this;
+    public long getAsyncDroppedHitCount() {
+        AsyncDispatcher dispatcher = asyncDispatcher;
+        return dispatcher == null ? 0 : dispatcher.getDroppedCount();
     }
 
     /**
-     * Set the flag to send events to UA. Defaults to <code>false</code>.
-     *
-     * @param enabled The flag - set to <code>true</code> to send events to UA, or <code>false</code>
-     *                to stop sending the events.
-     * @return The UA Tracker instance.
+     * Re-reads the {@link #TRACKER_FIELDS} from the Tracker. Fields set through this wrapper refresh
+     * the snapshot automatically, so this only needs to be called after setting one of the fields
+     * directly on the Tracker returned by {@link #getTracker()}.
      */
-    public GoogleAnalyticsTracker setUrbanAirshipEnabled(boolean enabled) {
-        urbanAirshipEnabled = enabled;
-        return this;
+    public void refreshTrackerSnapshot() {
+        Tracker tracker = this.tracker;
+        if (tracker == null) {
+            return;
+        }
+
+        // Capture and publish under a lock so a slower refresh never overwrites a newer snapshot
+        synchronized (snapshotLock) {
+            trackerSnapshot = TrackerFieldSnapshot.capture(tracker, TRACKER_FIELDS);
+        }
     }
 
     /**
-     * Add a custom event extender.
-     *
-     * @param extender The event extender.
-     * @return The UA Tracker instance.
+     * Reads the {@link #EXPENSIVE_TRACKER_FIELDS} from the Tracker on a background thread and caches
+     * them. Reads run one at a time in the order they were requested, so the latest read wins.
      */
-    public GoogleAnalyticsTracker addExtender(Extender extender) {
-        extenders.add(extender);
-        return this;
+    private void resolveExpensiveFields() {
+        final Tracker tracker = this.tracker;
+        if (tracker == null) {
+            return;
+        }
+
+        FIELD_RESOLVER.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    expensiveFieldSnapshot = TrackerFieldSnapshot.capture(tracker, EXPENSIVE_TRACKER_FIELDS);
+                } catch (RuntimeException e) {
+                    Logger.error("GoogleAnalyticsTracker - Failed to read the expensive Tracker fields.", e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Blocks until the expensive field reads requested so far have finished.
+     */
+    void awaitExpensiveFields() throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(1);
+        FIELD_RESOLVER.execute(new Runnable() {
+            @Override
+            public void run() {
+                latch.countDown();
+            }
+        });
+        latch.await();
+    }
+
+    private static ThreadPoolExecutor createFieldResolver() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(@NonNull Runnable runnable) {
+                Thread thread = new Thread(runnable, "GoogleAnalyticsTracker-fields");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        // The reads are rare, don't keep a thread around for them
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
     }
 
     /**
      * Method to return the GA Tracker instance.
      *
-     * @return The GA Tracker instance.
+     * @return The GA Tracker instance, or <code>null</code> if a tracker created with
+     * {@link #createLazily(TrackerFactory, int)} has not created it yet.
      */
     public Tracker getTracker() {
         return tracker;
@@ -118,15 +1339,244 @@ public class GoogleAnalyticsTracker {
     /**
      * Method to send the GA event payload. If UA proxying is enabled, a UA custom event will be created and dispatched.
      *
+     * The map is only read during the call. Everything that handles the hit after the call returns,
+     * e.g. asynchronous dispatch, leg isolation, coalescing or the buffer of a lazily created tracker,
+     * works on a copy, so the caller is free to reuse or change the map once this returns. The map
+     * must not be changed by another thread while the call is running.
+     *
      * @param json The GA event json.
      */
     public void send(final Map<String, String> json) {
+        HitRecorder recorder = hitRecorder;
+        if (recorder != null) {
+            recorder.record(json);
+        }
+
+        if ((pendingHits != null || trackerFailed) && bufferPendingHit(json)) {
+            return;
+        }
+
+        sendNow(json);
+    }
+
+    private void sendNow(Map<String, String> json) {
+        IsolatedLeg gaLeg = googleAnalyticsLeg;
+        IsolatedLeg uaLeg = urbanAirshipLeg;
+        if (gaLeg == null || uaLeg == null) {
+            if (googleAnalyticsEnabled) {
+                try {
+                    sendToGoogleAnalyticsTimed(json);
+                } catch (RuntimeException e) {
+                    Logger.error("GoogleAnalyticsTracker - Failed to send hit to the GA Tracker.", e);
+                }
+            }
+
+            if (urbanAirshipEnabled) {
+                forwardToUrbanAirship(json);
+            }
+            return;
+        }
+
+        // Both legs share one copy, since the caller is free to reuse the map once send returns
+        final Map<String, String> hit = new HashMap<>(json);
+
         if (googleAnalyticsEnabled) {
-            tracker.send(json);
+            submitToLeg(gaLeg, new Runnable() {
+                @Override
+                public void run() {
+                    sendToGoogleAnalyticsTimed(hit);
+                }
+            });
         }
 
         if (urbanAirshipEnabled) {
+            submitToLeg(uaLeg, new Runnable() {
+                @Override
+                public void run() {
+                    forwardToUrbanAirship(hit);
+                }
+            });
+        }
+    }
+
+    private static void submitToLeg(IsolatedLeg leg, Runnable call) {
+        // A hit racing disableLegIsolation is sent on the calling thread instead
+        if (!leg.submit(call) && leg.isShutdown()) {
+            try {
+                call.run();
+            } catch (RuntimeException e) {
+                Logger.error("GoogleAnalyticsTracker - Failed to send hit after leg isolation was disabled.", e);
+            }
+        }
+    }
+
+    private void sendToGoogleAnalyticsTimed(Map<String, String> json) {
+        TrackerMetrics metrics = this.metrics;
+        if (metrics == null) {
+            sendToGoogleAnalytics(json);
+        } else {
+            long start = System.nanoTime();
+            try {
+                sendToGoogleAnalytics(json);
+            } finally {
+                metrics.recordGoogleAnalytics(json.get(HitParameters.HIT_TYPE), System.nanoTime() - start);
+            }
+        }
+    }
+
+    /**
+     * Sends the hit to the primary and the additional Trackers. A failing Tracker does not keep the
+     * hit from the others, the first failure is rethrown once every Tracker had the hit, so the
+     * isolated GA leg counts it toward its circuit breaker.
+     *
+     * @param json The hit.
+     */
+    private void sendToGoogleAnalytics(Map<String, String> json) {
+        RuntimeException failure = null;
+        try {
+            tracker.send(json);
+        } catch (RuntimeException e) {
+            recordError();
+            failure = e;
+        }
+
+        for (Tracker additional : additionalTrackers) {
+            try {
+                additional.send(json);
+            } catch (RuntimeException e) {
+                recordError();
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    Logger.error("GoogleAnalyticsTracker - Failed to send hit to an additional GA Tracker.", e);
+                }
+            }
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void forwardToUrbanAirship(Map<String, String> json) {
+        HitFilter filter = hitFilter;
+        if (filter != null && !filter.allow(json, trackerSnapshot)) {
+            return;
+        }
+
+        HitCoalescer coalescer = hitCoalescer;
+        if (coalescer != null && coalescer.record(json, trackerSnapshot)) {
+            return;
+        }
+
+        forwardCoalesced(json);
+    }
+
+    private void forwardCoalesced(Map<String, String> json) {
+        SessionRollup rollup = sessionRollup;
+        if (rollup != null) {
+            String screenName = json.get(HitParameters.SCREEN_NAME);
+            rollup.record(json, screenName == null ? trackerSnapshot.get(HitParameters.SCREEN_NAME) : screenName);
+            return;
+        }
+
+        ForwardingLimits limits = forwardingLimits;
+        if (limits != null && !limits.allow(json)) {
+            return;
+        }
+
+        TimingAggregator aggregator = timingAggregator;
+        if (aggregator != null && aggregator.record(json)) {
+            return;
+        }
+
+        dispatchToUrbanAirship(json);
+    }
+
+    private void dispatchToUrbanAirship(Map<String, String> json) {
+        HitJournal journal = hitJournal;
+        if (journal != null && journal.appendIfPending(json)) {
+            return;
+        }
+
+        convertOrQueue(json);
+    }
+
+    private void convertOrQueue(Map<String, String> json) {
+        AsyncDispatcher dispatcher = asyncDispatcher;
+
+        // Copy the hit since the caller is free to reuse the map once send returns
+        if (dispatcher == null || (!dispatcher.enqueue(new AsyncDispatcher.QueuedHit(new HashMap<>(json), trackerSnapshot, expensiveFieldSnapshot)) && dispatcher.isShutdown())) {
+            convert(json);
+        }
+    }
+
+    private void convert(Map<String, String> json) {
+        try {
             createCustomEvent(json);
+        } catch (RuntimeException e) {
+            recordError();
+            throw e;
+        }
+    }
+
+    private void submitBatch(List<CustomEvent> events) {
+        TrackerMetrics metrics = this.metrics;
+        long start = metrics == null ? 0 : System.nanoTime();
+
+        try {
+            sink.submit(events);
+        } catch (RuntimeException e) {
+            recordError();
+            throw e;
+        }
+
+        if (metrics != null) {
+            metrics.recordSink(System.nanoTime() - start);
+        }
+    }
+
+    private void recordError() {
+        TrackerMetrics metrics = this.metrics;
+        if (metrics != null) {
+            metrics.recordError();
+        }
+    }
+
+    /**
+     * Method to create the custom event for the event JSON and submit it to the
+     * {@link CustomEventSink}.
+     *
+     * @param json The event JSON.
+     */
+    protected void createCustomEvent(Map<String, String> json) {
+        if (ecommerceMode == EcommerceMode.PER_ITEM) {
+            List<CustomEvent> events = new ArrayList<>();
+            buildCustomEvents(json, events);
+
+            TrackerMetrics metrics = this.metrics;
+            long start = metrics == null ? 0 : System.nanoTime();
+            if (events.size() == 1) {
+                sink.submit(events.get(0));
+            } else {
+                sink.submit(events);
+            }
+
+            if (metrics != null) {
+                metrics.recordSink(System.nanoTime() - start);
+            }
+            return;
+        }
+
+        CustomEvent event = buildCustomEvent(json);
+
+        TrackerMetrics metrics = this.metrics;
+        if (metrics == null) {
+            sink.submit(event);
+        } else {
+            long start = System.nanoTime();
+            sink.submit(event);
+            metrics.recordSink(System.nanoTime() - start);
         }
     }
 
@@ -138,30 +1588,253 @@ public class GoogleAnalyticsTracker {
      * {@link #TRACKER_FIELDS}.
      *
      * @param json The event JSON.
+     * @return The custom event.
      */
-    protected void createCustomEvent(Map<String, String> json) {
-        CustomEvent.Builder customEvent = new CustomEvent.Builder(getEventName(json));
+    @NonNull
+    protected CustomEvent buildCustomEvent(Map<String, String> json) {
+        TrackerMetrics metrics = this.metrics;
+        long start = metrics == null ? 0 : System.nanoTime();
+
+        PropertyBuffer properties = PropertyBuffer.acquire();
+        EcommerceItems items = collectProperties(json, properties, ecommerceMode != EcommerceMode.FLAT);
+        return completeCustomEvent(json, properties, items, metrics, start);
+    }
+
+    /**
+     * Creates the custom event from the collected properties and releases the property buffer.
+     */
+    private CustomEvent completeCustomEvent(Map<String, String> json, PropertyBuffer properties, @Nullable EcommerceItems items,
+                                            @Nullable TrackerMetrics metrics, long start) {
+        CustomEvent.Builder customEvent = newBuilder(getEventName(json));
+        properties.copyTo(customEvent);
+
+        // Release the buffer before the extenders run, they may send hits of their own
+        properties.clear();
+
+        if (items != null) {
+            items.addLists(customEvent, projection);
+        }
+
+        if (typedProperties) {
+            setEventValue(customEvent, json);
+        }
+
+        applyExtenders(customEvent, json, metrics);
+
+        CustomEvent event = customEvent.create();
+        if (metrics != null) {
+            metrics.recordConversion(json.get(HitParameters.HIT_TYPE), System.nanoTime() - start);
+        }
+
+        return event;
+    }
+
+    /**
+     * Converts a hit to its custom events, one per ecommerce item in {@link EcommerceMode#PER_ITEM}
+     * mode and a single event from {@link #buildCustomEvent(Map)} otherwise. A hit without items in
+     * {@link EcommerceMode#PER_ITEM} mode becomes a single event built from the properties already
+     * collected.
+     *
+     * @param json The event JSON.
+     * @param events The list the events are added to.
+     */
+    void buildCustomEvents(Map<String, String> json, List<CustomEvent> events) {
+        if (ecommerceMode != EcommerceMode.PER_ITEM) {
+            events.add(buildCustomEvent(json));
+            return;
+        }
+
+        TrackerMetrics metrics = this.metrics;
+        long start = metrics == null ? 0 : System.nanoTime();
+
+        PropertyBuffer properties = PropertyBuffer.acquire();
+        EcommerceItems items = collectProperties(json, properties, true);
+        if (items == null) {
+            events.add(completeCustomEvent(json, properties, null, metrics, start));
+            return;
+        }
+
+        // Build every item event before the extenders run, they may send hits that reuse the buffer
+        PropertyProjection projection = this.projection;
+        boolean typed = typedProperties;
+        String eventName = getEventName(json);
+        List<CustomEvent.Builder> builders = new ArrayList<>(items.size());
+        PropertyBuffer itemProperties = new PropertyBuffer(properties.size() + 16);
+        for (int i = 0; i < items.size(); i++) {
+            CustomEvent.Builder customEvent = newBuilder(eventName);
+
+            // Only the first item carries the hit value, so summing the events does not count it twice
+            if (typed && i == 0) {
+                setEventValue(customEvent, json);
+            }
+
+            properties.copyInto(itemProperties);
+            items.addItem(i, itemProperties, projection, typed);
+            itemProperties.copyTo(customEvent);
+            itemProperties.clear();
+
+            builders.add(customEvent);
+        }
+        properties.clear();
+
+        List<CustomEvent> created = new ArrayList<>(builders.size());
+        for (CustomEvent.Builder customEvent : builders) {
+            applyExtenders(customEvent, json, metrics);
+            created.add(customEvent.create());
+        }
+        events.addAll(created);
+
+        if (metrics != null) {
+            metrics.recordConversion(json.get(HitParameters.HIT_TYPE), System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Creates a custom event builder that enforces the payload budget, if one is set, on every
+     * property of the event once it is created.
+     */
+    private CustomEvent.Builder newBuilder(String eventName) {
+        PayloadBudget budget = payloadBudget;
+        return budget == null ? new CustomEvent.Builder(eventName) : new BudgetedEventBuilder(eventName, budget);
+    }
+
+    private static void setEventValue(CustomEvent.Builder customEvent, Map<String, String> json) {
+        String value = json.get(HitParameters.EVENT_VALUE);
+        if (value == null) {
+            value = json.get(HitParameters.TRANSACTION_REVENUE);
+        }
+
+        if (value == null) {
+            return;
+        }
+
+        try {
+            customEvent.setEventValue(new BigDecimal(value));
+        } catch (NumberFormatException e) {
+            Logger.error("GoogleAnalyticsTracker - Invalid event value: " + value, e);
+        }
+    }
+
+    private void applyExtenders(CustomEvent.Builder customEvent, Map<String, String> json, @Nullable TrackerMetrics metrics) {
+        // Apply the custom event extenders registered for the hit type
+        for (Extender extender : extenders.get(json.get(HitParameters.HIT_TYPE))) {
+            if (metrics == null) {
+                extender.extend(customEvent, json, this);
+            } else {
+                long extenderStart = System.nanoTime();
+                extender.extend(customEvent, json, this);
+                metrics.recordExtender(extender, System.nanoTime() - extenderStart);
+            }
+        }
+    }
+
+    /**
+     * Collects the tracker level and event properties into the buffer, applying the projection.
+     * Allocates nothing beyond the hit map iterator unless the hit has indexed ecommerce parameters
+     * and they are parsed.
+     *
+     * @param json The event JSON.
+     * @param properties The property buffer.
+     * @param parseEcommerce <code>true</code> to parse the indexed ecommerce parameters instead of
+     * copying them.
+     * @return The parsed ecommerce items, or <code>null</code> if the hit has none.
+     */
+    @Nullable
+    EcommerceItems collectProperties(Map<String, String> json, PropertyBuffer properties, boolean parseEcommerce) {
+        PropertyProjection projection = this.projection;
+        boolean typed = typedProperties;
+
+        // Extract the tracker level properties, or their context version and the screen fields when delta encoded
+        AsyncDispatcher.QueuedHit queued = convertingHit.get();
+        TrackerFieldSnapshot snapshot = queued == null ? trackerSnapshot : queued.fields;
+        TrackerFieldSnapshot expensive = queued == null ? expensiveFieldSnapshot : queued.expensiveFields;
+        if (deltaEncoding) {
+            properties.add(CONTEXT_VERSION_PROPERTY, trackerContext.getVersion(snapshot, expensive, contextListener));
+            for (int i = 0; i < snapshot.size(); i++) {
+                if (SCREEN_TRACKER_FIELDS.contains(snapshot.getKey(i))) {
+                    addProperty(properties, projection, snapshot.getKey(i), snapshot.getValue(i), typed);
+                }
+            }
+        } else {
+            for (int i = 0; i < snapshot.size(); i++) {
+                addProperty(properties, projection, snapshot.getKey(i), snapshot.getValue(i), typed);
+            }
 
-        // Extract the tracker level properties
-        for (String trackerField : TRACKER_FIELDS) {
-            if (tracker.get(trackerField) != null) {
-                customEvent.addProperty(trackerField, tracker.get(trackerField));
+            for (int i = 0; i < expensive.size(); i++) {
+                addProperty(properties, projection, expensive.getKey(i), expensive.getValue(i), typed);
             }
         }
 
-        // Extract all event properties
+        // Extract all event properties, parsing the ecommerce parameters in the same pass
+        EcommerceItems items = null;
         for (Map.Entry<String, String> entry : json.entrySet()) {
-            if (entry.getValue() != null) {
-                customEvent.addProperty(entry.getKey(), entry.getValue());
+            String key = entry.getKey();
+            String value = entry.getValue();
+            if (value == null) {
+                continue;
+            }
+
+            if (parseEcommerce) {
+                int match = EcommerceItems.match(key);
+                if (match != 0) {
+                    if (items == null) {
+                        items = new EcommerceItems();
+                    }
+
+                    if (items.add(match, key, value)) {
+                        continue;
+                    }
+                }
             }
+
+            addProperty(properties, projection, key, value, typed);
+        }
+
+        return items == null || items.isEmpty() ? null : items;
+    }
+
+    private void submitContextEvent(String version, @Nullable String baseVersion, Map<String, String> changed, List<String> removed) {
+        PropertyProjection projection = this.projection;
+        boolean typed = typedProperties;
+
+        // The caller's thread local buffer is in use, so the context gets its own
+        PropertyBuffer properties = new PropertyBuffer(changed.size() + 2);
+        properties.add(CONTEXT_VERSION_PROPERTY, version);
+        if (baseVersion != null) {
+            properties.add(CONTEXT_BASE_VERSION_PROPERTY, baseVersion);
+        }
+
+        for (Map.Entry<String, String> field : changed.entrySet()) {
+            addProperty(properties, projection, field.getKey(), field.getValue(), typed);
         }
 
-        // Apply custom event extenders
-        for (Extender extender : new ArrayList<>(extenders)) {
-            extender.extend(customEvent, json, this);
+        CustomEvent.Builder customEvent = newBuilder(TRACKER_CONTEXT_HIT_TYPE);
+        properties.copyTo(customEvent);
+
+        if (!removed.isEmpty()) {
+            List<String> names = new ArrayList<>(removed.size());
+            for (String key : removed) {
+                String name = projection == null ? key : projection.project(key);
+                if (name != null) {
+                    names.add(name);
+                }
+            }
+
+            if (!names.isEmpty()) {
+                customEvent.addProperty(CONTEXT_REMOVED_PROPERTY, names);
+            }
         }
 
-        customEvent.create().track();
+        sink.submit(customEvent.create());
+    }
+
+    private static void addProperty(PropertyBuffer properties, @Nullable PropertyProjection projection, String key, String value, boolean typed) {
+        PropertyType type = typed ? PropertyType.of(key) : PropertyType.STRING;
+        if (projection == null) {
+            properties.add(key, value, type);
+        } else {
+            projection.apply(properties, key, value, type);
+        }
     }
 
     /**
@@ -173,7 +1846,31 @@ public class GoogleAnalyticsTracker {
     @NonNull
     protected String getEventName(Map<String, String> json) {
         // Extract the GA event type
-        return json.get("&t");
+        return json.get(HitParameters.HIT_TYPE);
+    }
+
+    /**
+     * Factory that creates the GA Tracker for {@link #createLazily(TrackerFactory, int)}, e.g. with
+     * <code>GoogleAnalytics.getInstance(context).newTracker(R.xml.global_tracker)</code>. Called on a
+     * background thread.
+     */
+    public interface TrackerFactory {
+        @NonNull
+        Tracker createTracker();
+    }
+
+    /**
+     * Call on the GA Tracker, deferred until the Tracker is created.
+     */
+    private interface TrackerCall {
+        void apply(@NonNull Tracker tracker);
+    }
+
+    /**
+     * Listener that receives periodic metrics snapshots.
+     */
+    public interface MetricsListener {
+        void onMetrics(@NonNull MetricsSnapshot snapshot);
     }
 
     /**
@@ -186,108 +1883,259 @@ public class GoogleAnalyticsTracker {
 
     // ***************** Google Analytics Tracker methods ***************** //
 
-    public void enableAdvertisingIdCollection(boolean enabled) {
-        tracker.enableAdvertisingIdCollection(enabled);
+    public void enableAdvertisingIdCollection(final boolean enabled) {
+        applyToTracker("enableAdvertisingIdCollection", new TrackerCall() {
+            @Override
+            public void apply(@NonNull Tracker tracker) {
+                tracker.enableAdvertisingIdCollection(enabled);
+            }
+        });
     }
 
-    public void enableAutoActivityTracking(boolean enabled) {
-        tracker.enableAutoActivityTracking(enabled);
+    public void enableAutoActivityTracking(final boolean enabled) {
+        applyToTracker("enableAutoActivityTracking", new TrackerCall() {
+            @Override
+            public void apply(@NonNull Tracker tracker) {
+                tracker.enableAutoActivityTracking(enabled);
+            }
+        });
     }
 
-    void enableExceptionReporting(boolean enable) {
-        tracker.enableExceptionReporting(enable);
+    void enableExceptionReporting(final boolean enable) {
+        applyToTracker("enableExceptionReporting", new TrackerCall() {
+            @Override
+            public void apply(@NonNull Tracker tracker) {
+                tracker.enableExceptionReporting(enable);
+            }
+        });
     }
 
     public String get(String key) {
-        return tracker.get(key);
+        Tracker tracker = this.tracker;
+        return tracker == null ? null : tracker.get(key);
     }
 
-    public void set(String key, String value) {
-        tracker.set(key, value);
+    public void set(final String key, final String value) {
+        applyToTracker("set " + key, SCREEN_TRACKER_FIELDS.contains(key) ? key : null, value, new TrackerCall() {
+            @Override
+            public void apply(@NonNull Tracker tracker) {
+                tracker.set(key, value);
+            }
+        });
+        if (TRACKER_FIELDS.contains(key)) {
+            refreshTrackerSnapshot();
+        } else if (EXPENSIVE_TRACKER_FIELDS.contains(key)) {
+            resolveExpensiveFields();
+        }
     }
 
-    public void setAnonymizeIp(boolean anonymize) {
-        tracker.setAnonymizeIp(anonymize);
+    public void setAnonymizeIp(final boolean anonymize) {
+        applyToTracker("setAnonymizeIp", new TrackerCall() {
+            @Override
+            public void apply(@NonNull Tracker tracker) {
+                tracker.setAnonymizeIp(anonymize);
+            }
+        });
     }
 
-    public void setAppId(String appId) {
-        tracker.setAppId(appId);
+    public void setAppId(final String appId) {
+        applyToTracker("setAppId", new TrackerCall() {
+            @Override
+            public void apply(@NonNull Tracker tracker) {
+                tracker.setAppId(appId);
+            }
+        });
+        refreshTrackerSnapshot();
     }
 
-    public void setAppInstallerId(String appInstallerId) {
-        tracker.setAppInstallerId(appInstallerId);
+    public void setAppInstallerId(final String appInstallerId) {
+        applyToTracker("setAppInstallerId", new TrackerCall() {
+            @Override
+            public void apply(@NonNull Tracker tracker) {
+                tracker.setAppInstallerId(appInstallerId);
+            }
+        });
+        refreshTrackerSnapshot();
     }
 
-    public void setAppName(String appName) {
-        tracker.setAppName(appName);
+    public void setAppName(final String appName) {
+        applyToTracker("setAppName", new TrackerCall() {
+            @Override
+            public void apply(@NonNull Tracker tracker) {
+                tracker.setAppName(appName);
+            }
+        });
+        refreshTrackerSnapshot();
     }
 
-    public void setAppVersion(String appVersion) {
-        tracker.setAppVersion(appVersion);
+    public void setAppVersion(final String appVersion) {
+        applyToTracker("setAppVersion", new TrackerCall() {
+            @Override
+            public void apply(@NonNull Tracker tracker) {
+                tracker.setAppVersion(appVersion);
+            }
+        });
+        refreshTrackerSnapshot();
     }
 
-    public void setCampaignParamsOnNextHit(Uri uri) {
-        tracker.setCampaignParamsOnNextHit(uri);
+    public void setCampaignParamsOnNextHit(final Uri uri) {
+        applyToTracker("setCampaignParamsOnNextHit", new TrackerCall() {
+            @Override
+            public void apply(@NonNull Tracker tracker) {
+                tracker.setCampaignParamsOnNextHit(uri);
+            }
+        });
+        refreshTrackerSnapshot();
     }
 
-    public void setClientId(String clientId) {
-        tracker.setClientId(clientId);
+    public void setClientId(final String clientId) {
+        applyToTracker("setClientId", new TrackerCall() {
+            @Override
+            public void apply(@NonNull Tracker tracker) {
+                tracker.setClientId(clientId);
+            }
+        });
+        resolveExpensiveFields();
     }
 
-    public void setEncoding(String encoding) {
-        tracker.setEncoding(encoding);
+    public void setEncoding(final String encoding) {
+        applyToTracker("setEncoding", new TrackerCall() {
+            @Override
+            public void apply(@NonNull Tracker tracker) {
+                tracker.setEncoding(encoding);
+            }
+        });
     }
 
-    public void setHostname(String hostname) {
-        tracker.setHostname(hostname);
+    public void setHostname(final String hostname) {
+        applyToTracker("setHostname", new TrackerCall() {
+            @Override
+            public void apply(@NonNull Tracker tracker) {
+                tracker.setHostname(hostname);
+            }
+        });
+        refreshTrackerSnapshot();
     }
 
-    public void setLanguage(String language) {
-        tracker.setLanguage(language);
+    public void setLanguage(final String language) {
+        applyToTracker("setLanguage", new TrackerCall() {
+            @Override
+            public void apply(@NonNull Tracker tracker) {
+                tracker.setLanguage(language);
+            }
+        });
     }
 
-    public void setLocation(String location) {
-        tracker.setLocation(location);
+    public void setLocation(final String location) {
+        applyToTracker("setLocation", "&dl", location, new TrackerCall() {
+            @Override
+            public void apply(@NonNull Tracker tracker) {
+                tracker.setLocation(location);
+            }
+        });
+        refreshTrackerSnapshot();
     }
 
-    public void setPage(String page) {
-        tracker.setPage(page);
+    public void setPage(final String page) {
+        applyToTracker("setPage", "&dp", page, new TrackerCall() {
+            @Override
+            public void apply(@NonNull Tracker tracker) {
+                tracker.setPage(page);
+            }
+        });
+        refreshTrackerSnapshot();
     }
 
-    public void setReferrer(String referrer) {
-        tracker.setReferrer(referrer);
+    public void setReferrer(final String referrer) {
+        applyToTracker("setReferrer", new TrackerCall() {
+            @Override
+            public void apply(@NonNull Tracker tracker) {
+                tracker.setReferrer(referrer);
+            }
+        });
+        refreshTrackerSnapshot();
     }
 
-    public void setSampleRate(double sampleRate) {
-        tracker.setSampleRate(sampleRate);
+    public void setSampleRate(final double sampleRate) {
+        applyToTracker("setSampleRate", new TrackerCall() {
+            @Override
+            public void apply(@NonNull Tracker tracker) {
+                tracker.setSampleRate(sampleRate);
+            }
+        });
     }
 
-    public void setScreenColors(String screenColors) {
-        tracker.setScreenColors(screenColors);
+    public void setScreenColors(final String screenColors) {
+        applyToTracker("setScreenColors", new TrackerCall() {
+            @Override
+            public void apply(@NonNull Tracker tracker) {
+                tracker.setScreenColors(screenColors);
+            }
+        });
     }
 
-    public void setScreenName(String screenName) {
-        tracker.setScreenName(screenName);
+    public void setScreenName(final String screenName) {
+        applyToTracker("setScreenName", HitParameters.SCREEN_NAME, screenName, new TrackerCall() {
+            @Override
+            public void apply(@NonNull Tracker tracker) {
+                tracker.setScreenName(screenName);
+            }
+        });
+        refreshTrackerSnapshot();
     }
 
-    public void setScreenResolution(int width, int height) {
-        tracker.setScreenResolution(width, height);
+    public void setScreenResolution(final int width, final int height) {
+        applyToTracker("setScreenResolution", new TrackerCall() {
+            @Override
+            public void apply(@NonNull Tracker tracker) {
+                tracker.setScreenResolution(width, height);
+            }
+        });
     }
 
-    public void setSessionTimeout(long sessionTimeout) {
-        tracker.setSessionTimeout(sessionTimeout);
+    public void setSessionTimeout(final long sessionTimeout) {
+        applyToTracker("setSessionTimeout", new TrackerCall() {
+            @Override
+            public void apply(@NonNull Tracker tracker) {
+                tracker.setSessionTimeout(sessionTimeout);
+            }
+        });
+
+        // GA does not expose the timeout as a field, so keep it for session roll-up
+        synchronized (this) {
+            sessionTimeoutSeconds = sessionTimeout;
+            if (sessionRollup != null) {
+                sessionRollup.setTimeout(sessionTimeout, TimeUnit.SECONDS);
+            }
+        }
     }
 
-    public void setTitle(String title) {
-        tracker.setTitle(title);
+    public void setTitle(final String title) {
+        applyToTracker("setTitle", "&dt", title, new TrackerCall() {
+            @Override
+            public void apply(@NonNull Tracker tracker) {
+                tracker.setTitle(title);
+            }
+        });
+        refreshTrackerSnapshot();
     }
 
-    public void setUseSecure(boolean useSecure) {
-        tracker.setUseSecure(useSecure);
+    public void setUseSecure(final boolean useSecure) {
+        applyToTracker("setUseSecure", new TrackerCall() {
+            @Override
+            public void apply(@NonNull Tracker tracker) {
+                tracker.setUseSecure(useSecure);
+            }
+        });
     }
 
-    public void setViewportSize(String viewportSize) {
-        tracker.setViewportSize(viewportSize);
+    public void setViewportSize(final String viewportSize) {
+        applyToTracker("setViewportSize", new TrackerCall() {
+            @Override
+            public void apply(@NonNull Tracker tracker) {
+                tracker.setViewportSize(viewportSize);
+            }
+        });
     }
 }
 
@@ -0,0 +1,343 @@
+/*
+ Copyright 2016 Urban Airship and Contributors
+*/
+
+package com.urbanairship.extension.analytics;
+
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalesces identical hits sent within a window. Each hit is reduced to a 64 bit fingerprint of its
+ * key fields, and the fingerprints are kept in a fixed size open addressing table with the time each
+ * was first seen. A hit whose fingerprint is in the table and still within its window is a duplicate.
+ *
+ * The table is allocated once, so fingerprinting and looking up a hit allocates nothing. Only the
+ * first hit of a window held for {@link CoalescingMode#MERGE} is copied.
+ */
+final class HitCoalescer {
+
+    /**
+     * Receives the merged hits.
+     */
+    interface HitListener {
+        void onHit(@NonNull Map<String, String> hit);
+    }
+
+    private static final long EMPTY = 0;
+    private static final int MAX_PROBES = 8;
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final long windowNanos;
+    private final String[] keyFields;
+    private final boolean[] trackerFields;
+    private final HitListener listener;
+    private final ScheduledExecutorService scheduler;
+
+    private final int mask;
+    private final int probes;
+
+    // Guarded by this
+    private final long[] fingerprints;
+    private final long[] firstSeen;
+    private final int[] counts;
+    private final List<Map<String, String>> held;
+    private boolean shutdown;
+
+    private final boolean merging;
+    private volatile long coalescedCount;
+
+    /**
+     * Creates the coalescer, and for {@link CoalescingMode#MERGE} starts the scheduler forwarding the
+     * held hits when their window expires.
+     *
+     * @param policy The coalescing policy.
+     * @param listener The listener receiving the merged hits.
+     */
+    HitCoalescer(@NonNull CoalescingPolicy policy, @NonNull HitListener listener) {
+        this.windowNanos = policy.windowNanos;
+        this.keyFields = policy.keyFields;
+        this.listener = listener;
+
+        if (keyFields == null) {
+            trackerFields = null;
+        } else {
+            trackerFields = new boolean[keyFields.length];
+            for (int i = 0; i < keyFields.length; i++) {
+                trackerFields[i] = GoogleAnalyticsTracker.TRACKER_FIELDS.contains(keyFields[i]);
+            }
+        }
+
+        int size = Integer.highestOneBit(policy.capacity);
+        if (size < policy.capacity) {
+            size <<= 1;
+        }
+
+        mask = size - 1;
+        probes = Math.min(size, MAX_PROBES);
+        fingerprints = new long[size];
+        firstSeen = new long[size];
+        counts = new int[size];
+
+        merging = policy.mode == CoalescingMode.MERGE;
+        if (!merging) {
+            held = null;
+            scheduler = null;
+            return;
+        }
+
+        held = new ArrayList<>(Collections.<Map<String, String>>nCopies(size, null));
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(@NonNull Runnable runnable) {
+                Thread thread = new Thread(runnable, "GoogleAnalyticsTracker-coalesce");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        long period = Math.max(windowNanos / 2, TimeUnit.MILLISECONDS.toNanos(1));
+        scheduler.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                expire(System.nanoTime());
+            }
+        }, period, period, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Records a hit.
+     *
+     * @param json The event JSON.
+     * @param snapshot The tracker field snapshot, read for tracker fields the hit does not set.
+     * @return <code>true</code> if the hit was coalesced or is held until its window expires,
+     * <code>false</code> if it should be forwarded as is.
+     */
+    boolean record(@NonNull Map<String, String> json, @NonNull TrackerFieldSnapshot snapshot) {
+        return record(json, snapshot, System.nanoTime());
+    }
+
+    boolean record(@NonNull Map<String, String> json, @NonNull TrackerFieldSnapshot snapshot, long now) {
+        long fingerprint = fingerprint(json, snapshot);
+        Map<String, String> evicted;
+        int evictedCount;
+
+        synchronized (this) {
+            if (shutdown) {
+                return false;
+            }
+
+            // Probe a few slots for the fingerprint, remembering the empty or oldest slot to replace
+            int start = (int) fingerprint & mask;
+            int target = start;
+            long targetAge = -1;
+            for (int i = 0; i < probes; i++) {
+                int slot = (start + i) & mask;
+                long age = now - firstSeen[slot];
+                if (fingerprints[slot] == fingerprint && age < windowNanos) {
+                    counts[slot]++;
+                    coalescedCount++;
+                    return true;
+                }
+
+                if (fingerprints[slot] == EMPTY) {
+                    age = Long.MAX_VALUE;
+                }
+
+                if (age > targetAge) {
+                    target = slot;
+                    targetAge = age;
+                }
+            }
+
+            evicted = held == null ? null : held.get(target);
+            evictedCount = counts[target];
+
+            fingerprints[target] = fingerprint;
+            firstSeen[target] = now;
+            counts[target] = 1;
+            if (held != null) {
+                // Copy the hit since the caller is free to reuse the map once send returns, and keep the
+                // screen name it was sent on, since the held hit is converted after the screen changed
+                Map<String, String> copy = new HashMap<>(json);
+                if (!copy.containsKey(HitParameters.SCREEN_NAME)) {
+                    String screenName = snapshot.get(HitParameters.SCREEN_NAME);
+                    if (screenName != null) {
+                        copy.put(HitParameters.SCREEN_NAME, screenName);
+                    }
+                }
+                held.set(target, copy);
+            }
+        }
+
+        if (evicted != null) {
+            emit(evicted, evictedCount);
+        }
+
+        return held != null;
+    }
+
+    /**
+     * Forwards the held hits whose window expired.
+     *
+     * @param now The current time in nanoseconds.
+     */
+    void expire(long now) {
+        release(now, false);
+    }
+
+    /**
+     * Forwards every held hit. Duplicates sent afterwards start a new window.
+     */
+    void flush() {
+        release(System.nanoTime(), true);
+    }
+
+    private void release(long now, boolean all) {
+        List<Map<String, String>> expired = new ArrayList<>();
+        List<Integer> expiredCounts = new ArrayList<>();
+
+        synchronized (this) {
+            if (held == null) {
+                return;
+            }
+
+            List<Integer> slots = new ArrayList<>();
+            for (int slot = 0; slot < held.size(); slot++) {
+                if (held.get(slot) != null && (all || now - firstSeen[slot] >= windowNanos)) {
+                    slots.add(slot);
+                }
+            }
+
+            // Forward the hits in the order they were sent, not in table order
+            Collections.sort(slots, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer lhs, Integer rhs) {
+                    long difference = firstSeen[lhs] - firstSeen[rhs];
+                    return difference < 0 ? -1 : (difference == 0 ? 0 : 1);
+                }
+            });
+
+            for (int slot : slots) {
+                expired.add(held.get(slot));
+                expiredCounts.add(counts[slot]);
+                held.set(slot, null);
+                fingerprints[slot] = EMPTY;
+            }
+        }
+
+        for (int i = 0; i < expired.size(); i++) {
+            emit(expired.get(i), expiredCounts.get(i));
+        }
+    }
+
+    /**
+     * Stops the scheduler and forwards every held hit. Hits recorded afterwards are not coalesced.
+     */
+    void shutdown() {
+        synchronized (this) {
+            shutdown = true;
+        }
+
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+
+        flush();
+    }
+
+    /**
+     * Gets the number of duplicate hits that were suppressed or merged.
+     *
+     * @return The coalesced hit count.
+     */
+    long getCoalescedCount() {
+        return coalescedCount;
+    }
+
+    /**
+     * Gets the number of duplicate hits that were dropped. Merged duplicates are forwarded as the
+     * repeat count of their first hit, so they are not dropped.
+     *
+     * @return The suppressed hit count, or <code>0</code> when merging.
+     */
+    long getDroppedCount() {
+        return merging ? 0 : coalescedCount;
+    }
+
+    private void emit(Map<String, String> hit, int count) {
+        if (count > 1) {
+            hit.put(GoogleAnalyticsTracker.REPEAT_COUNT_PROPERTY, String.valueOf(count));
+        }
+        listener.onHit(hit);
+    }
+
+    private long fingerprint(Map<String, String> json, TrackerFieldSnapshot snapshot) {
+        long hash;
+        if (keyFields == null) {
+            // Sum the field hashes so the fingerprint does not depend on the map iteration order
+            hash = 0;
+            for (Map.Entry<String, String> entry : json.entrySet()) {
+                hash += mix(hash(entry.getValue(), hash(entry.getKey(), FNV_OFFSET)));
+            }
+
+            if (!json.containsKey(HitParameters.SCREEN_NAME)) {
+                String screenName = snapshot.get(HitParameters.SCREEN_NAME);
+                if (screenName != null) {
+                    hash += mix(hash(screenName, hash(HitParameters.SCREEN_NAME, FNV_OFFSET)));
+                }
+            }
+        } else {
+            hash = FNV_OFFSET;
+            for (int i = 0; i < keyFields.length; i++) {
+                String value = json.get(keyFields[i]);
+                if (value == null && trackerFields[i]) {
+                    value = snapshot.get(keyFields[i]);
+                }
+                hash = hash(value, hash);
+            }
+            hash = mix(hash);
+        }
+
+        return hash == EMPTY ? 1 : hash;
+    }
+
+    /**
+     * FNV-1a over the characters of a value, prefixed with its length so that <code>null</code>,
+     * empty and adjacent values hash apart.
+     */
+    private static long hash(String value, long hash) {
+        if (value == null) {
+            return (hash ^ -1L) * FNV_PRIME;
+        }
+
+        hash = (hash ^ value.length()) * FNV_PRIME;
+        for (int i = 0; i < value.length(); i++) {
+            hash = (hash ^ value.charAt(i)) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * The MurmurHash3 finalizer, spreading the FNV hash over the low bits used as the table index.
+     */
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb93fe53a87c5L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
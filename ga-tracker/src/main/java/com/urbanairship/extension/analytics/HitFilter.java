@@ -0,0 +1,354 @@
+/*
+ Copyright 2016 Urban Airship and Contributors
+*/
+
+package com.urbanairship.extension.analytics;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Declarative rules deciding which hits are forwarded to Urban Airship, checked before a hit is
+ * converted. Each rule matches on the hit type and on field conditions, and either drops or allows
+ * the hits it matches. Rules are checked in the order they were added and the first matching rule
+ * decides; hits matching no rule are forwarded.
+ *
+ * The rules are compiled into a decision table keyed by hit type, holding for each hit type only the
+ * rules that can match it, with their conditions flattened into arrays. Checking a hit is one map
+ * lookup and a few string comparisons and allocates nothing. Conditions on a
+ * {@link GoogleAnalyticsTracker#TRACKER_FIELDS tracker field} the hit does not set, e.g. the screen
+ * name (<code>&cd</code>), read the tracker's cached field snapshot, never the Tracker itself.
+ *
+ * The rules do not affect hits sent to GA.
+ */
+public class HitFilter {
+
+    private static final int PRESENT = 0;
+    private static final int ABSENT = 1;
+    private static final int EQUALS = 2;
+    private static final int PREFIX = 3;
+
+    private final String[] names;
+    private final boolean[] dropRules;
+    private final AtomicLongArray matchCounts;
+    private final Map<String, CompiledRule[]> hitTypeRules;
+    private final CompiledRule[] otherRules;
+
+    private HitFilter(Builder builder) {
+        int count = builder.rules.size();
+        names = new String[count];
+        dropRules = new boolean[count];
+        matchCounts = new AtomicLongArray(count);
+
+        List<CompiledRule> compiled = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Rule rule = builder.rules.get(i);
+            names[i] = rule.name;
+            dropRules[i] = builder.drop.get(i);
+            compiled.add(new CompiledRule(i, dropRules[i], rule));
+        }
+
+        // Rules without a hit type apply to every hit, so they are merged into each hit type's rules in order
+        Map<String, CompiledRule[]> table = new HashMap<>();
+        for (CompiledRule rule : compiled) {
+            if (rule.hitType != null && !table.containsKey(rule.hitType)) {
+                table.put(rule.hitType, select(compiled, rule.hitType));
+            }
+        }
+
+        hitTypeRules = Collections.unmodifiableMap(table);
+        otherRules = select(compiled, null);
+    }
+
+    private static CompiledRule[] select(List<CompiledRule> rules, @Nullable String hitType) {
+        List<CompiledRule> selected = new ArrayList<>();
+        for (CompiledRule rule : rules) {
+            if (rule.hitType == null || rule.hitType.equals(hitType)) {
+                selected.add(rule);
+            }
+        }
+        return selected.toArray(new CompiledRule[selected.size()]);
+    }
+
+    /**
+     * Creates a new filter builder.
+     *
+     * @return A new builder.
+     */
+    @NonNull
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    /**
+     * Creates a new rule.
+     *
+     * @param name The rule name, used for its match count.
+     * @return The rule.
+     */
+    @NonNull
+    public static Rule rule(@NonNull String name) {
+        return new Rule(name);
+    }
+
+    /**
+     * Checks if a hit may be forwarded, counting the match of the deciding rule.
+     *
+     * @param json The event JSON.
+     * @param snapshot The tracker field snapshot, read for tracker fields the hit does not set.
+     * @return <code>true</code> if the hit may be forwarded, <code>false</code> if it is dropped.
+     */
+    boolean allow(@NonNull Map<String, String> json, @NonNull TrackerFieldSnapshot snapshot) {
+        String hitType = json.get(HitParameters.HIT_TYPE);
+        CompiledRule[] rules = hitType == null ? null : hitTypeRules.get(hitType);
+        if (rules == null) {
+            rules = otherRules;
+        }
+
+        for (CompiledRule rule : rules) {
+            if (rule.matches(json, snapshot)) {
+                matchCounts.incrementAndGet(rule.index);
+                return !rule.drop;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Gets the number of hits each rule decided, keyed by rule name in the order the rules were added.
+     *
+     * @return The match counts.
+     */
+    @NonNull
+    public Map<String, Long> getMatchCounts() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (int i = 0; i < names.length; i++) {
+            counts.put(names[i], matchCounts.get(i));
+        }
+        return counts;
+    }
+
+    /**
+     * Gets the total number of hits dropped by the rules.
+     *
+     * @return The dropped hit count.
+     */
+    public long getDroppedCount() {
+        long count = 0;
+        for (int i = 0; i < dropRules.length; i++) {
+            if (dropRules[i]) {
+                count += matchCounts.get(i);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Hit type and field conditions of a filter rule. Every condition must hold for the rule to match.
+     */
+    public static class Rule {
+
+        private final String name;
+        private String hitType;
+        private final List<String> keys = new ArrayList<>();
+        private final List<Integer> operators = new ArrayList<>();
+        private final List<String> operands = new ArrayList<>();
+
+        private Rule(@NonNull String name) {
+            this.name = name;
+        }
+
+        /**
+         * Only matches hits of a hit type.
+         *
+         * @param hitType The hit type, e.g. <code>event</code>.
+         * @return The rule.
+         */
+        @NonNull
+        public Rule hitType(@NonNull String hitType) {
+            this.hitType = hitType;
+            return this;
+        }
+
+        /**
+         * Only matches hits that set a field.
+         *
+         * @param key The GA parameter code.
+         * @return The rule.
+         */
+        @NonNull
+        public Rule present(@NonNull String key) {
+            return condition(key, PRESENT, null);
+        }
+
+        /**
+         * Only matches hits that do not set a field.
+         *
+         * @param key The GA parameter code.
+         * @return The rule.
+         */
+        @NonNull
+        public Rule absent(@NonNull String key) {
+            return condition(key, ABSENT, null);
+        }
+
+        /**
+         * Only matches hits with a field value.
+         *
+         * @param key The GA parameter code.
+         * @param value The value.
+         * @return The rule.
+         */
+        @NonNull
+        public Rule equalTo(@NonNull String key, @NonNull String value) {
+            return condition(key, EQUALS, value);
+        }
+
+        /**
+         * Only matches hits with a field value starting with a prefix, e.g. a <code>debug_</code>
+         * event category.
+         *
+         * @param key The GA parameter code.
+         * @param prefix The prefix.
+         * @return The rule.
+         */
+        @NonNull
+        public Rule prefix(@NonNull String key, @NonNull String prefix) {
+            return condition(key, PREFIX, prefix);
+        }
+
+        private Rule condition(String key, int operator, String operand) {
+            keys.add(key);
+            operators.add(operator);
+            operands.add(operand);
+            return this;
+        }
+    }
+
+    private static class CompiledRule {
+        final int index;
+        final boolean drop;
+        final String hitType;
+        final String[] keys;
+        final int[] operators;
+        final String[] operands;
+        final boolean[] trackerFields;
+
+        CompiledRule(int index, boolean drop, Rule rule) {
+            this.index = index;
+            this.drop = drop;
+            this.hitType = rule.hitType;
+
+            int count = rule.keys.size();
+            keys = rule.keys.toArray(new String[count]);
+            operands = rule.operands.toArray(new String[count]);
+            operators = new int[count];
+            trackerFields = new boolean[count];
+            for (int i = 0; i < count; i++) {
+                operators[i] = rule.operators.get(i);
+                trackerFields[i] = GoogleAnalyticsTracker.TRACKER_FIELDS.contains(keys[i]);
+            }
+        }
+
+        boolean matches(Map<String, String> json, TrackerFieldSnapshot snapshot) {
+            for (int i = 0; i < keys.length; i++) {
+                String value = json.get(keys[i]);
+                if (value == null && trackerFields[i]) {
+                    value = snapshot.get(keys[i]);
+                }
+
+                switch (operators[i]) {
+                    case PRESENT:
+                        if (value == null) {
+                            return false;
+                        }
+                        break;
+
+                    case ABSENT:
+                        if (value != null) {
+                            return false;
+                        }
+                        break;
+
+                    case EQUALS:
+                        if (!operands[i].equals(value)) {
+                            return false;
+                        }
+                        break;
+
+                    default:
+                        if (value == null || !value.startsWith(operands[i])) {
+                            return false;
+                        }
+                        break;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Builds a {@link HitFilter}.
+     */
+    public static class Builder {
+
+        private final List<Rule> rules = new ArrayList<>();
+        private final List<Boolean> drop = new ArrayList<>();
+
+        private Builder() {}
+
+        /**
+         * Adds a rule that drops the hits it matches.
+         *
+         * @param rule The rule.
+         * @return The builder.
+         */
+        @NonNull
+        public Builder drop(@NonNull Rule rule) {
+            return add(rule, true);
+        }
+
+        /**
+         * Adds a rule that forwards the hits it matches, e.g. to exempt some hits from a later drop
+         * rule.
+         *
+         * @param rule The rule.
+         * @return The builder.
+         */
+        @NonNull
+        public Builder allow(@NonNull Rule rule) {
+            return add(rule, false);
+        }
+
+        private Builder add(Rule rule, boolean drop) {
+            for (Rule existing : rules) {
+                if (existing.name.equals(rule.name)) {
+                    throw new IllegalArgumentException("Duplicate rule name " + rule.name);
+                }
+            }
+
+            rules.add(rule);
+            this.drop.add(drop);
+            return this;
+        }
+
+        /**
+         * Compiles the filter.
+         *
+         * @return The filter.
+         */
+        @NonNull
+        public HitFilter build() {
+            return new HitFilter(this);
+        }
+    }
+}
@@ -0,0 +1,381 @@
+/*
+ Copyright 2016 Urban Airship and Contributors
+*/
+
+package com.urbanairship.extension.analytics;
+
+import android.support.annotation.NonNull;
+
+import com.urbanairship.Logger;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of hits, stored in memory mapped segment files.
+ *
+ * Each record is laid out as <code>[int length][int crc32][payload]</code>, where the payload holds
+ * the hit timestamp followed by the field count and the key/value pairs. The header is written after
+ * the payload, so a record interrupted by the process dying fails its length or CRC check and ends
+ * the replay of that segment. A segment is rotated once a record no longer fits, and deleted once all
+ * of its records were replayed, which the handler acknowledges by returning. A segment that cannot be
+ * read, or whose replay stopped because the handler failed, is kept for the next process, and a
+ * segment with a corrupt record is renamed with the {@link #QUARANTINE_SUFFIX} instead of being
+ * deleted, so the hits after the damage are not lost.
+ *
+ * While the journal is pending, every hit is appended. Draining replays all segments in order and
+ * clears the pending flag once the journal is empty.
+ */
+class HitJournal {
+
+    /**
+     * Receives replayed hits. A hit counts as delivered once {@link #onHit(Map)} returns, so the
+     * handler must not return before the hit was handed on.
+     */
+    interface HitHandler {
+        void onHit(@NonNull Map<String, String> hit);
+    }
+
+    /**
+     * Suffix of segments set aside because they hold a corrupt record.
+     */
+    static final String QUARANTINE_SUFFIX = ".corrupt";
+
+    private static final String SEGMENT_PREFIX = "hits-";
+    private static final String SEGMENT_SUFFIX = ".journal";
+    private static final int HEADER_SIZE = 8;
+
+    private final File directory;
+    private final int segmentSize;
+    private final List<File> closedSegments = new ArrayList<>();
+    private final Object drainLock = new Object();
+
+    private long nextSegmentId;
+    private File activeFile;
+    private MappedByteBuffer activeBuffer;
+    private boolean pending = true;
+
+    /**
+     * Opens the journal, picking up any segments left by a previous process.
+     *
+     * @param directory The journal directory.
+     * @param segmentSize The segment size in bytes.
+     * @throws IOException If the directory cannot be created.
+     */
+    HitJournal(@NonNull File directory, int segmentSize) throws IOException {
+        if (segmentSize <= HEADER_SIZE) {
+            throw new IllegalArgumentException("Segment size must be greater than " + HEADER_SIZE);
+        }
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create journal directory " + directory);
+        }
+
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+
+        File[] existing = directory.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return segmentId(name) >= 0;
+            }
+        });
+
+        if (existing != null) {
+            Collections.addAll(closedSegments, existing);
+            Collections.sort(closedSegments, new Comparator<File>() {
+                @Override
+                public int compare(File lhs, File rhs) {
+                    long left = segmentId(lhs.getName());
+                    long right = segmentId(rhs.getName());
+                    return left < right ? -1 : (left == right ? 0 : 1);
+                }
+            });
+
+            if (!closedSegments.isEmpty()) {
+                nextSegmentId = segmentId(closedSegments.get(closedSegments.size() - 1).getName()) + 1;
+            }
+        }
+    }
+
+    /**
+     * Appends the hit if the journal is pending.
+     *
+     * @param hit The hit.
+     * @return <code>true</code> if the hit was journaled, <code>false</code> if the journal is no
+     * longer pending or the hit could not be written.
+     */
+    synchronized boolean appendIfPending(@NonNull Map<String, String> hit) {
+        if (!pending) {
+            return false;
+        }
+
+        byte[] payload;
+        try {
+            payload = encode(hit);
+        } catch (IOException e) {
+            Logger.error("GoogleAnalyticsTracker - Unable to encode hit for the journal.", e);
+            return false;
+        }
+
+        int recordSize = HEADER_SIZE + payload.length;
+        if (recordSize > segmentSize) {
+            Logger.error("GoogleAnalyticsTracker - Hit of " + recordSize + " bytes exceeds the journal segment size.");
+            return false;
+        }
+
+        try {
+            if (activeBuffer == null || activeBuffer.remaining() < recordSize) {
+                rotate();
+                openActiveSegment();
+            }
+        } catch (IOException e) {
+            Logger.error("GoogleAnalyticsTracker - Unable to open journal segment.", e);
+            return false;
+        }
+
+        int position = activeBuffer.position();
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+
+        // Payload first, header last, so a partially written record never looks valid
+        activeBuffer.position(position + HEADER_SIZE);
+        activeBuffer.put(payload);
+        activeBuffer.putInt(position + 4, (int) crc.getValue());
+        activeBuffer.putInt(position, payload.length);
+        return true;
+    }
+
+    /**
+     * Checks if hits are currently appended to the journal.
+     *
+     * @return <code>true</code> if the journal is pending, otherwise <code>false</code>.
+     */
+    synchronized boolean isPending() {
+        return pending;
+    }
+
+    /**
+     * Replays every journaled hit in order, deleting each segment once all of its hits were handled.
+     * If the handler throws, the replay of that segment stops and the segment is left for the next
+     * process, which replays it from the start. Hits appended while draining are replayed as well.
+     * Once the journal is empty it stops being pending, even if a segment was left for the next
+     * process. Concurrent calls are serialized.
+     *
+     * @param handler The hit handler.
+     */
+    void drain(@NonNull HitHandler handler) {
+        synchronized (drainLock) {
+            drainSegments(handler);
+        }
+    }
+
+    private void drainSegments(HitHandler handler) {
+        while (true) {
+            File segment;
+            synchronized (this) {
+                if (closedSegments.isEmpty()) {
+                    if (activeBuffer == null || activeBuffer.position() == 0) {
+                        pending = false;
+                        return;
+                    }
+                    rotate();
+                }
+                segment = closedSegments.get(0);
+            }
+
+            boolean intact;
+            try {
+                intact = replay(segment, handler);
+            } catch (IOException e) {
+                // Nothing was replayed from it, leave it to the next process
+                Logger.error("GoogleAnalyticsTracker - Unable to read journal segment " + segment, e);
+                synchronized (this) {
+                    closedSegments.remove(segment);
+                }
+                continue;
+            } catch (RuntimeException e) {
+                // The hit was not handed on, leave the segment to the next process rather than lose it
+                Logger.error("GoogleAnalyticsTracker - Failed to replay journaled hit, keeping journal segment " + segment, e);
+                synchronized (this) {
+                    closedSegments.remove(segment);
+                }
+                continue;
+            }
+
+            synchronized (this) {
+                closedSegments.remove(segment);
+            }
+
+            if (!intact) {
+                quarantine(segment);
+            } else if (!segment.delete()) {
+                Logger.error("GoogleAnalyticsTracker - Unable to delete journal segment " + segment);
+            }
+        }
+    }
+
+    private static void quarantine(File segment) {
+        File quarantined = new File(segment.getParentFile(), segment.getName() + QUARANTINE_SUFFIX);
+        if (!segment.renameTo(quarantined)) {
+            Logger.error("GoogleAnalyticsTracker - Unable to quarantine journal segment " + segment);
+        } else {
+            Logger.error("GoogleAnalyticsTracker - Quarantined corrupt journal segment " + quarantined);
+        }
+    }
+
+    /**
+     * Closes the active segment, making it replayable.
+     */
+    private void rotate() {
+        if (activeBuffer != null) {
+            if (activeBuffer.position() > 0) {
+                closedSegments.add(activeFile);
+            } else if (!activeFile.delete()) {
+                Logger.error("GoogleAnalyticsTracker - Unable to delete journal segment " + activeFile);
+            }
+
+            activeBuffer = null;
+            activeFile = null;
+        }
+    }
+
+    private void openActiveSegment() throws IOException {
+        File file = new File(directory, String.format(Locale.US, "%s%016d%s", SEGMENT_PREFIX, nextSegmentId++, SEGMENT_SUFFIX));
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            // The mapping stays valid after the channel is closed
+            activeBuffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+            activeFile = file;
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    /**
+     * Replays the records of a segment. A record failing its CRC check is skipped, a record with an
+     * invalid length ends the replay since the next record cannot be found.
+     *
+     * @return <code>true</code> if every record was valid, <code>false</code> if a record was corrupt.
+     * @throws IOException If the segment cannot be read. No hit was replayed in that case.
+     * @throws RuntimeException If the handler failed. The remaining records were not replayed.
+     */
+    private static boolean replay(File segment, HitHandler handler) throws IOException {
+        MappedByteBuffer buffer;
+        RandomAccessFile randomAccessFile = new RandomAccessFile(segment, "r");
+        try {
+            buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, randomAccessFile.length());
+        } finally {
+            randomAccessFile.close();
+        }
+
+        CRC32 crc = new CRC32();
+        boolean intact = true;
+        int position = 0;
+        while (position + HEADER_SIZE <= buffer.limit()) {
+            int length = buffer.getInt(position);
+
+            // Segments are zero filled, a zero length is the end of the records or an unfinished append
+            if (length == 0) {
+                break;
+            }
+
+            if (length < 0 || position + HEADER_SIZE + length > buffer.limit()) {
+                Logger.error("GoogleAnalyticsTracker - Invalid journal record length in " + segment);
+                intact = false;
+                break;
+            }
+
+            int crcValue = buffer.getInt(position + 4);
+            byte[] payload = new byte[length];
+            buffer.position(position + HEADER_SIZE);
+            buffer.get(payload);
+            position += HEADER_SIZE + length;
+
+            crc.reset();
+            crc.update(payload, 0, length);
+            if ((int) crc.getValue() != crcValue) {
+                Logger.error("GoogleAnalyticsTracker - Corrupt journal record in " + segment);
+                intact = false;
+                continue;
+            }
+
+            Map<String, String> hit;
+            try {
+                hit = decode(payload);
+            } catch (IOException e) {
+                Logger.error("GoogleAnalyticsTracker - Undecodable journal record in " + segment, e);
+                intact = false;
+                continue;
+            }
+
+            handler.onHit(hit);
+        }
+
+        return intact;
+    }
+
+    private static byte[] encode(Map<String, String> hit) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        int count = 0;
+        for (String value : hit.values()) {
+            if (value != null) {
+                count++;
+            }
+        }
+
+        out.writeLong(System.currentTimeMillis());
+        out.writeShort(count);
+        for (Map.Entry<String, String> entry : hit.entrySet()) {
+            if (entry.getValue() != null) {
+                out.writeUTF(entry.getKey());
+                out.writeUTF(entry.getValue());
+            }
+        }
+
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static Map<String, String> decode(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        in.readLong();
+
+        int count = in.readUnsignedShort();
+        Map<String, String> hit = new HashMap<>(count * 2);
+        for (int i = 0; i < count; i++) {
+            hit.put(HitParameters.canonical(in.readUTF()), in.readUTF());
+        }
+        return hit;
+    }
+
+    private static long segmentId(String name) {
+        if (!name.startsWith(SEGMENT_PREFIX) || !name.endsWith(SEGMENT_SUFFIX)) {
+            return -1;
+        }
+
+        try {
+            return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
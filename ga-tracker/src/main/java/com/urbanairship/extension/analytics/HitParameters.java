@@ -0,0 +1,93 @@
+/*
+ Copyright 2016 Urban Airship and Contributors
+*/
+
+package com.urbanairship.extension.analytics;
+
+import android.support.annotation.NonNull;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * GA measurement protocol parameter codes and hit types used by the tracker. See
+ * https://developers.google.com/analytics/devguides/collection/protocol/v1/parameters
+ *
+ * The constants are the same instances the GA HitBuilders use as keys, so looking them up in a hit
+ * map takes the identity fast path of <code>String.equals</code>.
+ */
+public final class HitParameters {
+
+    public static final String HIT_TYPE = "&t";
+    public static final String QUEUE_TIME = "&qt";
+    public static final String NON_INTERACTION = "&ni";
+    public static final String ANONYMIZE_IP = "&aip";
+    public static final String CLIENT_ID = "&cid";
+    public static final String SCREEN_NAME = "&cd";
+
+    public static final String EVENT_CATEGORY = "&ec";
+    public static final String EVENT_ACTION = "&ea";
+    public static final String EVENT_LABEL = "&el";
+    public static final String EVENT_VALUE = "&ev";
+
+    public static final String TIMING_CATEGORY = "&utc";
+    public static final String TIMING_VARIABLE = "&utv";
+    public static final String TIMING_LABEL = "&utl";
+    public static final String TIMING_VALUE = "&utt";
+
+    public static final String EXCEPTION_DESCRIPTION = "&exd";
+    public static final String EXCEPTION_FATAL = "&exf";
+
+    public static final String SOCIAL_NETWORK = "&sn";
+    public static final String SOCIAL_ACTION = "&sa";
+    public static final String SOCIAL_TARGET = "&st";
+
+    public static final String TRANSACTION_ID = "&ti";
+    public static final String TRANSACTION_REVENUE = "&tr";
+    public static final String TRANSACTION_SHIPPING = "&ts";
+    public static final String TRANSACTION_TAX = "&tt";
+    public static final String CURRENCY_CODE = "&cu";
+    public static final String PRODUCT_ACTION = "&pa";
+
+    public static final String PRODUCT_PREFIX = "&pr";
+    public static final String IMPRESSION_LIST_PREFIX = "&il";
+    public static final String PROMOTION_PREFIX = "&promo";
+
+    public static final String HIT_TYPE_SCREENVIEW = "screenview";
+    public static final String HIT_TYPE_EVENT = "event";
+    public static final String HIT_TYPE_TIMING = "timing";
+    public static final String HIT_TYPE_EXCEPTION = "exception";
+    public static final String HIT_TYPE_SOCIAL = "social";
+
+    private static final Map<String, String> CANONICAL = new HashMap<>();
+
+    static {
+        for (String key : new String[] { HIT_TYPE, QUEUE_TIME, NON_INTERACTION, ANONYMIZE_IP, CLIENT_ID, SCREEN_NAME,
+                EVENT_CATEGORY, EVENT_ACTION, EVENT_LABEL, EVENT_VALUE,
+                TIMING_CATEGORY, TIMING_VARIABLE, TIMING_LABEL, TIMING_VALUE,
+                EXCEPTION_DESCRIPTION, EXCEPTION_FATAL, SOCIAL_NETWORK, SOCIAL_ACTION, SOCIAL_TARGET,
+                TRANSACTION_ID, TRANSACTION_REVENUE, TRANSACTION_SHIPPING, TRANSACTION_TAX, CURRENCY_CODE,
+                PRODUCT_ACTION }) {
+            CANONICAL.put(key, key);
+        }
+
+        for (String key : GoogleAnalyticsTracker.TRACKER_FIELDS) {
+            CANONICAL.put(key, key);
+        }
+    }
+
+    private HitParameters() {}
+
+    /**
+     * Gets the canonical instance of a parameter code, so keys read back from storage share the
+     * constant instances.
+     *
+     * @param key The parameter code.
+     * @return The canonical instance, or the key itself if it is not a known parameter.
+     */
+    @NonNull
+    static String canonical(@NonNull String key) {
+        String canonical = CANONICAL.get(key);
+        return canonical == null ? key : canonical;
+    }
+}
@@ -0,0 +1,264 @@
+/*
+ Copyright 2016 Urban Airship and Contributors
+*/
+
+package com.urbanairship.extension.analytics;
+
+import android.support.annotation.NonNull;
+
+import com.urbanairship.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Records sent hits and their timing to a compact binary file, so a burst captured on a test device
+ * can be replayed against the tracker on a plain JVM.
+ *
+ * The file starts with a magic number and a format version. Each record holds the time since the
+ * previous hit in microseconds, the field count and the key/value pairs, all lengths and counts as
+ * variable length integers. Strings are written once and then referenced by their index in a
+ * dictionary, so the keys and the values that repeat across hits cost a byte or two each. Only
+ * strings of up to {@link #MAX_DICTIONARY_STRING_BYTES} bytes are added, to at most
+ * {@link #MAX_DICTIONARY_SIZE} entries, which bounds the memory of both the writer and the reader.
+ *
+ * Each record is flushed to the file once written, so a recording cut short by the process dying
+ * or being killed is read up to its last complete record.
+ */
+final class HitRecorder implements Closeable {
+
+    /**
+     * A recorded hit.
+     */
+    static final class RecordedHit {
+
+        /**
+         * Time of the hit since the first hit of the recording in microseconds.
+         */
+        final long timeMicros;
+        final Map<String, String> hit;
+
+        RecordedHit(long timeMicros, @NonNull Map<String, String> hit) {
+            this.timeMicros = timeMicros;
+            this.hit = hit;
+        }
+    }
+
+    private static final int MAGIC = 0x47414852;
+    private static final int VERSION = 1;
+
+    static final int MAX_DICTIONARY_SIZE = 4096;
+    static final int MAX_DICTIONARY_STRING_BYTES = 64;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final DataOutputStream out;
+    private final Map<String, Integer> dictionary = new HashMap<>();
+
+    private long lastHitNanos = -1;
+    private long hitCount;
+    private boolean closed;
+
+    /**
+     * Creates the recording, replacing any existing file.
+     *
+     * @param file The recording file.
+     * @throws IOException If the file cannot be created.
+     */
+    HitRecorder(@NonNull File file) throws IOException {
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 8192));
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+    }
+
+    /**
+     * Records a hit and flushes it to the file. The buffer only gathers the small writes of one
+     * record into a single write. Runs on the caller's thread under the recorder lock, so
+     * concurrent callers are serialized on the file write, which is only acceptable for capture
+     * sessions. A write error closes the recording.
+     *
+     * @param hit The hit.
+     */
+    synchronized void record(@NonNull Map<String, String> hit) {
+        if (closed) {
+            return;
+        }
+
+        long now = System.nanoTime();
+        long delta = lastHitNanos < 0 ? 0 : (now - lastHitNanos) / 1000;
+        lastHitNanos = now;
+
+        int count = 0;
+        for (String value : hit.values()) {
+            if (value != null) {
+                count++;
+            }
+        }
+
+        try {
+            writeVarLong(out, delta);
+            writeVarLong(out, count);
+            for (Map.Entry<String, String> entry : hit.entrySet()) {
+                if (entry.getValue() != null) {
+                    writeString(entry.getKey());
+                    writeString(entry.getValue());
+                }
+            }
+            out.flush();
+            hitCount++;
+        } catch (IOException e) {
+            Logger.error("GoogleAnalyticsTracker - Unable to record hit, stopping the recording.", e);
+            closeQuietly();
+        }
+    }
+
+    /**
+     * Gets the number of recorded hits.
+     *
+     * @return The hit count.
+     */
+    synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * Flushes and closes the recording.
+     *
+     * @throws IOException If the recording cannot be flushed.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            out.close();
+        }
+    }
+
+    private void closeQuietly() {
+        try {
+            close();
+        } catch (IOException e) {
+            Logger.error("GoogleAnalyticsTracker - Unable to close the hit recording.", e);
+        }
+    }
+
+    private void writeString(String value) throws IOException {
+        Integer index = dictionary.get(value);
+        if (index != null) {
+            writeVarLong(out, index + 1);
+            return;
+        }
+
+        byte[] bytes = value.getBytes(UTF_8);
+        writeVarLong(out, 0);
+        writeVarLong(out, bytes.length);
+        out.write(bytes);
+
+        if (isDictionaryEntry(dictionary.size(), bytes.length)) {
+            dictionary.put(value, dictionary.size());
+        }
+    }
+
+    /**
+     * Reads a recording.
+     *
+     * @param file The recording file.
+     * @return The recorded hits, in order.
+     * @throws IOException If the file cannot be read or is not a recording.
+     */
+    @NonNull
+    static List<RecordedHit> read(@NonNull File file) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 8192));
+        try {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(file + " is not a hit recording");
+            }
+
+            int version = in.readUnsignedByte();
+            if (version != VERSION) {
+                throw new IOException("Unsupported hit recording version " + version);
+            }
+
+            List<RecordedHit> hits = new ArrayList<>();
+            List<String> dictionary = new ArrayList<>();
+            long time = 0;
+
+            while (true) {
+                RecordedHit hit;
+                try {
+                    time += readVarLong(in);
+                    int count = (int) readVarLong(in);
+                    Map<String, String> fields = new HashMap<>(count * 2);
+                    for (int i = 0; i < count; i++) {
+                        String key = readString(in, dictionary);
+                        fields.put(HitParameters.canonical(key), readString(in, dictionary));
+                    }
+                    hit = new RecordedHit(time, fields);
+                } catch (EOFException e) {
+                    // End of the recording, or a record cut short
+                    return hits;
+                }
+
+                hits.add(hit);
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private static String readString(DataInputStream in, List<String> dictionary) throws IOException {
+        long reference = readVarLong(in);
+        if (reference > 0) {
+            if (reference > dictionary.size()) {
+                throw new IOException("Corrupt hit recording, unknown string " + reference);
+            }
+            return dictionary.get((int) reference - 1);
+        }
+
+        byte[] bytes = new byte[(int) readVarLong(in)];
+        in.readFully(bytes);
+        String value = new String(bytes, UTF_8);
+
+        if (isDictionaryEntry(dictionary.size(), bytes.length)) {
+            dictionary.add(value);
+        }
+        return value;
+    }
+
+    private static boolean isDictionaryEntry(int dictionarySize, int length) {
+        return dictionarySize < MAX_DICTIONARY_SIZE && length <= MAX_DICTIONARY_STRING_BYTES;
+    }
+
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Corrupt hit recording, malformed length");
+    }
+}
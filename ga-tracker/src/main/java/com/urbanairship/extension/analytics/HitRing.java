@@ -0,0 +1,80 @@
+/*
+ Copyright 2016 Urban Airship and Contributors
+*/
+
+package com.urbanairship.extension.analytics;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Fixed size FIFO ring of hits that overwrites the oldest hit when full. Not thread safe.
+ */
+class HitRing {
+
+    private final List<Map<String, String>> hits;
+    private int head;
+    private int size;
+
+    /**
+     * Creates a ring.
+     *
+     * @param capacity The maximum number of hits held.
+     */
+    HitRing(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be greater than 0");
+        }
+        this.hits = new ArrayList<>(Collections.<Map<String, String>>nCopies(capacity, null));
+    }
+
+    /**
+     * Adds a hit, overwriting the oldest hit if the ring is full.
+     *
+     * @param hit The hit.
+     * @return <code>true</code> if the oldest hit was overwritten, otherwise <code>false</code>.
+     */
+    boolean offer(@NonNull Map<String, String> hit) {
+        int tail = (head + size) % hits.size();
+        hits.set(tail, hit);
+
+        if (size == hits.size()) {
+            head = (head + 1) % hits.size();
+            return true;
+        }
+
+        size++;
+        return false;
+    }
+
+    /**
+     * Removes the oldest hit.
+     *
+     * @return The oldest hit, or <code>null</code> if the ring is empty.
+     */
+    @Nullable
+    Map<String, String> poll() {
+        if (size == 0) {
+            return null;
+        }
+
+        Map<String, String> hit = hits.set(head, null);
+        head = (head + 1) % hits.size();
+        size--;
+        return hit;
+    }
+
+    /**
+     * Gets the number of hits held.
+     *
+     * @return The size.
+     */
+    int size() {
+        return size;
+    }
+}
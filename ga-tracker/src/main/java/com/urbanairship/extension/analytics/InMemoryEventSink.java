@@ -0,0 +1,47 @@
+/*
+ Copyright 2016 Urban Airship and Contributors
+*/
+
+package com.urbanairship.extension.analytics;
+
+import android.support.annotation.NonNull;
+
+import com.urbanairship.analytics.CustomEvent;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Sink that keeps the custom events in memory instead of tracking them. Useful for tests.
+ */
+public class InMemoryEventSink implements CustomEventSink {
+
+    private final List<CustomEvent> events = new ArrayList<>();
+
+    @Override
+    public synchronized void submit(@NonNull CustomEvent event) {
+        events.add(event);
+    }
+
+    @Override
+    public synchronized void submit(@NonNull List<CustomEvent> events) {
+        this.events.addAll(events);
+    }
+
+    /**
+     * Gets a copy of the submitted events.
+     *
+     * @return The submitted events, in submission order.
+     */
+    @NonNull
+    public synchronized List<CustomEvent> getEvents() {
+        return new ArrayList<>(events);
+    }
+
+    /**
+     * Removes all the submitted events.
+     */
+    public synchronized void clear() {
+        events.clear();
+    }
+}
@@ -0,0 +1,307 @@
+/*
+ Copyright 2016 Urban Airship and Contributors
+*/
+
+package com.urbanairship.extension.analytics;
+
+import android.support.annotation.NonNull;
+
+import com.urbanairship.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One dispatch leg, GA or UA, running on its own bounded single worker so a slow or failing leg never
+ * holds up the other leg or the sending thread. Calls are made in the order they were submitted.
+ *
+ * A call that runs longer than the policy timeout counts as a failure. A call that is still running
+ * is detected when the next call is submitted or the leg is flushed, and is then abandoned: the
+ * worker is interrupted and the queued calls move to a new worker. Failures feed a
+ * {@link CircuitBreaker}, and calls submitted while the circuit is open are dropped.
+ *
+ * An interrupt does not free a worker blocked on a monitor, so abandoned workers may never exit. At
+ * most {@link IsolationPolicy#maxAbandonedWorkers} of them are alive at once. At that limit a
+ * stalled worker is kept, and calls are dropped instead of queued behind it, so no probe call is
+ * started, until a stuck call returns.
+ */
+final class IsolatedLeg {
+
+    private final String name;
+    private final IsolationPolicy policy;
+    private final CircuitBreaker breaker;
+
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong timeoutCount = new AtomicLong();
+
+    private volatile LegExecutor executor;
+    private volatile boolean shutdown;
+
+    // Guarded by this
+    private final List<LegExecutor> abandoned = new ArrayList<>();
+
+    IsolatedLeg(@NonNull String name, @NonNull IsolationPolicy policy) {
+        this.name = name;
+        this.policy = policy;
+        this.breaker = new CircuitBreaker(policy.failureThreshold, policy.openNanos);
+        this.executor = new LegExecutor();
+    }
+
+    /**
+     * Submits a call.
+     *
+     * @param task The call.
+     * @return <code>true</code> if the call was queued, <code>false</code> if it was dropped or the
+     * leg is shut down.
+     */
+    boolean submit(@NonNull Runnable task) {
+        if (shutdown) {
+            return false;
+        }
+
+        abandonStalledCall();
+
+        if (isStalled(executor) || !breaker.allowRequest()) {
+            droppedCount.incrementAndGet();
+            return false;
+        }
+
+        try {
+            executor.execute(new Call(task));
+            return true;
+        } catch (RejectedExecutionException e) {
+            breaker.onCancelled();
+            droppedCount.incrementAndGet();
+            return false;
+        }
+    }
+
+    /**
+     * Blocks until the calls submitted before this call have finished or were abandoned.
+     */
+    void flush() {
+        FutureTask<Void> marker = new FutureTask<>(new Runnable() {
+            @Override
+            public void run() {}
+        }, null);
+
+        LegExecutor target = executor;
+        if (!queueMarker(target, marker)) {
+            return;
+        }
+
+        while (true) {
+            try {
+                marker.get(policy.timeoutNanos, TimeUnit.NANOSECONDS);
+                return;
+            } catch (TimeoutException e) {
+                abandonStalledCall();
+
+                // A stalled worker that could not be abandoned may never reach the marker
+                if (executor == target && isStalled(target)) {
+                    return;
+                }
+
+                // The marker may have been queued just after the calls moved to a new worker
+                if (target.isShutdown()) {
+                    if (shutdown) {
+                        return;
+                    }
+
+                    target = executor;
+                    if (!queueMarker(target, marker)) {
+                        return;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                return;
+            }
+        }
+    }
+
+    private boolean queueMarker(LegExecutor target, Runnable marker) {
+        // The marker is not a Call, so it never counts toward the circuit breaker
+        try {
+            target.getQueue().put(marker);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Runs the queued calls and stops the worker. Later calls are refused.
+     */
+    void shutdown() {
+        flush();
+        shutdown = true;
+        executor.shutdown();
+    }
+
+    boolean isShutdown() {
+        return shutdown;
+    }
+
+    long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    long getTimeoutCount() {
+        return timeoutCount.get();
+    }
+
+    @NonNull
+    CircuitBreaker.State getState() {
+        return breaker.getState();
+    }
+
+    private static boolean isStalled(LegExecutor executor) {
+        Call running = executor.running;
+        return running != null && running.timedOut;
+    }
+
+    private void abandonStalledCall() {
+        LegExecutor current = executor;
+        Call running = current.running;
+        if (running == null || System.nanoTime() - running.start <= policy.timeoutNanos) {
+            return;
+        }
+
+        // Counts the failure once, a call that timed out earlier is retried once a worker slot frees up
+        if (!running.timeOut() && !running.timedOut) {
+            return;
+        }
+
+        synchronized (this) {
+            if (executor != current) {
+                return;
+            }
+
+            for (int i = abandoned.size() - 1; i >= 0; i--) {
+                if (abandoned.get(i).isTerminated()) {
+                    abandoned.remove(i);
+                }
+            }
+
+            if (abandoned.size() >= policy.maxAbandonedWorkers) {
+                return;
+            }
+
+            Logger.error("GoogleAnalyticsTracker - " + name + " call timed out, abandoning it.");
+
+            // Move the queued calls to a new worker and interrupt the stalled one. A call submitted
+            // between the drain and the shutdown is returned by shutdownNow, so it moves as well.
+            List<Runnable> queued = new ArrayList<>();
+            current.getQueue().drainTo(queued);
+            executor = new LegExecutor();
+            queued.addAll(current.shutdownNow());
+            abandoned.add(current);
+
+            for (Runnable task : queued) {
+                try {
+                    executor.execute(task);
+                } catch (RejectedExecutionException e) {
+                    // A rejected probe call must release the half-open circuit
+                    if (task instanceof Call) {
+                        breaker.onCancelled();
+                        droppedCount.incrementAndGet();
+                    }
+                }
+            }
+        }
+    }
+
+    private class Call implements Runnable {
+
+        private final Runnable task;
+        private final AtomicBoolean finished = new AtomicBoolean();
+        volatile long start;
+        volatile boolean timedOut;
+
+        Call(Runnable task) {
+            this.task = task;
+        }
+
+        /**
+         * Marks the call as timed out, unless it already finished.
+         *
+         * @return <code>true</code> if the call was marked.
+         */
+        boolean timeOut() {
+            if (!finished.compareAndSet(false, true)) {
+                return false;
+            }
+
+            timedOut = true;
+            timeoutCount.incrementAndGet();
+            breaker.onFailure();
+            return true;
+        }
+
+        @Override
+        public void run() {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                Logger.error("GoogleAnalyticsTracker - " + name + " call failed.", e);
+                if (finished.compareAndSet(false, true)) {
+                    breaker.onFailure();
+                }
+                return;
+            }
+
+            if (System.nanoTime() - start > policy.timeoutNanos) {
+                timeOut();
+            } else if (finished.compareAndSet(false, true)) {
+                breaker.onSuccess();
+            }
+        }
+    }
+
+    private class LegExecutor extends ThreadPoolExecutor {
+
+        volatile Call running;
+
+        LegExecutor() {
+            super(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(policy.queueCapacity), new ThreadFactory() {
+                @Override
+                public Thread newThread(@NonNull Runnable runnable) {
+                    Thread thread = new Thread(runnable, "GoogleAnalyticsTracker-" + name);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+            // Start the worker up front so flush can queue its marker directly
+            prestartCoreThread();
+        }
+
+        @Override
+        protected void beforeExecute(Thread thread, Runnable task) {
+            if (task instanceof Call) {
+                Call call = (Call) task;
+                call.start = System.nanoTime();
+                running = call;
+            }
+        }
+
+        @Override
+        protected void afterExecute(Runnable task, Throwable throwable) {
+            running = null;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ Copyright 2016 Urban Airship and Contributors
+*/
+
+package com.urbanairship.extension.analytics;
+
+import android.support.annotation.NonNull;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Queue, timeout and circuit breaker settings of an isolated dispatch leg. See
+ * {@link GoogleAnalyticsTracker#enableLegIsolation(IsolationPolicy, IsolationPolicy)}.
+ */
+public class IsolationPolicy {
+
+    final int queueCapacity;
+    final long timeoutNanos;
+    final int failureThreshold;
+    final long openNanos;
+    final int maxAbandonedWorkers;
+
+    private IsolationPolicy(Builder builder) {
+        this.queueCapacity = builder.queueCapacity;
+        this.timeoutNanos = builder.timeoutNanos;
+        this.failureThreshold = builder.failureThreshold;
+        this.openNanos = builder.openNanos;
+        this.maxAbandonedWorkers = builder.maxAbandonedWorkers;
+    }
+
+    /**
+     * Creates a new policy builder.
+     *
+     * @return A new builder.
+     */
+    @NonNull
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    /**
+     * Builds an {@link IsolationPolicy}.
+     */
+    public static class Builder {
+
+        private int queueCapacity = 256;
+        private long timeoutNanos = TimeUnit.SECONDS.toNanos(5);
+        private int failureThreshold = 5;
+        private long openNanos = TimeUnit.SECONDS.toNanos(30);
+        private int maxAbandonedWorkers = 1;
+
+        private Builder() {}
+
+        /**
+         * Sets the maximum number of hits waiting for the leg. Hits sent while the queue is full are
+         * dropped. Defaults to 256.
+         *
+         * @param queueCapacity The queue capacity.
+         * @return The builder.
+         */
+        @NonNull
+        public Builder setQueueCapacity(int queueCapacity) {
+            if (queueCapacity < 1) {
+                throw new IllegalArgumentException("queueCapacity must be positive");
+            }
+
+            this.queueCapacity = queueCapacity;
+            return this;
+        }
+
+        /**
+         * Sets the time a call may take before it counts as a failure. A call that is still running
+         * after the timeout is abandoned and the queued hits move to a new worker, see
+         * {@link #setMaxAbandonedWorkers(int)}. Defaults to 5 seconds.
+         *
+         * @param timeout The timeout.
+         * @param unit The timeout unit.
+         * @return The builder.
+         */
+        @NonNull
+        public Builder setTimeout(long timeout, @NonNull TimeUnit unit) {
+            if (timeout <= 0) {
+                throw new IllegalArgumentException("timeout must be positive");
+            }
+
+            this.timeoutNanos = unit.toNanos(timeout);
+            return this;
+        }
+
+        /**
+         * Sets the number of consecutive failures that open the circuit. Defaults to 5.
+         *
+         * @param failureThreshold The failure threshold.
+         * @return The builder.
+         */
+        @NonNull
+        public Builder setFailureThreshold(int failureThreshold) {
+            if (failureThreshold < 1) {
+                throw new IllegalArgumentException("failureThreshold must be positive");
+            }
+
+            this.failureThreshold = failureThreshold;
+            return this;
+        }
+
+        /**
+         * Sets how long an open circuit drops hits before a probe hit is let through. Defaults to 30
+         * seconds.
+         *
+         * @param duration The open duration.
+         * @param unit The duration unit.
+         * @return The builder.
+         */
+        @NonNull
+        public Builder setOpenDuration(long duration, @NonNull TimeUnit unit) {
+            if (duration < 0) {
+                throw new IllegalArgumentException("duration must not be negative");
+            }
+
+            this.openNanos = unit.toNanos(duration);
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of abandoned workers that may still be stuck in a call at once. A
+         * stuck call cannot always be interrupted, e.g. while it waits for a lock, so every abandoned
+         * worker can hold a thread for good. Once the limit is reached, a stalled worker is no longer
+         * abandoned, and the leg drops its hits, probe hits included, until the stalled call or one
+         * of the abandoned ones returns. Defaults to 1.
+         *
+         * @param maxAbandonedWorkers The maximum number of abandoned workers, or 0 to never abandon a
+         * stalled worker.
+         * @return The builder.
+         */
+        @NonNull
+        public Builder setMaxAbandonedWorkers(int maxAbandonedWorkers) {
+            if (maxAbandonedWorkers < 0) {
+                throw new IllegalArgumentException("maxAbandonedWorkers must not be negative");
+            }
+
+            this.maxAbandonedWorkers = maxAbandonedWorkers;
+            return this;
+        }
+
+        /**
+         * Creates the policy.
+         *
+         * @return The policy.
+         */
+        @NonNull
+        public IsolationPolicy build() {
+            return new IsolationPolicy(this);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ Copyright 2016 Urban Airship and Contributors
+*/
+
+package com.urbanairship.extension.analytics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed memory, log-linear histogram of non-negative values. Values below 16 are counted exactly,
+ * larger values fall into one of 8 linear sub-buckets per power of two, which bounds the relative
+ * error of a reported percentile to about 6%. Values of 2^41 and above are clamped to the last
+ * bucket.
+ *
+ * Recording is lock-free and safe from multiple threads. Reads are not atomic across buckets.
+ */
+class LogHistogram {
+
+    private static final int EXACT_BUCKETS = 16;
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MIN_EXPONENT = 4;
+    private static final int MAX_EXPONENT = 40;
+
+    static final int BUCKET_COUNT = EXACT_BUCKETS + (MAX_EXPONENT - MIN_EXPONENT + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+
+    /**
+     * Records a value.
+     *
+     * @param value The value. Negative values are recorded as 0.
+     */
+    void record(long value) {
+        counts.incrementAndGet(bucketIndex(value));
+    }
+
+    /**
+     * Gets the total number of recorded values.
+     *
+     * @return The count.
+     */
+    long getCount() {
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            total += counts.get(i);
+        }
+        return total;
+    }
+
+    /**
+     * Gets an approximate percentile.
+     *
+     * @param percentile The percentile, between 0 and 100.
+     * @return The approximate value at the percentile, or 0 if nothing was recorded.
+     */
+    long getPercentile(double percentile) {
+        return getPercentiles(percentile)[0];
+    }
+
+    /**
+     * Gets several approximate percentiles from a single read of the buckets.
+     *
+     * @param percentiles The percentiles, between 0 and 100.
+     * @return The approximate values at the percentiles, or 0 if nothing was recorded.
+     */
+    long[] getPercentiles(double... percentiles) {
+        long[] snapshot = new long[BUCKET_COUNT];
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+
+        long[] values = new long[percentiles.length];
+        if (total == 0) {
+            return values;
+        }
+
+        for (int p = 0; p < percentiles.length; p++) {
+            long rank = (long) Math.ceil(total * Math.min(100, Math.max(0, percentiles[p])) / 100.0);
+            rank = Math.max(1, rank);
+
+            long seen = 0;
+            int index = BUCKET_COUNT - 1;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                seen += snapshot[i];
+                if (seen >= rank) {
+                    index = i;
+                    break;
+                }
+            }
+
+            values[p] = bucketMidpoint(index);
+        }
+
+        return values;
+    }
+
+    /**
+     * Resets all the counts.
+     */
+    void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts.set(i, 0);
+        }
+    }
+
+    static int bucketIndex(long value) {
+        if (value < EXACT_BUCKETS) {
+            return value < 0 ? 0 : (int) value;
+        }
+
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKET_COUNT - 1;
+        }
+
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return EXACT_BUCKETS + (exponent - MIN_EXPONENT) * SUB_BUCKETS + subBucket;
+    }
+
+    static long bucketMidpoint(int index) {
+        if (index < EXACT_BUCKETS) {
+            return index;
+        }
+
+        int exponent = MIN_EXPONENT + (index - EXACT_BUCKETS) / SUB_BUCKETS;
+        int subBucket = (index - EXACT_BUCKETS) % SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        long lower = (1L << exponent) + subBucket * width;
+        return lower + width / 2;
+    }
+}
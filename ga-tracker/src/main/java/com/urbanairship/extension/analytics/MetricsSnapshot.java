@@ -0,0 +1,201 @@
+/*
+ Copyright 2016 Urban Airship and Contributors
+*/
+
+package com.urbanairship.extension.analytics;
+
+import android.support.annotation.NonNull;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Point in time copy of the {@link GoogleAnalyticsTracker} metrics. Latencies are in nanoseconds.
+ */
+public class MetricsSnapshot {
+
+    /**
+     * Summary of a latency histogram. Percentiles are approximate, within about 6%.
+     */
+    public static class Latency {
+
+        private final long count;
+        private final long p50;
+        private final long p90;
+        private final long p99;
+        private final long max;
+
+        Latency(long count, long p50, long p90, long p99, long max) {
+            this.count = count;
+            this.p50 = p50;
+            this.p90 = p90;
+            this.p99 = p99;
+            this.max = max;
+        }
+
+        /**
+         * Gets the number of recorded calls.
+         *
+         * @return The call count.
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Gets the median latency.
+         *
+         * @return The median latency in nanoseconds.
+         */
+        public long getP50() {
+            return p50;
+        }
+
+        /**
+         * Gets the 90th percentile latency.
+         *
+         * @return The 90th percentile latency in nanoseconds.
+         */
+        public long getP90() {
+            return p90;
+        }
+
+        /**
+         * Gets the 99th percentile latency.
+         *
+         * @return The 99th percentile latency in nanoseconds.
+         */
+        public long getP99() {
+            return p99;
+        }
+
+        /**
+         * Gets the maximum latency.
+         *
+         * @return The maximum latency in nanoseconds.
+         */
+        public long getMax() {
+            return max;
+        }
+
+        @Override
+        public String toString() {
+            return "Latency{count=" + count + ", p50=" + p50 + ", p90=" + p90 + ", p99=" + p99 + ", max=" + max + "}";
+        }
+    }
+
+    private final Map<String, Long> googleAnalyticsHits;
+    private final Map<String, Long> urbanAirshipEvents;
+    private final Latency googleAnalyticsLatency;
+    private final Latency conversionLatency;
+    private final Latency sinkLatency;
+    private final Map<GoogleAnalyticsTracker.Extender, Latency> extenderLatencies;
+    private final long errorCount;
+    private final long droppedCount;
+
+    MetricsSnapshot(Map<String, Long> googleAnalyticsHits, Map<String, Long> urbanAirshipEvents,
+                    Latency googleAnalyticsLatency, Latency conversionLatency, Latency sinkLatency,
+                    Map<GoogleAnalyticsTracker.Extender, Latency> extenderLatencies, long errorCount, long droppedCount) {
+        this.googleAnalyticsHits = Collections.unmodifiableMap(googleAnalyticsHits);
+        this.urbanAirshipEvents = Collections.unmodifiableMap(urbanAirshipEvents);
+        this.googleAnalyticsLatency = googleAnalyticsLatency;
+        this.conversionLatency = conversionLatency;
+        this.sinkLatency = sinkLatency;
+        this.extenderLatencies = Collections.unmodifiableMap(extenderLatencies);
+        this.errorCount = errorCount;
+        this.droppedCount = droppedCount;
+    }
+
+    /**
+     * Gets the number of hits sent to GA per hit type.
+     *
+     * @return The hit counts keyed by hit type.
+     */
+    @NonNull
+    public Map<String, Long> getGoogleAnalyticsHits() {
+        return googleAnalyticsHits;
+    }
+
+    /**
+     * Gets the number of custom events created per hit type.
+     *
+     * @return The custom event counts keyed by hit type.
+     */
+    @NonNull
+    public Map<String, Long> getUrbanAirshipEvents() {
+        return urbanAirshipEvents;
+    }
+
+    /**
+     * Gets the latency of sending hits to the GA Tracker.
+     *
+     * @return The GA latency.
+     */
+    @NonNull
+    public Latency getGoogleAnalyticsLatency() {
+        return googleAnalyticsLatency;
+    }
+
+    /**
+     * Gets the latency of converting a hit to a custom event, including the extenders.
+     *
+     * @return The conversion latency.
+     */
+    @NonNull
+    public Latency getConversionLatency() {
+        return conversionLatency;
+    }
+
+    /**
+     * Gets the latency of submitting events to the {@link CustomEventSink}.
+     *
+     * @return The sink latency.
+     */
+    @NonNull
+    public Latency getSinkLatency() {
+        return sinkLatency;
+    }
+
+    /**
+     * Gets the latency of each extender, keyed by the extender instance. Keys are compared by
+     * identity, so extenders that are equal or share a name are still reported apart.
+     *
+     * @return The extender latencies.
+     */
+    @NonNull
+    public Map<GoogleAnalyticsTracker.Extender, Latency> getExtenderLatencies() {
+        return extenderLatencies;
+    }
+
+    /**
+     * Gets the number of hits that failed to convert or dispatch.
+     *
+     * @return The error count.
+     */
+    public long getErrorCount() {
+        return errorCount;
+    }
+
+    /**
+     * Gets the number of hits dropped before conversion: by the hit filter, coalescing, sampling or
+     * rate limits, the asynchronous dispatch overflow policy, the isolated legs, or the buffer of a
+     * lazily created tracker.
+     *
+     * @return The dropped hit count.
+     */
+    public long getDroppedCount() {
+        return droppedCount;
+    }
+
+    @Override
+    public String toString() {
+        return "MetricsSnapshot{googleAnalyticsHits=" + googleAnalyticsHits +
+                ", urbanAirshipEvents=" + urbanAirshipEvents +
+                ", googleAnalyticsLatency=" + googleAnalyticsLatency +
+                ", conversionLatency=" + conversionLatency +
+                ", sinkLatency=" + sinkLatency +
+                ", extenderLatencies=" + extenderLatencies +
+                ", errorCount=" + errorCount +
+                ", droppedCount=" + droppedCount + "}";
+    }
+}
@@ -0,0 +1,26 @@
+/*
+ Copyright 2016 Urban Airship and Contributors
+*/
+
+package com.urbanairship.extension.analytics;
+
+/**
+ * Policy applied when a hit is sent while the asynchronous dispatch queue is full.
+ */
+public enum OverflowPolicy {
+
+    /**
+     * Discard the oldest queued hit to make room for the new hit.
+     */
+    DROP_OLDEST,
+
+    /**
+     * Discard the new hit, keeping the queued hits.
+     */
+    DROP_NEWEST,
+
+    /**
+     * Block the sending thread until the queue has room for the new hit.
+     */
+    BLOCK
+}
@@ -0,0 +1,385 @@
+/*
+ Copyright 2016 Urban Airship and Contributors
+*/
+
+package com.urbanairship.extension.analytics;
+
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Size limits for the custom event properties, enforced on the finished event when it is created.
+ * Values longer than the value limit are truncated, and when an event has too many properties or too
+ * many bytes, properties are shed starting with the lowest priority tier. Within a tier the
+ * properties added last are shed first, so event fields outlive tracker fields of the same priority.
+ *
+ * Every string, number, boolean and string list property counts, including the list properties of
+ * {@link EcommerceMode#STRUCTURED} events, the properties of context events and the properties added
+ * by extenders. A list counts as one property, each of its values is truncated on its own and its
+ * size is the sum of its values.
+ *
+ * Priorities are assigned to property names, after any {@link PropertyProjection} renames. The
+ * {@link GoogleAnalyticsTracker#TRACKER_FIELDS} and {@link GoogleAnalyticsTracker#EXPENSIVE_TRACKER_FIELDS}
+ * default to {@link #PRIORITY_LOW}, the hit type and the context version properties to
+ * {@link #PRIORITY_HIGH} and every other property to {@link #PRIORITY_NORMAL}. Sizes are measured in
+ * UTF-8 bytes of the property name and value.
+ */
+public class PayloadBudget {
+
+    public static final int PRIORITY_LOW = 0;
+    public static final int PRIORITY_NORMAL = 50;
+    public static final int PRIORITY_HIGH = 100;
+
+    /**
+     * Urban Airship's custom event property limit.
+     */
+    public static final int DEFAULT_MAX_PROPERTIES = 100;
+
+    /**
+     * Urban Airship's custom event string length limit.
+     */
+    public static final int DEFAULT_MAX_VALUE_BYTES = 255;
+
+    private final int maxProperties;
+    private final int maxValueBytes;
+    private final int maxTotalBytes;
+    private final Map<String, Integer> priorities;
+
+    private final AtomicLong shedEvents = new AtomicLong();
+    private final AtomicLong shedProperties = new AtomicLong();
+    private final AtomicLong truncatedValues = new AtomicLong();
+
+    private PayloadBudget(Builder builder) {
+        this.maxProperties = builder.maxProperties;
+        this.maxValueBytes = builder.maxValueBytes;
+        this.maxTotalBytes = builder.maxTotalBytes;
+
+        Map<String, Integer> priorities = new HashMap<>();
+        for (String key : GoogleAnalyticsTracker.TRACKER_FIELDS) {
+            priorities.put(key, PRIORITY_LOW);
+        }
+        for (String key : GoogleAnalyticsTracker.EXPENSIVE_TRACKER_FIELDS) {
+            priorities.put(key, PRIORITY_LOW);
+        }
+        priorities.put(HitParameters.HIT_TYPE, PRIORITY_HIGH);
+        priorities.put(GoogleAnalyticsTracker.CONTEXT_VERSION_PROPERTY, PRIORITY_HIGH);
+        priorities.put(GoogleAnalyticsTracker.CONTEXT_BASE_VERSION_PROPERTY, PRIORITY_HIGH);
+        priorities.put(GoogleAnalyticsTracker.CONTEXT_REMOVED_PROPERTY, PRIORITY_HIGH);
+        priorities.putAll(builder.priorities);
+
+        this.priorities = Collections.unmodifiableMap(priorities);
+    }
+
+    /**
+     * Creates a new budget builder.
+     *
+     * @return A new builder.
+     */
+    @NonNull
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    /**
+     * Truncates and sheds the properties in the buffer until they fit the budget. Allocates nothing
+     * when the properties already fit.
+     *
+     * @param properties The property buffer.
+     */
+    void enforce(@NonNull PropertyBuffer properties) {
+        enforce(properties, Collections.<ListProperty>emptyList());
+    }
+
+    /**
+     * Truncates and sheds the properties until they fit the budget. The list properties count as
+     * added after the properties in the buffer.
+     *
+     * @param properties The property buffer.
+     * @param lists The list properties.
+     */
+    void enforce(@NonNull PropertyBuffer properties, @NonNull List<ListProperty> lists) {
+        int totalBytes = 0;
+        for (int i = 0; i < properties.size(); i++) {
+            String value = properties.getValue(i);
+            int valueBytes = utf8Length(value);
+            if (valueBytes > maxValueBytes) {
+                value = truncate(value, maxValueBytes);
+                properties.setValue(i, value);
+                valueBytes = utf8Length(value);
+                truncatedValues.incrementAndGet();
+            }
+
+            totalBytes += utf8Length(properties.getKey(i)) + valueBytes;
+        }
+
+        for (ListProperty list : lists) {
+            totalBytes += truncate(list);
+        }
+
+        int count = properties.size() + lists.size();
+        if (count <= maxProperties && totalBytes <= maxTotalBytes) {
+            return;
+        }
+
+        int shed = 0;
+        while (count > 0 && (count > maxProperties || totalBytes > maxTotalBytes)) {
+            int index = lowestPriorityIndex(properties);
+            int listIndex = lowestPriorityIndex(lists);
+
+            // The lists were added last, so they go first on a tie
+            if (listIndex >= 0 && (index < 0 || priorityOf(lists.get(listIndex).name) <= priorityOf(properties.getKey(index)))) {
+                totalBytes -= lists.remove(listIndex).bytes;
+            } else {
+                totalBytes -= utf8Length(properties.getKey(index)) + utf8Length(properties.getValue(index));
+                properties.remove(index);
+            }
+
+            count--;
+            shed++;
+        }
+
+        shedEvents.incrementAndGet();
+        shedProperties.addAndGet(shed);
+    }
+
+    /**
+     * Gets the number of events that had properties shed.
+     *
+     * @return The shed event count.
+     */
+    public long getShedEventCount() {
+        return shedEvents.get();
+    }
+
+    /**
+     * Gets the total number of properties shed.
+     *
+     * @return The shed property count.
+     */
+    public long getShedPropertyCount() {
+        return shedProperties.get();
+    }
+
+    /**
+     * Gets the number of values truncated to the value limit.
+     *
+     * @return The truncated value count.
+     */
+    public long getTruncatedValueCount() {
+        return truncatedValues.get();
+    }
+
+    private int lowestPriorityIndex(PropertyBuffer properties) {
+        int lowest = -1;
+        int lowestPriority = Integer.MAX_VALUE;
+
+        // Ties go to the last property, so walk backwards and only replace on a strictly lower priority
+        for (int i = properties.size() - 1; i >= 0; i--) {
+            int priority = priorityOf(properties.getKey(i));
+            if (priority < lowestPriority) {
+                lowest = i;
+                lowestPriority = priority;
+            }
+        }
+        return lowest;
+    }
+
+    private int lowestPriorityIndex(List<ListProperty> lists) {
+        int lowest = -1;
+        int lowestPriority = Integer.MAX_VALUE;
+        for (int i = lists.size() - 1; i >= 0; i--) {
+            int priority = priorityOf(lists.get(i).name);
+            if (priority < lowestPriority) {
+                lowest = i;
+                lowestPriority = priority;
+            }
+        }
+        return lowest;
+    }
+
+    /**
+     * Truncates the values of a list property and records its size.
+     *
+     * @return The size of the name and the values in UTF-8 bytes.
+     */
+    private int truncate(ListProperty list) {
+        int bytes = utf8Length(list.name);
+        for (int i = 0; i < list.values.size(); i++) {
+            String value = list.values.get(i);
+            int valueBytes = utf8Length(value);
+            if (valueBytes > maxValueBytes) {
+                value = truncate(value, maxValueBytes);
+                list.values.set(i, value);
+                valueBytes = utf8Length(value);
+                truncatedValues.incrementAndGet();
+            }
+            bytes += valueBytes;
+        }
+
+        list.bytes = bytes;
+        return bytes;
+    }
+
+    private int priorityOf(String key) {
+        Integer priority = priorities.get(key);
+        return priority == null ? PRIORITY_NORMAL : priority;
+    }
+
+    /**
+     * Gets the UTF-8 encoded length of a string without encoding it.
+     */
+    static int utf8Length(String value) {
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Truncates a string to at most <code>maxBytes</code> UTF-8 bytes, without splitting a character.
+     */
+    static String truncate(String value, int maxBytes) {
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            int bytes = 1;
+            int chars = 1;
+            if (c >= 0x80 && c < 0x800) {
+                bytes = 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                bytes = 4;
+                chars = 2;
+            } else if (c >= 0x800) {
+                bytes = 3;
+            }
+
+            if (length + bytes > maxBytes) {
+                return value.substring(0, i);
+            }
+
+            length += bytes;
+            i += chars - 1;
+        }
+        return value;
+    }
+
+    /**
+     * A string list property, counted as a single property.
+     */
+    static final class ListProperty {
+
+        final String name;
+        final List<String> values;
+        int bytes;
+
+        ListProperty(@NonNull String name, @NonNull Collection<String> values) {
+            this.name = name;
+            this.values = new ArrayList<>(values);
+        }
+    }
+
+    /**
+     * Builds a {@link PayloadBudget}.
+     */
+    public static class Builder {
+
+        private int maxProperties = DEFAULT_MAX_PROPERTIES;
+        private int maxValueBytes = DEFAULT_MAX_VALUE_BYTES;
+        private int maxTotalBytes = Integer.MAX_VALUE;
+        private final Map<String, Integer> priorities = new HashMap<>();
+
+        private Builder() {}
+
+        /**
+         * Sets the maximum number of properties. Defaults to {@link #DEFAULT_MAX_PROPERTIES}.
+         *
+         * @param maxProperties The maximum number of properties.
+         * @return The builder.
+         */
+        @NonNull
+        public Builder setMaxProperties(int maxProperties) {
+            if (maxProperties < 0) {
+                throw new IllegalArgumentException("maxProperties must not be negative");
+            }
+
+            this.maxProperties = maxProperties;
+            return this;
+        }
+
+        /**
+         * Sets the maximum size of a property value. Longer values are truncated. Defaults to
+         * {@link #DEFAULT_MAX_VALUE_BYTES}.
+         *
+         * @param maxValueBytes The maximum value size in UTF-8 bytes.
+         * @return The builder.
+         */
+        @NonNull
+        public Builder setMaxValueBytes(int maxValueBytes) {
+            if (maxValueBytes < 0) {
+                throw new IllegalArgumentException("maxValueBytes must not be negative");
+            }
+
+            this.maxValueBytes = maxValueBytes;
+            return this;
+        }
+
+        /**
+         * Sets the maximum size of all property names and values. Unlimited by default.
+         *
+         * @param maxTotalBytes The maximum total size in UTF-8 bytes.
+         * @return The builder.
+         */
+        @NonNull
+        public Builder setMaxTotalBytes(int maxTotalBytes) {
+            if (maxTotalBytes < 0) {
+                throw new IllegalArgumentException("maxTotalBytes must not be negative");
+            }
+
+            this.maxTotalBytes = maxTotalBytes;
+            return this;
+        }
+
+        /**
+         * Sets the priority tier of properties. Lower priorities are shed first.
+         *
+         * @param priority The priority, e.g. {@link #PRIORITY_HIGH}.
+         * @param keys The property names.
+         * @return The builder.
+         */
+        @NonNull
+        public Builder setPriority(int priority, @NonNull String... keys) {
+            for (String key : keys) {
+                priorities.put(key, priority);
+            }
+            return this;
+        }
+
+        /**
+         * Compiles the budget.
+         *
+         * @return The budget.
+         */
+        @NonNull
+        public PayloadBudget build() {
+            return new PayloadBudget(this);
+        }
+    }
+}
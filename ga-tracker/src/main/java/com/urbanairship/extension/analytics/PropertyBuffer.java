@@ -0,0 +1,176 @@
+/*
+ Copyright 2016 Urban Airship and Contributors
+*/
+
+package com.urbanairship.extension.analytics;
+
+import android.support.annotation.NonNull;
+
+import com.urbanairship.analytics.CustomEvent;
+
+/**
+ * Pre-sized, reusable list of custom event properties. Each thread converting hits owns one buffer,
+ * obtained with {@link #acquire()}, so collecting the properties of a hit allocates nothing once the
+ * buffer has grown to fit the largest hit.
+ */
+final class PropertyBuffer {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private static final ThreadLocal<PropertyBuffer> BUFFERS = new ThreadLocal<PropertyBuffer>() {
+        @Override
+        protected PropertyBuffer initialValue() {
+            return new PropertyBuffer(INITIAL_CAPACITY);
+        }
+    };
+
+    private String[] keys;
+    private String[] values;
+    private PropertyType[] types;
+    private int size;
+
+    PropertyBuffer(int capacity) {
+        keys = new String[capacity];
+        values = new String[capacity];
+        types = new PropertyType[capacity];
+    }
+
+    /**
+     * Gets the calling thread's buffer, cleared. The buffer must be released by copying it to a
+     * builder before the thread converts another hit.
+     *
+     * @return The cleared buffer.
+     */
+    @NonNull
+    static PropertyBuffer acquire() {
+        PropertyBuffer buffer = BUFFERS.get();
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Adds a string property.
+     *
+     * @param key The property name.
+     * @param value The property value.
+     */
+    void add(@NonNull String key, @NonNull String value) {
+        add(key, value, PropertyType.STRING);
+    }
+
+    /**
+     * Adds a property.
+     *
+     * @param key The property name.
+     * @param value The property value.
+     * @param type The type the value is added to the custom event as.
+     */
+    void add(@NonNull String key, @NonNull String value, @NonNull PropertyType type) {
+        if (size == keys.length) {
+            grow();
+        }
+
+        keys[size] = key;
+        values[size] = value;
+        types[size] = type;
+        size++;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Gets the number of properties the buffer holds before it has to grow.
+     *
+     * @return The capacity.
+     */
+    int capacity() {
+        return keys.length;
+    }
+
+    @NonNull
+    String getKey(int index) {
+        return keys[index];
+    }
+
+    @NonNull
+    String getValue(int index) {
+        return values[index];
+    }
+
+    @NonNull
+    PropertyType getType(int index) {
+        return types[index];
+    }
+
+    void setValue(int index, @NonNull String value) {
+        values[index] = value;
+    }
+
+    /**
+     * Removes a property, keeping the order of the others.
+     *
+     * @param index The property index.
+     */
+    void remove(int index) {
+        int moved = size - index - 1;
+        System.arraycopy(keys, index + 1, keys, index, moved);
+        System.arraycopy(values, index + 1, values, index, moved);
+        System.arraycopy(types, index + 1, types, index, moved);
+        size--;
+        keys[size] = null;
+        values[size] = null;
+        types[size] = null;
+    }
+
+    /**
+     * Copies the properties to the custom event builder, in the order they were added.
+     *
+     * @param builder The custom event builder.
+     */
+    void copyTo(@NonNull CustomEvent.Builder builder) {
+        for (int i = 0; i < size; i++) {
+            if (types[i] == PropertyType.STRING) {
+                builder.addProperty(keys[i], values[i]);
+            } else {
+                types[i].addProperty(builder, keys[i], values[i]);
+            }
+        }
+    }
+
+    /**
+     * Appends the properties to another buffer.
+     *
+     * @param other The buffer the properties are added to.
+     */
+    void copyInto(@NonNull PropertyBuffer other) {
+        for (int i = 0; i < size; i++) {
+            other.add(keys[i], values[i], types[i]);
+        }
+    }
+
+    /**
+     * Clears the buffer, dropping the references to the previous hit.
+     */
+    void clear() {
+        for (int i = 0; i < size; i++) {
+            keys[i] = null;
+            values[i] = null;
+            types[i] = null;
+        }
+        size = 0;
+    }
+
+    private void grow() {
+        String[] newKeys = new String[keys.length * 2];
+        String[] newValues = new String[values.length * 2];
+        PropertyType[] newTypes = new PropertyType[types.length * 2];
+        System.arraycopy(keys, 0, newKeys, 0, size);
+        System.arraycopy(values, 0, newValues, 0, size);
+        System.arraycopy(types, 0, newTypes, 0, size);
+        keys = newKeys;
+        values = newValues;
+        types = newTypes;
+    }
+}
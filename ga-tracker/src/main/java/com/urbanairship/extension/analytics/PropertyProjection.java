@@ -0,0 +1,214 @@
+/*
+ Copyright 2016 Urban Airship and Contributors
+*/
+
+package com.urbanairship.extension.analytics;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Declarative projection of the GA hit and Tracker fields onto the custom event properties. A
+ * projection can restrict the fields that are copied with an allowlist or a denylist, rename the
+ * GA parameter codes to readable property names, and transform values.
+ *
+ * The projection is compiled into a single lookup table when it is built, so mapping a field costs
+ * one table lookup. The key strings are used as-is and are never parsed or concatenated.
+ */
+public class PropertyProjection {
+
+    /**
+     * Transforms a property value.
+     */
+    public interface ValueTransform {
+
+        /**
+         * Transforms the value.
+         *
+         * @param key The GA parameter code, e.g. <code>&ec</code>.
+         * @param value The GA value.
+         * @return The transformed value, or <code>null</code> to drop the property.
+         */
+        @Nullable
+        String transform(@NonNull String key, @NonNull String value);
+    }
+
+    private static final Rule PASS = new Rule(true, null, null);
+    private static final Rule DROP = new Rule(false, null, null);
+
+    private final Map<String, Rule> rules;
+    private final Rule defaultRule;
+
+    private PropertyProjection(Builder builder) {
+        Set<String> keys = new HashSet<>();
+        keys.addAll(builder.included);
+        keys.addAll(builder.excluded);
+        keys.addAll(builder.renames.keySet());
+        keys.addAll(builder.transforms.keySet());
+
+        boolean allowlist = !builder.included.isEmpty();
+        this.defaultRule = allowlist ? DROP : PASS;
+
+        Map<String, Rule> compiled = new HashMap<>(keys.size() * 2);
+        for (String key : keys) {
+            boolean allowed = !builder.excluded.contains(key) && (!allowlist || builder.included.contains(key));
+            if (!allowed) {
+                compiled.put(key, DROP);
+            } else {
+                compiled.put(key, new Rule(true, builder.renames.get(key), builder.transforms.get(key)));
+            }
+        }
+
+        this.rules = Collections.unmodifiableMap(compiled);
+    }
+
+    /**
+     * Creates a new projection builder.
+     *
+     * @return A new builder.
+     */
+    @NonNull
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    /**
+     * Adds a field to the property buffer if the projection allows it.
+     *
+     * @param properties The property buffer.
+     * @param key The GA parameter code.
+     * @param value The GA value.
+     * @param type The property type.
+     */
+    void apply(@NonNull PropertyBuffer properties, @NonNull String key, @NonNull String value, @NonNull PropertyType type) {
+        Rule rule = rules.get(key);
+        if (rule == null) {
+            rule = defaultRule;
+        }
+
+        if (!rule.allowed) {
+            return;
+        }
+
+        if (rule.transform != null) {
+            value = rule.transform.transform(key, value);
+            if (value == null) {
+                return;
+            }
+        }
+
+        properties.add(rule.name == null ? key : rule.name, value, type);
+    }
+
+    /**
+     * Gets the property name for a field without a value, e.g. for list properties. Value transforms
+     * are not applied.
+     *
+     * @param key The GA parameter code.
+     * @return The property name, or <code>null</code> if the projection drops the field.
+     */
+    @Nullable
+    String project(@NonNull String key) {
+        Rule rule = rules.get(key);
+        if (rule == null) {
+            rule = defaultRule;
+        }
+
+        if (!rule.allowed) {
+            return null;
+        }
+
+        return rule.name == null ? key : rule.name;
+    }
+
+    private static class Rule {
+        final boolean allowed;
+        final String name;
+        final ValueTransform transform;
+
+        Rule(boolean allowed, String name, ValueTransform transform) {
+            this.allowed = allowed;
+            this.name = name;
+            this.transform = transform;
+        }
+    }
+
+    /**
+     * Builds a {@link PropertyProjection}.
+     */
+    public static class Builder {
+
+        private final Set<String> included = new HashSet<>();
+        private final Set<String> excluded = new HashSet<>();
+        private final Map<String, String> renames = new HashMap<>();
+        private final Map<String, ValueTransform> transforms = new HashMap<>();
+
+        private Builder() {}
+
+        /**
+         * Adds fields to the allowlist. Once any field is included, only included fields are copied.
+         *
+         * @param keys The GA parameter codes.
+         * @return The builder.
+         */
+        @NonNull
+        public Builder include(@NonNull String... keys) {
+            Collections.addAll(included, keys);
+            return this;
+        }
+
+        /**
+         * Adds fields to the denylist. Excluded fields are never copied, even if they are included.
+         *
+         * @param keys The GA parameter codes.
+         * @return The builder.
+         */
+        @NonNull
+        public Builder exclude(@NonNull String... keys) {
+            Collections.addAll(excluded, keys);
+            return this;
+        }
+
+        /**
+         * Renames a field.
+         *
+         * @param key The GA parameter code, e.g. <code>&ec</code>.
+         * @param name The custom event property name, e.g. <code>category</code>.
+         * @return The builder.
+         */
+        @NonNull
+        public Builder rename(@NonNull String key, @NonNull String name) {
+            renames.put(key, name);
+            return this;
+        }
+
+        /**
+         * Sets the value transform for a field.
+         *
+         * @param key The GA parameter code.
+         * @param transform The value transform.
+         * @return The builder.
+         */
+        @NonNull
+        public Builder transform(@NonNull String key, @NonNull ValueTransform transform) {
+            transforms.put(key, transform);
+            return this;
+        }
+
+        /**
+         * Compiles the projection.
+         *
+         * @return The projection.
+         */
+        @NonNull
+        public PropertyProjection build() {
+            return new PropertyProjection(this);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ Copyright 2016 Urban Airship and Contributors
+*/
+
+package com.urbanairship.extension.analytics;
+
+import android.support.annotation.NonNull;
+
+import com.urbanairship.analytics.CustomEvent;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Type of a custom event property, derived from the GA measurement protocol type of the parameter.
+ */
+enum PropertyType {
+
+    STRING,
+    INTEGER,
+    NUMBER,
+    BOOLEAN;
+
+    private static final String CUSTOM_METRIC_PREFIX = "&cm";
+
+    private static final Map<String, PropertyType> TYPES = new HashMap<>();
+
+    static {
+        TYPES.put(HitParameters.EVENT_VALUE, INTEGER);
+        TYPES.put(HitParameters.TIMING_VALUE, INTEGER);
+        TYPES.put(HitParameters.QUEUE_TIME, INTEGER);
+        TYPES.put(HitParameters.TRANSACTION_REVENUE, NUMBER);
+        TYPES.put(HitParameters.TRANSACTION_SHIPPING, NUMBER);
+        TYPES.put(HitParameters.TRANSACTION_TAX, NUMBER);
+        TYPES.put(HitParameters.NON_INTERACTION, BOOLEAN);
+        TYPES.put(HitParameters.EXCEPTION_FATAL, BOOLEAN);
+        TYPES.put(HitParameters.ANONYMIZE_IP, BOOLEAN);
+
+        TYPES.put(EcommerceItems.PRODUCT_PROPERTY_PREFIX + "pr", NUMBER);
+        TYPES.put(EcommerceItems.PRODUCT_PROPERTY_PREFIX + "qt", INTEGER);
+        TYPES.put(EcommerceItems.PRODUCT_PROPERTY_PREFIX + "ps", INTEGER);
+        TYPES.put(EcommerceItems.IMPRESSION_PROPERTY_PREFIX + "pr", NUMBER);
+        TYPES.put(EcommerceItems.IMPRESSION_PROPERTY_PREFIX + "ps", INTEGER);
+    }
+
+    /**
+     * Gets the type of a parameter. Custom metrics (<code>&cm1</code> to <code>&cm200</code>) are
+     * numbers, unknown parameters are strings.
+     *
+     * @param key The GA parameter code.
+     * @return The property type.
+     */
+    @NonNull
+    static PropertyType of(@NonNull String key) {
+        PropertyType type = TYPES.get(key);
+        if (type != null) {
+            return type;
+        }
+
+        if (key.startsWith(CUSTOM_METRIC_PREFIX) && key.length() > CUSTOM_METRIC_PREFIX.length()
+                && isDigits(key, CUSTOM_METRIC_PREFIX.length())) {
+            return NUMBER;
+        }
+
+        return STRING;
+    }
+
+    /**
+     * Adds the value to the custom event builder as this type. Values that do not parse are added as
+     * strings.
+     *
+     * @param builder The custom event builder.
+     * @param key The property name.
+     * @param value The GA value.
+     */
+    void addProperty(@NonNull CustomEvent.Builder builder, @NonNull String key, @NonNull String value) {
+        try {
+            switch (this) {
+                case INTEGER:
+                    builder.addProperty(key, Long.parseLong(value));
+                    return;
+
+                case NUMBER:
+                    double number = Double.parseDouble(value);
+                    if (!Double.isNaN(number) && !Double.isInfinite(number)) {
+                        builder.addProperty(key, number);
+                        return;
+                    }
+                    break;
+
+                case BOOLEAN:
+                    if ("1".equals(value) || "true".equals(value)) {
+                        builder.addProperty(key, true);
+                        return;
+                    }
+
+                    if ("0".equals(value) || "false".equals(value)) {
+                        builder.addProperty(key, false);
+                        return;
+                    }
+                    break;
+
+                default:
+                    break;
+            }
+        } catch (NumberFormatException e) {
+            // Not a number, fall back to the string value
+        }
+
+        builder.addProperty(key, value);
+    }
+
+    private static boolean isDigits(String key, int start) {
+        for (int i = start; i < key.length(); i++) {
+            char c = key.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+}
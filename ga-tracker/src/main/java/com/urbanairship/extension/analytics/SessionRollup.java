@@ -0,0 +1,390 @@
+/*
+ Copyright 2016 Urban Airship and Contributors
+*/
+
+package com.urbanairship.extension.analytics;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.urbanairship.Logger;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rolls the hits of a session up into one summary hit. A session ends when no hit was recorded for
+ * the session timeout, when a hit ends it with the GA session control parameter (<code>&sc</code>),
+ * or when {@link #endSession()} is called, e.g. when the app goes to the background. The timeout can
+ * be changed while the rollup runs, so it follows the timeout of the GA Tracker.
+ *
+ * Memory use is fixed by the limits: the screen path keeps the last <code>maxScreens</code>
+ * screens, and event and timing counters are kept for the first <code>maxCategories</code>
+ * categories, with later categories counted together under {@link #OTHER_CATEGORY}.
+ */
+class SessionRollup {
+
+    /**
+     * Category the events and timings of categories past the category limit are counted under.
+     */
+    static final String OTHER_CATEGORY = "(other)";
+
+    private static final String SESSION_CONTROL = "&sc";
+    private static final String SESSION_START = "start";
+    private static final String SESSION_END = "end";
+    private static final String SCREEN_SEPARATOR = " > ";
+
+    /**
+     * Receives the summary hits.
+     */
+    interface SummaryListener {
+        void onSummary(@NonNull Map<String, String> summary);
+    }
+
+    // A timeout of 0 or less never ends a session for inactivity, like in GA
+    private volatile long timeoutMillis;
+    private final SummaryListener listener;
+    private final ScheduledExecutorService scheduler;
+
+    // Session state, guarded by this
+    private boolean active;
+    private long startTime;
+    private long lastHitTime;
+    private long hitCount;
+
+    private final String[] screens;
+    private int screenCount;
+
+    private final Counters events;
+    private final Counters timings;
+
+    private long exceptionCount;
+    private long fatalExceptionCount;
+    private String lastException;
+
+    /**
+     * Creates and starts the rollup.
+     *
+     * @param timeout The session timeout.
+     * @param unit The timeout unit.
+     * @param maxScreens The number of screens kept in the screen path.
+     * @param maxCategories The number of event and timing categories counted separately.
+     * @param listener The summary listener.
+     */
+    SessionRollup(long timeout, @NonNull TimeUnit unit, int maxScreens, int maxCategories, @NonNull SummaryListener listener) {
+        if (timeout < 1 || maxScreens < 1 || maxCategories < 1) {
+            throw new IllegalArgumentException("Timeout, max screens and max categories must be greater than 0");
+        }
+
+        this.timeoutMillis = Math.max(1, unit.toMillis(timeout));
+        this.listener = listener;
+        this.screens = new String[maxScreens];
+        this.events = new Counters(maxCategories);
+        this.timings = new Counters(maxCategories);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(@NonNull Runnable runnable) {
+                Thread thread = new Thread(runnable, "GoogleAnalyticsTracker-session");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        scheduleExpiry();
+    }
+
+    /**
+     * Sets the session timeout. Applies to the current session as well.
+     *
+     * @param timeout The session timeout, or 0 or less to only end sessions explicitly.
+     * @param unit The timeout unit.
+     */
+    void setTimeout(long timeout, @NonNull TimeUnit unit) {
+        timeoutMillis = timeout <= 0 ? 0 : Math.max(1, unit.toMillis(timeout));
+    }
+
+    /**
+     * Schedules the next expiry check a quarter of the current timeout from now, so the checks
+     * follow timeout changes.
+     */
+    private void scheduleExpiry() {
+        long timeout = timeoutMillis;
+        long delay = timeout <= 0 ? TimeUnit.SECONDS.toMillis(1) : Math.max(1, timeout / 4);
+
+        try {
+            scheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    expire(System.currentTimeMillis());
+                    scheduleExpiry();
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Shut down
+        }
+    }
+
+    private boolean isExpired(long now) {
+        long timeout = timeoutMillis;
+        return timeout > 0 && now - lastHitTime > timeout;
+    }
+
+    /**
+     * Records a hit.
+     *
+     * @param json The event JSON.
+     * @param screenName The screen name of the hit, or <code>null</code> if unknown.
+     */
+    void record(@NonNull Map<String, String> json, @Nullable String screenName) {
+        record(json, screenName, System.currentTimeMillis());
+    }
+
+    void record(@NonNull Map<String, String> json, @Nullable String screenName, long now) {
+        Map<String, String> ended = null;
+        Map<String, String> closed = null;
+
+        synchronized (this) {
+            String control = json.get(SESSION_CONTROL);
+            if (active && (isExpired(now) || SESSION_START.equals(control))) {
+                ended = endLocked();
+            }
+
+            if (!active) {
+                active = true;
+                startTime = now;
+            }
+
+            lastHitTime = now;
+            hitCount++;
+            recordLocked(json, screenName);
+
+            if (SESSION_END.equals(control)) {
+                closed = endLocked();
+            }
+        }
+
+        emit(ended);
+        emit(closed);
+    }
+
+    /**
+     * Ends the current session, emitting its summary.
+     */
+    void endSession() {
+        Map<String, String> summary;
+        synchronized (this) {
+            summary = active ? endLocked() : null;
+        }
+        emit(summary);
+    }
+
+    /**
+     * Ends the current session and stops the expiry timer.
+     */
+    void shutdown() {
+        scheduler.shutdown();
+        endSession();
+    }
+
+    void expire(long now) {
+        Map<String, String> summary = null;
+        synchronized (this) {
+            if (active && isExpired(now)) {
+                summary = endLocked();
+            }
+        }
+        emit(summary);
+    }
+
+    private void recordLocked(Map<String, String> json, String screenName) {
+        String hitType = json.get(HitParameters.HIT_TYPE);
+        if (HitParameters.HIT_TYPE_SCREENVIEW.equals(hitType)) {
+            if (screenName != null) {
+                addScreen(screenName);
+            }
+        } else if (HitParameters.HIT_TYPE_EVENT.equals(hitType)) {
+            events.record(json.get(HitParameters.EVENT_CATEGORY), 0);
+        } else if (HitParameters.HIT_TYPE_TIMING.equals(hitType)) {
+            try {
+                String value = json.get(HitParameters.TIMING_VALUE);
+                if (value != null) {
+                    timings.record(json.get(HitParameters.TIMING_CATEGORY), Long.parseLong(value));
+                }
+            } catch (NumberFormatException e) {
+                // Not a valid timing, only counted as a hit
+            }
+        } else if (HitParameters.HIT_TYPE_EXCEPTION.equals(hitType)) {
+            exceptionCount++;
+            if ("1".equals(json.get(HitParameters.EXCEPTION_FATAL))) {
+                fatalExceptionCount++;
+            }
+
+            String description = json.get(HitParameters.EXCEPTION_DESCRIPTION);
+            if (description != null) {
+                lastException = description;
+            }
+        }
+    }
+
+    private void addScreen(String screenName) {
+        // Repeated screen views of the same screen are one step of the path
+        if (screenCount > 0 && screenName.equals(screens[(screenCount - 1) % screens.length])) {
+            return;
+        }
+
+        screens[screenCount % screens.length] = screenName;
+        screenCount++;
+    }
+
+    private Map<String, String> endLocked() {
+        Map<String, String> summary = new HashMap<>();
+        summary.put(HitParameters.HIT_TYPE, GoogleAnalyticsTracker.SESSION_SUMMARY_HIT_TYPE);
+        summary.put("session_start", String.valueOf(startTime));
+        summary.put("session_end", String.valueOf(lastHitTime));
+        summary.put("duration", String.valueOf(lastHitTime - startTime));
+        summary.put("hit_count", String.valueOf(hitCount));
+
+        if (screenCount > 0) {
+            int kept = Math.min(screenCount, screens.length);
+            StringBuilder path = new StringBuilder();
+            for (int i = screenCount - kept; i < screenCount; i++) {
+                if (path.length() > 0) {
+                    path.append(SCREEN_SEPARATOR);
+                }
+                path.append(screens[i % screens.length]);
+            }
+
+            summary.put("screen_path", path.toString());
+            summary.put("screen_count", String.valueOf(screenCount));
+        }
+
+        for (int i = 0; i < events.size(); i++) {
+            summary.put("events." + events.getName(i), String.valueOf(events.getCount(i)));
+        }
+
+        for (int i = 0; i < timings.size(); i++) {
+            String prefix = "timings." + timings.getName(i);
+            summary.put(prefix + ".count", String.valueOf(timings.getCount(i)));
+            summary.put(prefix + ".mean", String.valueOf(timings.getSum(i) / timings.getCount(i)));
+            summary.put(prefix + ".max", String.valueOf(timings.getMax(i)));
+        }
+
+        if (exceptionCount > 0) {
+            summary.put("exception_count", String.valueOf(exceptionCount));
+            summary.put("fatal_exception_count", String.valueOf(fatalExceptionCount));
+            if (lastException != null) {
+                summary.put("last_exception", lastException);
+            }
+        }
+
+        // Reset for the next session, keeping the preallocated arrays
+        active = false;
+        hitCount = 0;
+        screenCount = 0;
+        for (int i = 0; i < screens.length; i++) {
+            screens[i] = null;
+        }
+        events.clear();
+        timings.clear();
+        exceptionCount = 0;
+        fatalExceptionCount = 0;
+        lastException = null;
+
+        return summary;
+    }
+
+    private void emit(Map<String, String> summary) {
+        if (summary == null) {
+            return;
+        }
+
+        try {
+            listener.onSummary(summary);
+        } catch (RuntimeException e) {
+            Logger.error("GoogleAnalyticsTracker - Failed to emit session summary.", e);
+        }
+    }
+
+    /**
+     * Fixed size per category counters. The last slot is reserved for {@link #OTHER_CATEGORY}.
+     */
+    private static class Counters {
+        private final String[] names;
+        private final long[] counts;
+        private final long[] sums;
+        private final long[] maxes;
+        private int size;
+
+        Counters(int maxCategories) {
+            names = new String[maxCategories + 1];
+            counts = new long[maxCategories + 1];
+            sums = new long[maxCategories + 1];
+            maxes = new long[maxCategories + 1];
+        }
+
+        void record(String category, long value) {
+            String name = category == null ? OTHER_CATEGORY : category;
+            int index = indexOf(name);
+            if (index < 0) {
+                if (size < names.length - 1) {
+                    index = size++;
+                    names[index] = name;
+                } else {
+                    index = indexOf(OTHER_CATEGORY);
+                    if (index < 0) {
+                        index = size++;
+                        names[index] = OTHER_CATEGORY;
+                    }
+                }
+            }
+
+            counts[index]++;
+            sums[index] += value;
+            maxes[index] = Math.max(maxes[index], value);
+        }
+
+        private int indexOf(String name) {
+            for (int i = 0; i < size; i++) {
+                if (names[i].equals(name)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        int size() {
+            return size;
+        }
+
+        String getName(int index) {
+            return names[index];
+        }
+
+        long getCount(int index) {
+            return counts[index];
+        }
+
+        long getSum(int index) {
+            return sums[index];
+        }
+
+        long getMax(int index) {
+            return maxes[index];
+        }
+
+        void clear() {
+            for (int i = 0; i < size; i++) {
+                names[i] = null;
+                counts[i] = 0;
+                sums[i] = 0;
+                maxes[i] = 0;
+            }
+            size = 0;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ Copyright 2016 Urban Airship and Contributors
+*/
+
+package com.urbanairship.extension.analytics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counter striped across cache line padded cells, picked by thread ID, so threads updating it at
+ * the same time rarely contend on the same cell.
+ */
+class StripedCounter {
+
+    private static final int STRIPES = 16;
+
+    // 8 longs per stripe keeps each cell on its own 64 byte cache line
+    private static final int PADDING = 8;
+
+    private final AtomicLongArray cells = new AtomicLongArray(STRIPES * PADDING);
+
+    /**
+     * Increments the counter.
+     */
+    void increment() {
+        add(1);
+    }
+
+    /**
+     * Adds to the counter.
+     *
+     * @param delta The value to add.
+     */
+    void add(long delta) {
+        int stripe = (int) Thread.currentThread().getId() & (STRIPES - 1);
+        cells.addAndGet(stripe * PADDING, delta);
+    }
+
+    /**
+     * Gets the sum of all the cells.
+     *
+     * @return The counter value.
+     */
+    long sum() {
+        long sum = 0;
+        for (int i = 0; i < STRIPES; i++) {
+            sum += cells.get(i * PADDING);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,252 @@
+/*
+ Copyright 2016 Urban Airship and Contributors
+*/
+
+package com.urbanairship.extension.analytics;
+
+import android.support.annotation.NonNull;
+
+import com.urbanairship.Logger;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Groups timing hits by category, variable and label, and emits one summary hit per group when the
+ * aggregation window expires, when the group limit is reached or when it is flushed.
+ */
+class TimingAggregator {
+
+    /**
+     * Receives the summary hits.
+     */
+    interface SummaryListener {
+        void onSummary(@NonNull Map<String, String> summary);
+    }
+
+    private final int maxGroups;
+    private final SummaryListener listener;
+    private final ScheduledExecutorService scheduler;
+
+    private final GroupKey probe = new GroupKey();
+    private Map<GroupKey, TimingGroup> groups = new HashMap<>();
+
+    /**
+     * Creates and starts the aggregator.
+     *
+     * @param window The aggregation window.
+     * @param unit The window unit.
+     * @param maxGroups The maximum number of groups held before all groups are emitted.
+     * @param listener The summary listener.
+     */
+    TimingAggregator(long window, @NonNull TimeUnit unit, int maxGroups, @NonNull SummaryListener listener) {
+        if (window < 1 || maxGroups < 1) {
+            throw new IllegalArgumentException("Window and max groups must be greater than 0");
+        }
+
+        this.maxGroups = maxGroups;
+        this.listener = listener;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(@NonNull Runnable runnable) {
+                Thread thread = new Thread(runnable, "GoogleAnalyticsTracker-timing");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        scheduler.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                flush();
+            }
+        }, window, window, unit);
+    }
+
+    /**
+     * Records a timing hit.
+     *
+     * @param json The event JSON.
+     * @return <code>true</code> if the hit was aggregated, <code>false</code> if it is not a timing
+     * hit with a valid value and should be forwarded as is.
+     */
+    boolean record(@NonNull Map<String, String> json) {
+        if (!HitParameters.HIT_TYPE_TIMING.equals(json.get(HitParameters.HIT_TYPE))) {
+            return false;
+        }
+
+        long value;
+        try {
+            String timing = json.get(HitParameters.TIMING_VALUE);
+            if (timing == null) {
+                return false;
+            }
+            value = Long.parseLong(timing);
+        } catch (NumberFormatException e) {
+            return false;
+        }
+
+        String category = json.get(HitParameters.TIMING_CATEGORY);
+        String variable = json.get(HitParameters.TIMING_VARIABLE);
+        String label = json.get(HitParameters.TIMING_LABEL);
+        Map<GroupKey, TimingGroup> full = null;
+
+        synchronized (this) {
+            // Look up with the reusable probe, a key is only allocated for a new group
+            probe.set(category, variable, label);
+            TimingGroup group = groups.get(probe);
+            if (group == null) {
+                if (groups.size() >= maxGroups) {
+                    full = groups;
+                    groups = new HashMap<>();
+                }
+
+                GroupKey key = new GroupKey();
+                key.set(category, variable, label);
+                group = new TimingGroup(key);
+                groups.put(key, group);
+            }
+
+            group.record(value);
+        }
+
+        if (full != null) {
+            emit(full);
+        }
+
+        return true;
+    }
+
+    /**
+     * Emits a summary for every group and starts a new window.
+     */
+    void flush() {
+        Map<GroupKey, TimingGroup> current;
+        synchronized (this) {
+            if (groups.isEmpty()) {
+                return;
+            }
+            current = groups;
+            groups = new HashMap<>();
+        }
+
+        emit(current);
+    }
+
+    /**
+     * Emits the remaining groups and stops the window timer.
+     */
+    void shutdown() {
+        scheduler.shutdown();
+        flush();
+    }
+
+    private void emit(Map<GroupKey, TimingGroup> groups) {
+        List<Map<String, String>> summaries = new ArrayList<>(groups.size());
+        for (TimingGroup group : groups.values()) {
+            summaries.add(group.toSummary());
+        }
+
+        for (Map<String, String> summary : summaries) {
+            try {
+                listener.onSummary(summary);
+            } catch (RuntimeException e) {
+                Logger.error("GoogleAnalyticsTracker - Failed to emit timing summary.", e);
+            }
+        }
+    }
+
+    private static class GroupKey {
+        String category;
+        String variable;
+        String label;
+        int hashCode;
+
+        void set(String category, String variable, String label) {
+            this.category = category;
+            this.variable = variable;
+            this.label = label;
+
+            int result = category != null ? category.hashCode() : 0;
+            result = 31 * result + (variable != null ? variable.hashCode() : 0);
+            result = 31 * result + (label != null ? label.hashCode() : 0);
+            this.hashCode = result;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof GroupKey)) {
+                return false;
+            }
+
+            GroupKey that = (GroupKey) o;
+            return equals(category, that.category) && equals(variable, that.variable) && equals(label, that.label);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        private static boolean equals(String a, String b) {
+            return a == null ? b == null : a.equals(b);
+        }
+    }
+
+    private static class TimingGroup {
+        final GroupKey key;
+        final LogHistogram histogram = new LogHistogram();
+        long count;
+        long sum;
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+
+        TimingGroup(GroupKey key) {
+            this.key = key;
+        }
+
+        void record(long value) {
+            count++;
+            sum += value;
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+            histogram.record(value);
+        }
+
+        Map<String, String> toSummary() {
+            Map<String, String> summary = new HashMap<>();
+            summary.put(HitParameters.HIT_TYPE, GoogleAnalyticsTracker.TIMING_SUMMARY_HIT_TYPE);
+            if (key.category != null) {
+                summary.put(HitParameters.TIMING_CATEGORY, key.category);
+            }
+            if (key.variable != null) {
+                summary.put(HitParameters.TIMING_VARIABLE, key.variable);
+            }
+            if (key.label != null) {
+                summary.put(HitParameters.TIMING_LABEL, key.label);
+            }
+
+            summary.put("count", Long.toString(count));
+            summary.put("sum", Long.toString(sum));
+            summary.put("min", Long.toString(min));
+            summary.put("max", Long.toString(max));
+            summary.put("p50", Long.toString(clamp(histogram.getPercentile(50))));
+            summary.put("p90", Long.toString(clamp(histogram.getPercentile(90))));
+            summary.put("p99", Long.toString(clamp(histogram.getPercentile(99))));
+            return summary;
+        }
+
+        private long clamp(long value) {
+            return Math.max(min, Math.min(max, value));
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ Copyright 2016 Urban Airship and Contributors
+*/
+
+package com.urbanairship.extension.analytics;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Versioned context of the tracker level fields, used to delta encode them. Each distinct set of
+ * field values gets a version, and the change to a new version is reported once, with only the
+ * fields that changed since the previous version. Fields that change with every screen are left out
+ * of the context and stay on the events.
+ *
+ * A version is named <code>&lt;epoch&gt;-&lt;counter&gt;</code>. The epoch is random for each
+ * context, so the versions of different processes or trackers of the same install do not collide
+ * even though their counters all start at 1.
+ *
+ * The snapshots are compared by identity first, so while the fields are unchanged getting the
+ * version is two volatile reads. A change is reported under the context lock, so no event carrying
+ * the new version is created before the change was handled.
+ */
+final class TrackerContext {
+
+    /**
+     * Receives the context changes.
+     */
+    interface ChangeListener {
+
+        /**
+         * Called when the tracker fields changed.
+         *
+         * @param version The new context version.
+         * @param baseVersion The version the change applies to, or <code>null</code> if the change
+         * holds every field.
+         * @param changed The fields that were added or changed, in tracker field order.
+         * @param removed The fields that no longer have a value.
+         */
+        void onContextChanged(@NonNull String version, @Nullable String baseVersion, @NonNull Map<String, String> changed, @NonNull List<String> removed);
+    }
+
+    private final Set<String> eventFields;
+    private final String epoch = Long.toString(new Random().nextLong() & Long.MAX_VALUE, 36);
+    private volatile State state;
+
+    // Guarded by this
+    private long lastVersion;
+    private Map<String, String> values = Collections.emptyMap();
+
+    /**
+     * Default constructor.
+     *
+     * @param eventFields The tracker fields that are left out of the context.
+     */
+    TrackerContext(@NonNull Collection<String> eventFields) {
+        this.eventFields = new HashSet<>(eventFields);
+    }
+
+    /**
+     * Gets the context version of the snapshots, reporting a change first if their fields differ
+     * from the current version.
+     *
+     * @param fields The tracker field snapshot.
+     * @param expensive The expensive tracker field snapshot.
+     * @param listener The change listener.
+     * @return The context version name, cached so the unchanged case allocates nothing.
+     */
+    @NonNull
+    String getVersion(@NonNull TrackerFieldSnapshot fields, @NonNull TrackerFieldSnapshot expensive, @NonNull ChangeListener listener) {
+        State current = state;
+        if (current != null && current.fields == fields && current.expensive == expensive) {
+            return current.versionName;
+        }
+
+        synchronized (this) {
+            current = state;
+            if (current != null && current.fields == fields && current.expensive == expensive) {
+                return current.versionName;
+            }
+
+            Map<String, String> newValues = new HashMap<>(values.size() + 4);
+            Map<String, String> changed = new LinkedHashMap<>();
+            collect(fields, newValues, changed);
+            collect(expensive, newValues, changed);
+
+            List<String> removed = new ArrayList<>();
+            for (String key : values.keySet()) {
+                if (!newValues.containsKey(key)) {
+                    removed.add(key);
+                }
+            }
+
+            // A new snapshot with the same context values, e.g. after a screen change, keeps the version
+            String versionName = current == null ? null : current.versionName;
+            if (current == null || !changed.isEmpty() || !removed.isEmpty()) {
+                versionName = epoch + "-" + (++lastVersion);
+                listener.onContextChanged(versionName, current == null ? null : current.versionName, changed, removed);
+            }
+
+            values = newValues;
+            state = new State(fields, expensive, versionName);
+            return versionName;
+        }
+    }
+
+    /**
+     * Forgets the reported fields, so the next change holds every field again. The version keeps
+     * increasing.
+     */
+    synchronized void reset() {
+        state = null;
+        values = Collections.emptyMap();
+    }
+
+    private void collect(TrackerFieldSnapshot snapshot, Map<String, String> newValues, Map<String, String> changed) {
+        for (int i = 0; i < snapshot.size(); i++) {
+            String key = snapshot.getKey(i);
+            if (eventFields.contains(key)) {
+                continue;
+            }
+
+            String value = snapshot.getValue(i);
+            newValues.put(key, value);
+
+            if (state == null || !value.equals(values.get(key))) {
+                changed.put(key, value);
+            }
+        }
+    }
+
+    private static final class State {
+        final TrackerFieldSnapshot fields;
+        final TrackerFieldSnapshot expensive;
+        final String versionName;
+
+        State(TrackerFieldSnapshot fields, TrackerFieldSnapshot expensive, String versionName) {
+            this.fields = fields;
+            this.expensive = expensive;
+            this.versionName = versionName;
+        }
+    }
+}
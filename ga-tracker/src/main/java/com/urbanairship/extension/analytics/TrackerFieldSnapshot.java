@@ -0,0 +1,105 @@
+/*
+ Copyright 2016 Urban Airship and Contributors
+*/
+
+package com.urbanairship.extension.analytics;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.google.android.gms.analytics.Tracker;
+
+import java.util.List;
+
+/**
+ * Immutable snapshot of the non-null Tracker level fields at the time it was captured.
+ */
+final class TrackerFieldSnapshot {
+
+    /**
+     * Snapshot without any fields.
+     */
+    static final TrackerFieldSnapshot EMPTY = new TrackerFieldSnapshot(new String[0], new String[0], 0);
+
+    private final String[] keys;
+    private final String[] values;
+    private final int size;
+
+    private TrackerFieldSnapshot(String[] keys, String[] values, int size) {
+        this.keys = keys;
+        this.values = values;
+        this.size = size;
+    }
+
+    /**
+     * Captures the current values of the given fields, reading each field from the Tracker once.
+     *
+     * @param tracker The GA Tracker.
+     * @param fields The Tracker level fields to capture.
+     * @return The snapshot.
+     */
+    @NonNull
+    static TrackerFieldSnapshot capture(@NonNull Tracker tracker, @NonNull List<String> fields) {
+        String[] keys = new String[fields.size()];
+        String[] values = new String[fields.size()];
+        int size = 0;
+
+        for (String field : fields) {
+            String value = tracker.get(field);
+            if (value != null) {
+                keys[size] = field;
+                values[size] = value;
+                size++;
+            }
+        }
+
+        return new TrackerFieldSnapshot(keys, values, size);
+    }
+
+    /**
+     * Gets the number of captured fields.
+     *
+     * @return The number of fields with a value.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Gets the field key at the given index.
+     *
+     * @param index The index, between 0 and {@link #size()}.
+     * @return The field key.
+     */
+    @NonNull
+    String getKey(int index) {
+        return keys[index];
+    }
+
+    /**
+     * Gets the field value at the given index.
+     *
+     * @param index The index, between 0 and {@link #size()}.
+     * @return The field value.
+     */
+    @NonNull
+    String getValue(int index) {
+        return values[index];
+    }
+
+    /**
+     * Gets the captured value for a field.
+     *
+     * @param key The field key.
+     * @return The value, or <code>null</code> if the field had no value or was not captured.
+     */
+    @Nullable
+    String get(@NonNull String key) {
+        for (int i = 0; i < size; i++) {
+            if (keys[i].equals(key)) {
+                return values[i];
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ Copyright 2016 Urban Airship and Contributors
+*/
+
+package com.urbanairship.extension.analytics;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Lock-free metrics registry for {@link GoogleAnalyticsTracker}. Counters are striped and
+ * histograms are updated with atomic bucket increments, so recording never blocks a sending thread.
+ */
+class TrackerMetrics {
+
+    private static final String UNKNOWN_HIT_TYPE = "unknown";
+
+    private final ConcurrentMap<String, StripedCounter> googleAnalyticsHits = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, StripedCounter> urbanAirshipEvents = new ConcurrentHashMap<>();
+
+    // Keyed by identity, copied on write so recording only reads the current map
+    private volatile Map<GoogleAnalyticsTracker.Extender, LogHistogram> extenderLatencies = new IdentityHashMap<>();
+
+    private final LogHistogram googleAnalyticsLatency = new LogHistogram();
+    private final LogHistogram conversionLatency = new LogHistogram();
+    private final LogHistogram sinkLatency = new LogHistogram();
+    private final StripedCounter errors = new StripedCounter();
+
+    /**
+     * Records a hit sent to GA.
+     *
+     * @param hitType The hit type.
+     * @param nanos The time spent in the GA Tracker.
+     */
+    void recordGoogleAnalytics(@Nullable String hitType, long nanos) {
+        counter(googleAnalyticsHits, hitType).increment();
+        googleAnalyticsLatency.record(nanos);
+    }
+
+    /**
+     * Records a hit converted to a custom event.
+     *
+     * @param hitType The hit type.
+     * @param nanos The conversion time, including the extenders.
+     */
+    void recordConversion(@Nullable String hitType, long nanos) {
+        counter(urbanAirshipEvents, hitType).increment();
+        conversionLatency.record(nanos);
+    }
+
+    /**
+     * Records an extender call.
+     *
+     * @param extender The extender.
+     * @param nanos The time spent in the extender.
+     */
+    void recordExtender(@NonNull GoogleAnalyticsTracker.Extender extender, long nanos) {
+        LogHistogram histogram = extenderLatencies.get(extender);
+        if (histogram == null) {
+            histogram = addExtender(extender);
+        }
+
+        histogram.record(nanos);
+    }
+
+    /**
+     * Discards the latency histogram of an extender that was removed.
+     *
+     * @param extender The extender.
+     */
+    synchronized void removeExtender(@NonNull GoogleAnalyticsTracker.Extender extender) {
+        if (extenderLatencies.containsKey(extender)) {
+            Map<GoogleAnalyticsTracker.Extender, LogHistogram> latencies = new IdentityHashMap<>(extenderLatencies);
+            latencies.remove(extender);
+            extenderLatencies = latencies;
+        }
+    }
+
+    private synchronized LogHistogram addExtender(GoogleAnalyticsTracker.Extender extender) {
+        LogHistogram histogram = extenderLatencies.get(extender);
+        if (histogram == null) {
+            histogram = new LogHistogram();
+            Map<GoogleAnalyticsTracker.Extender, LogHistogram> latencies = new IdentityHashMap<>(extenderLatencies);
+            latencies.put(extender, histogram);
+            extenderLatencies = latencies;
+        }
+
+        return histogram;
+    }
+
+    /**
+     * Records a sink submission.
+     *
+     * @param nanos The time spent in the sink.
+     */
+    void recordSink(long nanos) {
+        sinkLatency.record(nanos);
+    }
+
+    /**
+     * Records a hit that failed to convert or dispatch.
+     */
+    void recordError() {
+        errors.increment();
+    }
+
+    /**
+     * Creates a snapshot of the metrics.
+     *
+     * @param droppedCount The number of hits dropped before conversion.
+     * @return The snapshot.
+     */
+    @NonNull
+    MetricsSnapshot snapshot(long droppedCount) {
+        Map<GoogleAnalyticsTracker.Extender, MetricsSnapshot.Latency> extenders = new IdentityHashMap<>();
+        for (Map.Entry<GoogleAnalyticsTracker.Extender, LogHistogram> entry : extenderLatencies.entrySet()) {
+            extenders.put(entry.getKey(), latency(entry.getValue()));
+        }
+
+        return new MetricsSnapshot(counts(googleAnalyticsHits), counts(urbanAirshipEvents),
+                latency(googleAnalyticsLatency), latency(conversionLatency), latency(sinkLatency),
+                extenders, errors.sum(), droppedCount);
+    }
+
+    private static StripedCounter counter(ConcurrentMap<String, StripedCounter> counters, @Nullable String hitType) {
+        String key = hitType == null ? UNKNOWN_HIT_TYPE : hitType;
+        StripedCounter counter = counters.get(key);
+        if (counter == null) {
+            counter = new StripedCounter();
+            StripedCounter existing = counters.putIfAbsent(key, counter);
+            if (existing != null) {
+                counter = existing;
+            }
+        }
+        return counter;
+    }
+
+    private static Map<String, Long> counts(Map<String, StripedCounter> counters) {
+        Map<String, Long> counts = new HashMap<>();
+        for (Map.Entry<String, StripedCounter> entry : counters.entrySet()) {
+            counts.put(entry.getKey(), entry.getValue().sum());
+        }
+        return counts;
+    }
+
+    private static MetricsSnapshot.Latency latency(LogHistogram histogram) {
+        long[] percentiles = histogram.getPercentiles(50, 90, 99, 100);
+        return new MetricsSnapshot.Latency(histogram.getCount(), percentiles[0], percentiles[1], percentiles[2], percentiles[3]);
+    }
+}
@@ -0,0 +1,29 @@
+/*
+ Copyright 2016 Urban Airship and Contributors
+*/
+
+package com.urbanairship.extension.analytics;
+
+import android.support.annotation.NonNull;
+
+import com.urbanairship.analytics.CustomEvent;
+
+import java.util.List;
+
+/**
+ * Default sink that tracks each custom event with Urban Airship analytics.
+ */
+public class TrackingEventSink implements CustomEventSink {
+
+    @Override
+    public void submit(@NonNull CustomEvent event) {
+        event.track();
+    }
+
+    @Override
+    public void submit(@NonNull List<CustomEvent> events) {
+        for (CustomEvent event : events) {
+            event.track();
+        }
+    }
+}
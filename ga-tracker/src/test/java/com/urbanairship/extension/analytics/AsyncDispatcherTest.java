@@ -0,0 +1,52 @@
+package com.urbanairship.extension.analytics;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AsyncDispatcherTest {
+
+    @Test
+    public void testBlockingEnqueueFromWorkerDoesNotDeadlock() throws Exception {
+        final CountDownLatch handled = new CountDownLatch(1);
+        final AtomicInteger batches = new AtomicInteger();
+        final boolean[] accepted = new boolean[2];
+        final AsyncDispatcher[] dispatcher = new AsyncDispatcher[1];
+
+        dispatcher[0] = new AsyncDispatcher(1, 1, OverflowPolicy.BLOCK, new AsyncDispatcher.BatchHandler() {
+            @Override
+            public void onBatch(List<AsyncDispatcher.QueuedHit> hits) {
+                // Like an extender sending from the worker, the second hit finds the queue full
+                if (batches.getAndIncrement() == 0) {
+                    accepted[0] = dispatcher[0].enqueue(hit());
+                    accepted[1] = dispatcher[0].enqueue(hit());
+                    handled.countDown();
+                }
+            }
+        });
+
+        assertTrue(dispatcher[0].enqueue(hit()));
+        assertTrue(handled.await(5, TimeUnit.SECONDS));
+        assertTrue(accepted[0]);
+        assertFalse(accepted[1]);
+
+        dispatcher[0].shutdown();
+        assertEquals(2, batches.get());
+        assertEquals(1, dispatcher[0].getDroppedCount());
+    }
+
+    private static AsyncDispatcher.QueuedHit hit() {
+        Map<String, String> hit = new HashMap<>();
+        hit.put(HitParameters.HIT_TYPE, HitParameters.HIT_TYPE_SCREENVIEW);
+        return new AsyncDispatcher.QueuedHit(hit, TrackerFieldSnapshot.EMPTY, TrackerFieldSnapshot.EMPTY);
+    }
+}
@@ -0,0 +1,71 @@
+package com.urbanairship.extension.analytics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class EcommerceItemsTest {
+
+    @Test
+    public void testMatch() {
+        assertTrue(EcommerceItems.match("&pr1nm") != 0);
+        assertTrue(EcommerceItems.match("&il1pi2id") != 0);
+        assertTrue(EcommerceItems.match("&promo12cr") != 0);
+
+        assertEquals(0, EcommerceItems.match("&pa"));
+        assertEquals(0, EcommerceItems.match("&pal"));
+        assertEquals(0, EcommerceItems.match("&promoa"));
+        assertEquals(0, EcommerceItems.match("&prnm"));
+        assertEquals(0, EcommerceItems.match("&cd1"));
+        assertEquals(0, EcommerceItems.match(""));
+    }
+
+    @Test
+    public void testGroupsItemsByIndex() {
+        EcommerceItems items = new EcommerceItems();
+        add(items, "&pr2id", "P2");
+        add(items, "&pr1nm", "One");
+        add(items, "&pr1id", "P1");
+        add(items, "&il1nm", "Search Results");
+        add(items, "&il1pi1id", "I1");
+        add(items, "&promo1id", "PROMO");
+
+        assertEquals(4, items.size());
+
+        PropertyBuffer properties = new PropertyBuffer(4);
+        items.addItem(0, properties, null, false);
+        assertEquals(2, properties.size());
+        assertEquals("&pr.id", properties.getKey(0));
+        assertEquals("P1", properties.getValue(0));
+        assertEquals("&pr.nm", properties.getKey(1));
+        assertEquals("One", properties.getValue(1));
+
+        properties.clear();
+        items.addItem(2, properties, null, false);
+        assertEquals("&il.nm", properties.getKey(0));
+        assertEquals("Search Results", properties.getValue(0));
+        assertEquals("&il.pi.id", properties.getKey(1));
+        assertEquals("I1", properties.getValue(1));
+
+        properties.clear();
+        items.addItem(3, properties, null, false);
+        assertEquals("&promo.id", properties.getKey(0));
+        assertEquals("PROMO", properties.getValue(0));
+    }
+
+    @Test
+    public void testRejectsMalformedParameters() {
+        EcommerceItems items = new EcommerceItems();
+        assertFalse(items.add(EcommerceItems.match("&pr1"), "&pr1", "value"));
+        assertFalse(items.add(EcommerceItems.match("&pr1234nm"), "&pr1234nm", "value"));
+        assertFalse(items.add(EcommerceItems.match("&il1xx"), "&il1xx", "value"));
+        assertFalse(items.add(EcommerceItems.match("&il1pi1"), "&il1pi1", "value"));
+        assertTrue(items.isEmpty());
+    }
+
+    private static void add(EcommerceItems items, String key, String value) {
+        assertTrue(items.add(EcommerceItems.match(key), key, value));
+    }
+}
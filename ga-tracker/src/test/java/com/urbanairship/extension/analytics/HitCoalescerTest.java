@@ -0,0 +1,132 @@
+package com.urbanairship.extension.analytics;
+
+import android.support.annotation.NonNull;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class HitCoalescerTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final List<Map<String, String>> forwarded = new ArrayList<>();
+    private final HitCoalescer.HitListener listener = new HitCoalescer.HitListener() {
+        @Override
+        public void onHit(@NonNull Map<String, String> hit) {
+            forwarded.add(hit);
+        }
+    };
+
+    @Test
+    public void testSuppressDuplicatesWithinWindow() {
+        HitCoalescer coalescer = new HitCoalescer(CoalescingPolicy.newBuilder()
+                .setWindow(1, TimeUnit.SECONDS)
+                .build(), listener);
+
+        assertFalse(coalescer.record(event("label"), TrackerFieldSnapshot.EMPTY, 0));
+        assertTrue(coalescer.record(event("label"), TrackerFieldSnapshot.EMPTY, SECOND / 2));
+        assertFalse(coalescer.record(event("other"), TrackerFieldSnapshot.EMPTY, SECOND / 2));
+
+        // The window starts with the first hit, so a steady stream of duplicates is forwarded once per window
+        assertTrue(coalescer.record(event("label"), TrackerFieldSnapshot.EMPTY, SECOND - 1));
+        assertFalse(coalescer.record(event("label"), TrackerFieldSnapshot.EMPTY, SECOND));
+
+        assertEquals(2, coalescer.getCoalescedCount());
+        assertTrue(forwarded.isEmpty());
+    }
+
+    @Test
+    public void testKeyFields() {
+        HitCoalescer coalescer = new HitCoalescer(CoalescingPolicy.newBuilder()
+                .setKeyFields(HitParameters.HIT_TYPE, HitParameters.EVENT_CATEGORY, HitParameters.EVENT_ACTION)
+                .build(), listener);
+
+        assertFalse(coalescer.record(event("label"), TrackerFieldSnapshot.EMPTY, 0));
+        assertTrue(coalescer.record(event("other"), TrackerFieldSnapshot.EMPTY, 1));
+
+        Map<String, String> event = event("label");
+        event.put(HitParameters.EVENT_ACTION, "other");
+        assertFalse(coalescer.record(event, TrackerFieldSnapshot.EMPTY, 2));
+    }
+
+    @Test
+    public void testMergeForwardsOnceWithRepeatCount() {
+        HitCoalescer coalescer = new HitCoalescer(CoalescingPolicy.newBuilder()
+                .setWindow(1, TimeUnit.SECONDS)
+                .setMode(CoalescingMode.MERGE)
+                .build(), listener);
+
+        Map<String, String> event = event("label");
+        assertTrue(coalescer.record(event, TrackerFieldSnapshot.EMPTY, 0));
+
+        // The held hit is a copy, the caller may reuse the map
+        event.put(HitParameters.EVENT_LABEL, "reused");
+        assertTrue(coalescer.record(event("label"), TrackerFieldSnapshot.EMPTY, 1));
+        assertTrue(coalescer.record(event("label"), TrackerFieldSnapshot.EMPTY, 2));
+        assertTrue(coalescer.record(screenView("Home"), TrackerFieldSnapshot.EMPTY, 3));
+
+        coalescer.expire(SECOND / 2);
+        assertTrue(forwarded.isEmpty());
+
+        coalescer.expire(SECOND + 3);
+        assertEquals(2, forwarded.size());
+        assertEquals("label", forwarded.get(0).get(HitParameters.EVENT_LABEL));
+        assertEquals("3", forwarded.get(0).get(GoogleAnalyticsTracker.REPEAT_COUNT_PROPERTY));
+        assertEquals("Home", forwarded.get(1).get(HitParameters.SCREEN_NAME));
+        assertNull(forwarded.get(1).get(GoogleAnalyticsTracker.REPEAT_COUNT_PROPERTY));
+        assertEquals(2, coalescer.getCoalescedCount());
+
+        // Flushing forwards the held hits at once, and later duplicates start a new window
+        assertTrue(coalescer.record(event("label"), TrackerFieldSnapshot.EMPTY, 2 * SECOND));
+        coalescer.flush();
+        assertEquals(3, forwarded.size());
+        assertTrue(coalescer.record(event("label"), TrackerFieldSnapshot.EMPTY, 2 * SECOND + 1));
+        coalescer.shutdown();
+        assertEquals(4, forwarded.size());
+
+        assertFalse(coalescer.record(event("label"), TrackerFieldSnapshot.EMPTY, 2 * SECOND + 2));
+    }
+
+    @Test
+    public void testFullTableForgetsOldestHit() {
+        HitCoalescer coalescer = new HitCoalescer(CoalescingPolicy.newBuilder()
+                .setCapacity(1)
+                .setMode(CoalescingMode.MERGE)
+                .build(), listener);
+
+        assertTrue(coalescer.record(screenView("Home"), TrackerFieldSnapshot.EMPTY, 0));
+        assertTrue(coalescer.record(screenView("Home"), TrackerFieldSnapshot.EMPTY, 1));
+        assertTrue(coalescer.record(screenView("Cart"), TrackerFieldSnapshot.EMPTY, 2));
+
+        assertEquals(1, forwarded.size());
+        assertEquals("Home", forwarded.get(0).get(HitParameters.SCREEN_NAME));
+        assertEquals("2", forwarded.get(0).get(GoogleAnalyticsTracker.REPEAT_COUNT_PROPERTY));
+        coalescer.shutdown();
+    }
+
+    private static Map<String, String> event(String label) {
+        Map<String, String> hit = new HashMap<>();
+        hit.put(HitParameters.HIT_TYPE, HitParameters.HIT_TYPE_EVENT);
+        hit.put(HitParameters.EVENT_CATEGORY, "category");
+        hit.put(HitParameters.EVENT_ACTION, "action");
+        hit.put(HitParameters.EVENT_LABEL, label);
+        return hit;
+    }
+
+    private static Map<String, String> screenView(String screenName) {
+        Map<String, String> hit = new HashMap<>();
+        hit.put(HitParameters.HIT_TYPE, HitParameters.HIT_TYPE_SCREENVIEW);
+        hit.put(HitParameters.SCREEN_NAME, screenName);
+        return hit;
+    }
+}
@@ -0,0 +1,75 @@
+package com.urbanairship.extension.analytics;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class HitFilterTest {
+
+    @Test
+    public void testFirstMatchingRuleDecides() {
+        HitFilter filter = HitFilter.newBuilder()
+                .allow(HitFilter.rule("debug-crash").hitType("event").equalTo("&ec", "debug_crash"))
+                .drop(HitFilter.rule("debug").hitType("event").prefix("&ec", "debug_"))
+                .drop(HitFilter.rule("no-type").absent("&t"))
+                .build();
+
+        assertTrue(filter.allow(event("debug_crash"), TrackerFieldSnapshot.EMPTY));
+        assertFalse(filter.allow(event("debug_scroll"), TrackerFieldSnapshot.EMPTY));
+        assertFalse(filter.allow(event("debug_tap"), TrackerFieldSnapshot.EMPTY));
+        assertTrue(filter.allow(event("checkout"), TrackerFieldSnapshot.EMPTY));
+        assertFalse(filter.allow(new HashMap<String, String>(), TrackerFieldSnapshot.EMPTY));
+
+        Map<String, Long> counts = filter.getMatchCounts();
+        assertEquals(Long.valueOf(1), counts.get("debug-crash"));
+        assertEquals(Long.valueOf(2), counts.get("debug"));
+        assertEquals(Long.valueOf(1), counts.get("no-type"));
+        assertEquals(3, filter.getDroppedCount());
+    }
+
+    @Test
+    public void testRulesWithoutHitTypeApplyToEveryHitType() {
+        HitFilter filter = HitFilter.newBuilder()
+                .drop(HitFilter.rule("timing").hitType("timing"))
+                .drop(HitFilter.rule("internal").present("&cd5"))
+                .build();
+
+        Map<String, String> screenView = new HashMap<>();
+        screenView.put("&t", "screenview");
+        assertTrue(filter.allow(screenView, TrackerFieldSnapshot.EMPTY));
+
+        screenView.put("&cd5", "internal");
+        assertFalse(filter.allow(screenView, TrackerFieldSnapshot.EMPTY));
+
+        Map<String, String> event = event("category");
+        event.put("&cd5", "internal");
+        assertFalse(filter.allow(event, TrackerFieldSnapshot.EMPTY));
+
+        Map<String, String> timing = new HashMap<>();
+        timing.put("&t", "timing");
+        assertFalse(filter.allow(timing, TrackerFieldSnapshot.EMPTY));
+
+        assertEquals(Long.valueOf(1), filter.getMatchCounts().get("timing"));
+        assertEquals(Long.valueOf(2), filter.getMatchCounts().get("internal"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDuplicateRuleNames() {
+        HitFilter.newBuilder()
+                .drop(HitFilter.rule("debug").prefix("&ec", "debug_"))
+                .drop(HitFilter.rule("debug").prefix("&ea", "debug_"));
+    }
+
+    private static Map<String, String> event(String category) {
+        Map<String, String> hit = new HashMap<>();
+        hit.put("&t", "event");
+        hit.put("&ec", category);
+        hit.put("&ea", "action");
+        return hit;
+    }
+}
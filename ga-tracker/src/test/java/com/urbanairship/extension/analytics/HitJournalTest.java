@@ -0,0 +1,186 @@
+package com.urbanairship.extension.analytics;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class HitJournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File directory;
+    private final List<Map<String, String>> replayed = new ArrayList<>();
+    private final HitJournal.HitHandler handler = new HitJournal.HitHandler() {
+        @Override
+        public void onHit(Map<String, String> hit) {
+            replayed.add(hit);
+        }
+    };
+
+    @Before
+    public void setup() {
+        directory = new File(folder.getRoot(), "journal");
+    }
+
+    @Test
+    public void testAppendAndDrainInOrder() throws Exception {
+        HitJournal journal = new HitJournal(directory, 128);
+        for (int i = 0; i < 20; i++) {
+            assertTrue(journal.appendIfPending(hit(i)));
+        }
+
+        // Small segments force several rotations
+        assertTrue(directory.listFiles().length > 1);
+
+        journal.drain(handler);
+        assertEquals(20, replayed.size());
+        for (int i = 0; i < 20; i++) {
+            assertEquals(hit(i), replayed.get(i));
+        }
+
+        assertFalse(journal.isPending());
+        assertFalse(journal.appendIfPending(hit(21)));
+        assertEquals(0, directory.listFiles().length);
+    }
+
+    @Test
+    public void testReplaysSegmentsFromPreviousProcess() throws Exception {
+        HitJournal journal = new HitJournal(directory, 4096);
+        journal.appendIfPending(hit(1));
+        journal.appendIfPending(hit(2));
+
+        HitJournal reopened = new HitJournal(directory, 4096);
+        reopened.appendIfPending(hit(3));
+        reopened.drain(handler);
+
+        assertEquals(3, replayed.size());
+        assertEquals(hit(1), replayed.get(0));
+        assertEquals(hit(3), replayed.get(2));
+    }
+
+    @Test
+    public void testStopsAtCorruptRecord() throws Exception {
+        HitJournal journal = new HitJournal(directory, 4096);
+        journal.appendIfPending(hit(1));
+        journal.appendIfPending(hit(2));
+
+        // Flip a byte in the second record's payload
+        File segment = directory.listFiles()[0];
+        RandomAccessFile file = new RandomAccessFile(segment, "rw");
+        int firstLength = file.readInt();
+        long secondPayload = 8 + firstLength + 8;
+        file.seek(secondPayload + 12);
+        int value = file.read();
+        file.seek(secondPayload + 12);
+        file.write(value ^ 0xFF);
+        file.close();
+
+        new HitJournal(directory, 4096).drain(handler);
+        assertEquals(1, replayed.size());
+        assertEquals(hit(1), replayed.get(0));
+    }
+
+    @Test
+    public void testQuarantinesSegmentWithCorruptRecord() throws Exception {
+        HitJournal journal = new HitJournal(directory, 4096);
+        journal.appendIfPending(hit(1));
+        journal.appendIfPending(hit(2));
+        journal.appendIfPending(hit(3));
+
+        // Flip a byte in the second record's payload, the third record is still replayed
+        File segment = directory.listFiles()[0];
+        RandomAccessFile file = new RandomAccessFile(segment, "rw");
+        int firstLength = file.readInt();
+        long secondPayload = 8 + firstLength + 8;
+        file.seek(secondPayload + 12);
+        int value = file.read();
+        file.seek(secondPayload + 12);
+        file.write(value ^ 0xFF);
+        file.close();
+
+        HitJournal reopened = new HitJournal(directory, 4096);
+        reopened.drain(handler);
+        assertEquals(2, replayed.size());
+        assertEquals(hit(1), replayed.get(0));
+        assertEquals(hit(3), replayed.get(1));
+
+        assertFalse(segment.exists());
+        assertTrue(new File(directory, segment.getName() + HitJournal.QUARANTINE_SUFFIX).exists());
+
+        // Quarantined segments are not replayed again
+        replayed.clear();
+        new HitJournal(directory, 4096).drain(handler);
+        assertTrue(replayed.isEmpty());
+    }
+
+    @Test
+    public void testKeepsSegmentUntilHitsAreHandled() throws Exception {
+        HitJournal journal = new HitJournal(directory, 4096);
+        journal.appendIfPending(hit(1));
+
+        final File[] segments = new File[1];
+        journal.drain(new HitJournal.HitHandler() {
+            @Override
+            public void onHit(Map<String, String> hit) {
+                segments[0] = directory.listFiles()[0];
+                replayed.add(hit);
+            }
+        });
+
+        // The segment still existed while its hit was handled
+        assertEquals(1, replayed.size());
+        assertTrue(segments[0] != null);
+        assertEquals(0, directory.listFiles().length);
+    }
+
+    @Test
+    public void testKeepsSegmentWhenHandlerFails() throws Exception {
+        HitJournal journal = new HitJournal(directory, 4096);
+        for (int i = 0; i < 3; i++) {
+            journal.appendIfPending(hit(i));
+        }
+
+        journal.drain(new HitJournal.HitHandler() {
+            @Override
+            public void onHit(Map<String, String> hit) {
+                if (hit.equals(hit(1))) {
+                    throw new IllegalStateException("sink unavailable");
+                }
+                replayed.add(hit);
+            }
+        });
+
+        // The replay stopped at the failed hit and the journal stopped being pending
+        assertEquals(1, replayed.size());
+        assertFalse(journal.isPending());
+        assertEquals(1, directory.listFiles().length);
+
+        // The next process replays the whole segment
+        replayed.clear();
+        new HitJournal(directory, 4096).drain(handler);
+        assertEquals(3, replayed.size());
+        assertEquals(hit(2), replayed.get(2));
+        assertEquals(0, directory.listFiles().length);
+    }
+
+    private static Map<String, String> hit(int index) {
+        Map<String, String> hit = new HashMap<>();
+        hit.put("&t", "event");
+        hit.put("&ec", "category");
+        hit.put("&ev", Integer.toString(index));
+        return hit;
+    }
+}
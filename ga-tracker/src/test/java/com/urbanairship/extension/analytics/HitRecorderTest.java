@@ -0,0 +1,124 @@
+package com.urbanairship.extension.analytics;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HitRecorderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testRecordAndRead() throws Exception {
+        File file = folder.newFile("hits.rec");
+        HitRecorder recorder = new HitRecorder(file);
+        for (int i = 0; i < 100; i++) {
+            recorder.record(hit(i));
+        }
+        recorder.close();
+
+        assertEquals(100, recorder.getHitCount());
+
+        List<HitRecorder.RecordedHit> hits = HitRecorder.read(file);
+        assertEquals(100, hits.size());
+
+        long previous = 0;
+        for (int i = 0; i < 100; i++) {
+            assertEquals(hit(i), hits.get(i).hit);
+            assertTrue(hits.get(i).timeMicros >= previous);
+            previous = hits.get(i).timeMicros;
+        }
+        assertEquals(0, hits.get(0).timeMicros);
+
+        // Repeated keys and values are written once, so a hit costs far less than its text
+        assertTrue(file.length() < 100 * 40);
+    }
+
+    @Test
+    public void testLongAndNonAsciiValues() throws Exception {
+        StringBuilder longValue = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            longValue.append("\u00e9");
+        }
+
+        Map<String, String> hit = new HashMap<>();
+        hit.put("&t", "event");
+        hit.put("&el", longValue.toString());
+        hit.put("&ec", "caf\u00e9 \ud83d\ude00");
+
+        File file = folder.newFile("hits.rec");
+        HitRecorder recorder = new HitRecorder(file);
+        recorder.record(hit);
+        recorder.record(hit);
+        recorder.close();
+
+        List<HitRecorder.RecordedHit> hits = HitRecorder.read(file);
+        assertEquals(2, hits.size());
+        assertEquals(hit, hits.get(0).hit);
+        assertEquals(hit, hits.get(1).hit);
+    }
+
+    @Test
+    public void testRecordedHitsAreOnDiskBeforeClose() throws Exception {
+        File file = folder.newFile("hits.rec");
+        HitRecorder recorder = new HitRecorder(file);
+        for (int i = 0; i < 3; i++) {
+            recorder.record(hit(i));
+        }
+
+        // A process killed now leaves every recorded hit in the file
+        List<HitRecorder.RecordedHit> hits = HitRecorder.read(file);
+        assertEquals(3, hits.size());
+        assertEquals(hit(2), hits.get(2).hit);
+
+        recorder.close();
+    }
+
+    @Test
+    public void testReadsUpToTruncatedRecord() throws Exception {
+        File file = folder.newFile("hits.rec");
+        HitRecorder recorder = new HitRecorder(file);
+        for (int i = 0; i < 10; i++) {
+            recorder.record(hit(i));
+        }
+        recorder.close();
+
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        randomAccessFile.setLength(file.length() - 3);
+        randomAccessFile.close();
+
+        List<HitRecorder.RecordedHit> hits = HitRecorder.read(file);
+        assertEquals(9, hits.size());
+        assertEquals(hit(8), hits.get(8).hit);
+    }
+
+    @Test(expected = IOException.class)
+    public void testRejectsOtherFiles() throws Exception {
+        File file = folder.newFile("other.rec");
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        randomAccessFile.writeUTF("not a recording");
+        randomAccessFile.close();
+
+        HitRecorder.read(file);
+    }
+
+    private static Map<String, String> hit(int index) {
+        Map<String, String> hit = new HashMap<>();
+        hit.put("&t", index % 2 == 0 ? "event" : "screenview");
+        hit.put("&ec", "category");
+        hit.put("&ea", "action" + (index % 5));
+        hit.put("&el", "label" + index);
+        return hit;
+    }
+}
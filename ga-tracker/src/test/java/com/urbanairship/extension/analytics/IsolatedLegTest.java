@@ -0,0 +1,155 @@
+package com.urbanairship.extension.analytics;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class IsolatedLegTest {
+
+    @Test
+    public void testCircuitOpensAndProbes() throws Exception {
+        IsolatedLeg leg = new IsolatedLeg("test", IsolationPolicy.newBuilder()
+                .setFailureThreshold(2)
+                .setOpenDuration(100, TimeUnit.MILLISECONDS)
+                .build());
+
+        Runnable failing = new Runnable() {
+            @Override
+            public void run() {
+                throw new IllegalStateException("failed");
+            }
+        };
+
+        assertTrue(leg.submit(failing));
+        assertTrue(leg.submit(failing));
+        leg.flush();
+        assertEquals(CircuitBreaker.State.OPEN, leg.getState());
+
+        final AtomicInteger calls = new AtomicInteger();
+        Runnable succeeding = new Runnable() {
+            @Override
+            public void run() {
+                calls.incrementAndGet();
+            }
+        };
+
+        assertFalse(leg.submit(succeeding));
+        assertEquals(1, leg.getDroppedCount());
+
+        Thread.sleep(150);
+        assertTrue(leg.submit(succeeding));
+        leg.flush();
+        assertEquals(1, calls.get());
+        assertEquals(CircuitBreaker.State.CLOSED, leg.getState());
+
+        leg.shutdown();
+    }
+
+    @Test
+    public void testStalledCallIsAbandoned() throws Exception {
+        IsolatedLeg leg = new IsolatedLeg("test", IsolationPolicy.newBuilder()
+                .setTimeout(50, TimeUnit.MILLISECONDS)
+                .build());
+
+        final CountDownLatch stalled = new CountDownLatch(1);
+        leg.submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    stalled.await();
+                } catch (InterruptedException e) {
+                    // Abandoned
+                }
+            }
+        });
+
+        final CountDownLatch ran = new CountDownLatch(1);
+        leg.submit(new Runnable() {
+            @Override
+            public void run() {
+                ran.countDown();
+            }
+        });
+
+        // The queued call moves to a new worker once the stalled call is detected
+        leg.flush();
+        assertTrue(ran.await(1, TimeUnit.SECONDS));
+        assertEquals(1, leg.getTimeoutCount());
+
+        leg.shutdown();
+        assertFalse(leg.submit(new Runnable() {
+            @Override
+            public void run() {}
+        }));
+    }
+
+    @Test
+    public void testLimitsAbandonedWorkers() throws Exception {
+        IsolatedLeg leg = new IsolatedLeg("capped", IsolationPolicy.newBuilder()
+                .setTimeout(50, TimeUnit.MILLISECONDS)
+                .setFailureThreshold(100)
+                .setMaxAbandonedWorkers(1)
+                .build());
+
+        // Waiting for a monitor ignores the interrupt, so the workers stay stuck
+        final Object lock = new Object();
+        Runnable blocking = new Runnable() {
+            @Override
+            public void run() {
+                synchronized (lock) {
+                    lock.hashCode();
+                }
+            }
+        };
+
+        final AtomicInteger calls = new AtomicInteger();
+        Runnable counting = new Runnable() {
+            @Override
+            public void run() {
+                calls.incrementAndGet();
+            }
+        };
+
+        synchronized (lock) {
+            assertTrue(leg.submit(blocking));
+            Thread.sleep(100);
+
+            // The first stalled worker is abandoned, the second one is kept
+            assertTrue(leg.submit(blocking));
+            Thread.sleep(100);
+            assertFalse(leg.submit(counting));
+            assertFalse(leg.submit(counting));
+            assertEquals(2, countThreads("GoogleAnalyticsTracker-capped"));
+            assertEquals(2, leg.getDroppedCount());
+
+            // Flush gives up on the stalled worker instead of waiting for it
+            leg.flush();
+        }
+
+        for (int i = 0; i < 100 && countThreads("GoogleAnalyticsTracker-capped") > 1; i++) {
+            Thread.sleep(10);
+        }
+
+        assertTrue(leg.submit(counting));
+        leg.flush();
+        assertEquals(1, calls.get());
+        assertEquals(2, leg.getTimeoutCount());
+        leg.shutdown();
+    }
+
+    private static int countThreads(String name) {
+        int count = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().equals(name) && thread.isAlive()) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
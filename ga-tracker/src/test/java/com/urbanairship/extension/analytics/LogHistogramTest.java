@@ -0,0 +1,50 @@
+package com.urbanairship.extension.analytics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LogHistogramTest {
+
+    @Test
+    public void testExactSmallValues() {
+        LogHistogram histogram = new LogHistogram();
+        for (int i = 0; i < 10; i++) {
+            histogram.record(i);
+        }
+
+        assertEquals(10, histogram.getCount());
+        assertEquals(4, histogram.getPercentile(50));
+        assertEquals(9, histogram.getPercentile(100));
+    }
+
+    @Test
+    public void testPercentileRelativeError() {
+        LogHistogram histogram = new LogHistogram();
+        for (int i = 1; i <= 10000; i++) {
+            histogram.record(i);
+        }
+
+        assertWithinError(5000, histogram.getPercentile(50));
+        assertWithinError(9000, histogram.getPercentile(90));
+        assertWithinError(9900, histogram.getPercentile(99));
+    }
+
+    @Test
+    public void testClampsLargeAndNegativeValues() {
+        LogHistogram histogram = new LogHistogram();
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+
+        assertEquals(0, histogram.getPercentile(50));
+        assertEquals(LogHistogram.bucketMidpoint(LogHistogram.BUCKET_COUNT - 1), histogram.getPercentile(100));
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+    }
+
+    private static void assertWithinError(long expected, long actual) {
+        assertTrue("Expected about " + expected + " but was " + actual, Math.abs(expected - actual) <= expected * 0.07);
+    }
+}
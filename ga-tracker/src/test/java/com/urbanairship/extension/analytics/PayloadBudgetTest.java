@@ -0,0 +1,104 @@
+package com.urbanairship.extension.analytics;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class PayloadBudgetTest {
+
+    @Test
+    public void testShedsLowestPriorityFirst() {
+        PayloadBudget budget = PayloadBudget.newBuilder()
+                .setMaxProperties(3)
+                .setPriority(PayloadBudget.PRIORITY_HIGH, "&ec")
+                .build();
+
+        PropertyBuffer properties = new PropertyBuffer(8);
+        properties.add("&an", "appName");
+        properties.add("&t", "event");
+        properties.add("&ec", "category");
+        properties.add("&ea", "action");
+        properties.add("&el", "label");
+
+        budget.enforce(properties);
+
+        assertEquals(3, properties.size());
+        assertEquals("&t", properties.getKey(0));
+        assertEquals("&ec", properties.getKey(1));
+        assertEquals("&ea", properties.getKey(2));
+        assertEquals(1, budget.getShedEventCount());
+        assertEquals(2, budget.getShedPropertyCount());
+    }
+
+    @Test
+    public void testTotalBytes() {
+        PayloadBudget budget = PayloadBudget.newBuilder()
+                .setMaxTotalBytes(10)
+                .build();
+
+        PropertyBuffer properties = new PropertyBuffer(8);
+        properties.add("&t", "event");
+        properties.add("&ea", "action");
+
+        budget.enforce(properties);
+
+        assertEquals(1, properties.size());
+        assertEquals("&t", properties.getKey(0));
+    }
+
+    @Test
+    public void testTruncatesValues() {
+        PayloadBudget budget = PayloadBudget.newBuilder()
+                .setMaxValueBytes(4)
+                .build();
+
+        PropertyBuffer properties = new PropertyBuffer(8);
+        properties.add("&el", "labels");
+        properties.add("&ea", "a\u00e9\u00e9");
+
+        budget.enforce(properties);
+
+        assertEquals("labe", properties.getValue(0));
+        assertEquals("a\u00e9", properties.getValue(1));
+        assertEquals(2, budget.getTruncatedValueCount());
+        assertEquals(0, budget.getShedEventCount());
+    }
+
+    @Test
+    public void testCountsListProperties() {
+        PayloadBudget budget = PayloadBudget.newBuilder()
+                .setMaxProperties(2)
+                .setMaxValueBytes(3)
+                .setPriority(PayloadBudget.PRIORITY_LOW, "&pr.nm")
+                .build();
+
+        PropertyBuffer properties = new PropertyBuffer(8);
+        properties.add("&t", "event");
+        properties.add("&ea", "action");
+
+        List<PayloadBudget.ListProperty> lists = new ArrayList<>();
+        lists.add(new PayloadBudget.ListProperty("&pr.id", Arrays.asList("p1", "p2")));
+        lists.add(new PayloadBudget.ListProperty("&pr.nm", Arrays.asList("shirt", "hat")));
+
+        budget.enforce(properties, lists);
+
+        // The low priority list goes first, then the normal priority list added last
+        assertEquals(2, properties.size());
+        assertEquals(0, lists.size());
+        assertEquals(2, budget.getShedPropertyCount());
+        assertEquals(3, budget.getTruncatedValueCount());
+    }
+
+    @Test
+    public void testUtf8Length() {
+        assertEquals(5, PayloadBudget.utf8Length("event"));
+        assertEquals(2, PayloadBudget.utf8Length("\u00e9"));
+        assertEquals(3, PayloadBudget.utf8Length("\u20ac"));
+        assertEquals(4, PayloadBudget.utf8Length("\ud83d\ude00"));
+        assertEquals("", PayloadBudget.truncate("\ud83d\ude00", 3));
+    }
+}
@@ -0,0 +1,56 @@
+package com.urbanairship.extension.analytics;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PropertyBufferTest {
+
+    @Test
+    public void testAcquireReusesThreadBuffer() throws Exception {
+        PropertyBuffer buffer = PropertyBuffer.acquire();
+        buffer.add(HitParameters.HIT_TYPE, "screenview");
+
+        // The same buffer comes back cleared
+        assertTrue(buffer == PropertyBuffer.acquire());
+        assertEquals(0, buffer.size());
+
+        final AtomicReference<PropertyBuffer> other = new AtomicReference<>();
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                other.set(PropertyBuffer.acquire());
+            }
+        });
+        thread.start();
+        thread.join();
+        assertTrue(other.get() != buffer);
+    }
+
+    @Test
+    public void testDoesNotGrowOnceSized() {
+        PropertyBuffer buffer = new PropertyBuffer(4);
+        for (int round = 0; round < 100; round++) {
+            for (int i = 0; i < 10; i++) {
+                buffer.add(HitParameters.EVENT_CATEGORY, "category");
+            }
+
+            // The arrays grow once for the largest hit and are reused after that
+            assertEquals(16, buffer.capacity());
+            buffer.clear();
+        }
+    }
+
+    @Test
+    public void testKeepsKeyInstances() {
+        PropertyBuffer buffer = new PropertyBuffer(4);
+        buffer.add(HitParameters.HIT_TYPE, "event");
+        buffer.add(HitParameters.canonical(new String("&ec")), "category");
+
+        assertTrue(buffer.getKey(0) == HitParameters.HIT_TYPE);
+        assertTrue(buffer.getKey(1) == HitParameters.EVENT_CATEGORY);
+    }
+}
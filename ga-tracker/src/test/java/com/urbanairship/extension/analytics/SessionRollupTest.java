@@ -0,0 +1,63 @@
+package com.urbanairship.extension.analytics;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SessionRollupTest {
+
+    private final List<Map<String, String>> summaries = new ArrayList<>();
+    private final SessionRollup.SummaryListener listener = new SessionRollup.SummaryListener() {
+        @Override
+        public void onSummary(Map<String, String> summary) {
+            summaries.add(summary);
+        }
+    };
+
+    @Test
+    public void testTimeoutChangeAppliesToCurrentSession() {
+        SessionRollup rollup = new SessionRollup(30, TimeUnit.MINUTES, 4, 4, listener);
+        rollup.record(screenView(), "Home", 0);
+
+        rollup.expire(TimeUnit.MINUTES.toMillis(5));
+        assertTrue(summaries.isEmpty());
+
+        // A shorter timeout, e.g. from setSessionTimeout, ends the idle session
+        rollup.setTimeout(60, TimeUnit.SECONDS);
+        rollup.expire(TimeUnit.MINUTES.toMillis(5));
+        assertEquals(1, summaries.size());
+        assertEquals("1", summaries.get(0).get("hit_count"));
+
+        rollup.shutdown();
+    }
+
+    @Test
+    public void testNonPositiveTimeoutOnlyEndsExplicitly() {
+        SessionRollup rollup = new SessionRollup(1, TimeUnit.MINUTES, 4, 4, listener);
+        rollup.setTimeout(-1, TimeUnit.SECONDS);
+
+        rollup.record(screenView(), "Home", 0);
+        rollup.record(screenView(), "Cart", TimeUnit.HOURS.toMillis(2));
+        rollup.expire(TimeUnit.HOURS.toMillis(4));
+        assertTrue(summaries.isEmpty());
+
+        rollup.endSession();
+        assertEquals(1, summaries.size());
+        assertEquals("2", summaries.get(0).get("hit_count"));
+
+        rollup.shutdown();
+    }
+
+    private static Map<String, String> screenView() {
+        Map<String, String> hit = new HashMap<>();
+        hit.put(HitParameters.HIT_TYPE, HitParameters.HIT_TYPE_SCREENVIEW);
+        return hit;
+    }
+}
@@ -2,6 +2,7 @@ package com.urbanairship.extension.analytics;
 
 import com.google.android.gms.analytics.GoogleAnalytics;
 import com.google.android.gms.analytics.HitBuilders;
+import com.google.android.gms.analytics.Tracker;
 import com.urbanairship.UAirship;
 import com.urbanairship.UrbanAirshipUtils;
 import com.urbanairship.analytics.Analytics;
@@ -21,13 +22,25 @@ import org.robolectric.RobolectricGradleTestRunner;
 import org.robolectric.RuntimeEnvironment;
 import org.robolectric.annotation.Config;
 
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 
@@ -200,6 +213,1083 @@ public class TrackerTest {
         tracker.send(event);
     }
 
+    @Test
+    public void testPayloadBudgetCoversExtenderProperties() throws Exception {
+        InMemoryEventSink sink = new InMemoryEventSink();
+        PayloadBudget budget = PayloadBudget.newBuilder()
+                .setMaxProperties(4)
+                .setMaxValueBytes(8)
+                .setPriority(PayloadBudget.PRIORITY_HIGH, "extended")
+                .build();
+
+        tracker.setCustomEventSink(sink).setPayloadBudget(budget);
+        tracker.addExtender(new GoogleAnalyticsTracker.Extender() {
+            @Override
+            public void extend(CustomEvent.Builder builder, Map<String, String> json, GoogleAnalyticsTracker tracker) {
+                builder.addProperty("extended", "a value longer than the limit");
+                builder.addProperty("items", Arrays.asList("first", "second"));
+            }
+        });
+
+        tracker.send(new HitBuilders.EventBuilder().setCategory("category").setAction("action").build());
+
+        CustomEvent event = sink.getEvents().get(0);
+        assertEquals(4, EventTestUtils.getEventData(event).get("properties").optMap().size());
+        EventTestUtils.validateNestedEventValue(event, "properties", "extended", "\"a value \"");
+        assertTrue(budget.getShedPropertyCount() > 0);
+    }
+
+    @Test
+    public void testPropertyProjection() {
+        doAnswer(new Answer() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                CustomEvent customEvent = (CustomEvent) invocation.getArguments()[0];
+                EventTestUtils.validateNestedEventValue(customEvent, "properties", "category", "\"category\"");
+                EventTestUtils.validateNestedEventValue(customEvent, "properties", "action", "\"ACTION\"");
+                EventTestUtils.validateNestedEventValue(customEvent, "properties", "&tid", "\"trackingId\"");
+                assertTrue(EventTestUtils.getEventData(customEvent).get("properties").optMap().opt("&ec").getString() == null);
+                assertTrue(EventTestUtils.getEventData(customEvent).get("properties").optMap().opt("&el").getString() == null);
+                assertTrue(EventTestUtils.getEventData(customEvent).get("properties").optMap().opt("&an").getString() == null);
+                return null;
+            }
+        }).when(analytics).addEvent(any(Event.class));
+
+        tracker.setPropertyProjection(PropertyProjection.newBuilder()
+                .include("&ec", "&ea", "&el", "&tid")
+                .exclude("&el")
+                .rename("&ec", "category")
+                .rename("&ea", "action")
+                .transform("&ea", new PropertyProjection.ValueTransform() {
+                    @Override
+                    public String transform(String key, String value) {
+                        return value.toUpperCase();
+                    }
+                })
+                .build());
+
+        Map<String, String> event = new HitBuilders.EventBuilder()
+                .setLabel("label")
+                .setCategory("category")
+                .setAction("action")
+                .build();
+        tracker.send(event);
+        verify(analytics).addEvent(any(Event.class));
+    }
+
+    @Test
+    public void testForwardingLimits() {
+        tracker.setForwardingLimits(ForwardingLimits.newBuilder()
+                .setSampleRate("timing", 50)
+                .setRateLimit("event", "scroll", 2, 1, TimeUnit.HOURS)
+                .build());
+
+        for (int i = 0; i < 10; i++) {
+            tracker.send(new HitBuilders.TimingBuilder().setCategory("category").setValue(i).build());
+        }
+        verify(analytics, times(5)).addEvent(any(Event.class));
+
+        for (int i = 0; i < 5; i++) {
+            tracker.send(new HitBuilders.EventBuilder().setCategory("scroll").setAction("action").build());
+        }
+        verify(analytics, times(7)).addEvent(any(Event.class));
+
+        // Other categories are not limited
+        tracker.send(new HitBuilders.EventBuilder().setCategory("category").setAction("action").build());
+        verify(analytics, times(8)).addEvent(any(Event.class));
+
+        ForwardingLimits limits = tracker.getForwardingLimits();
+        assertEquals(5, limits.getSampledOutCount());
+        assertEquals(3, limits.getRateLimitedCount());
+        assertEquals(Long.valueOf(5), limits.getDroppedHitCounts().get("timing"));
+        assertEquals(Long.valueOf(3), limits.getDroppedHitCounts().get("event/scroll"));
+    }
+
+    @Test
+    public void testTimingAggregation() throws Exception {
+        final List<CustomEvent> summaries = new ArrayList<>();
+        doAnswer(new Answer() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                summaries.add((CustomEvent) invocation.getArguments()[0]);
+                return null;
+            }
+        }).when(analytics).addEvent(any(Event.class));
+
+        tracker.enableTimingAggregation(1, TimeUnit.HOURS, 10);
+
+        for (int i = 1; i <= 10; i++) {
+            tracker.send(new HitBuilders.TimingBuilder().setCategory("load").setVariable("home").setValue(i * 10).build());
+        }
+        tracker.send(new HitBuilders.TimingBuilder().setCategory("load").setVariable("settings").setValue(7).build());
+
+        // Nothing is created until the window expires or the tracker is flushed
+        assertTrue(summaries.isEmpty());
+
+        tracker.flush();
+        assertEquals(2, summaries.size());
+
+        for (CustomEvent summary : summaries) {
+            EventTestUtils.validateEventValue(summary, "event_name", GoogleAnalyticsTracker.TIMING_SUMMARY_HIT_TYPE);
+            validateTrackerFields(summary);
+
+            if ("\"home\"".equals(EventTestUtils.getEventData(summary).get("properties").optMap().opt("&utv").getString())) {
+                EventTestUtils.validateNestedEventValue(summary, "properties", "count", "\"10\"");
+                EventTestUtils.validateNestedEventValue(summary, "properties", "sum", "\"550\"");
+                EventTestUtils.validateNestedEventValue(summary, "properties", "min", "\"10\"");
+                EventTestUtils.validateNestedEventValue(summary, "properties", "max", "\"100\"");
+            } else {
+                EventTestUtils.validateNestedEventValue(summary, "properties", "&utv", "\"settings\"");
+                EventTestUtils.validateNestedEventValue(summary, "properties", "count", "\"1\"");
+                EventTestUtils.validateNestedEventValue(summary, "properties", "p50", "\"7\"");
+            }
+        }
+
+        tracker.disableTimingAggregation();
+    }
+
+    @Test
+    public void testSessionRollup() throws Exception {
+        final List<CustomEvent> summaries = new ArrayList<>();
+        doAnswer(new Answer() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                summaries.add((CustomEvent) invocation.getArguments()[0]);
+                return null;
+            }
+        }).when(analytics).addEvent(any(Event.class));
+
+        tracker.enableSessionRollup(1, TimeUnit.HOURS, 2, 1);
+
+        tracker.setScreenName("home");
+        tracker.send(new HitBuilders.ScreenViewBuilder().build());
+        tracker.send(new HitBuilders.ScreenViewBuilder().build());
+        tracker.setScreenName("list");
+        tracker.send(new HitBuilders.ScreenViewBuilder().build());
+        tracker.setScreenName("detail");
+        tracker.send(new HitBuilders.ScreenViewBuilder().build());
+        tracker.send(new HitBuilders.EventBuilder().setCategory("scroll").setAction("down").build());
+        tracker.send(new HitBuilders.EventBuilder().setCategory("scroll").setAction("up").build());
+        tracker.send(new HitBuilders.EventBuilder().setCategory("share").setAction("mail").build());
+        tracker.send(new HitBuilders.TimingBuilder().setCategory("load").setVariable("home").setValue(10).build());
+        tracker.send(new HitBuilders.TimingBuilder().setCategory("load").setVariable("list").setValue(30).build());
+        tracker.send(new HitBuilders.ExceptionBuilder().setDescription("crash").setFatal(true).build());
+
+        // Nothing is created until the session ends
+        assertTrue(summaries.isEmpty());
+
+        tracker.endSession();
+        assertEquals(1, summaries.size());
+
+        CustomEvent summary = summaries.get(0);
+        EventTestUtils.validateEventValue(summary, "event_name", GoogleAnalyticsTracker.SESSION_SUMMARY_HIT_TYPE);
+        EventTestUtils.validateNestedEventValue(summary, "properties", "hit_count", "\"10\"");
+        EventTestUtils.validateNestedEventValue(summary, "properties", "screen_count", "\"3\"");
+        EventTestUtils.validateNestedEventValue(summary, "properties", "screen_path", "\"list > detail\"");
+        EventTestUtils.validateNestedEventValue(summary, "properties", "events.scroll", "\"2\"");
+        EventTestUtils.validateNestedEventValue(summary, "properties", "events.(other)", "\"1\"");
+        EventTestUtils.validateNestedEventValue(summary, "properties", "timings.load.count", "\"2\"");
+        EventTestUtils.validateNestedEventValue(summary, "properties", "timings.load.mean", "\"20\"");
+        EventTestUtils.validateNestedEventValue(summary, "properties", "timings.load.max", "\"30\"");
+        EventTestUtils.validateNestedEventValue(summary, "properties", "exception_count", "\"1\"");
+        EventTestUtils.validateNestedEventValue(summary, "properties", "fatal_exception_count", "\"1\"");
+        EventTestUtils.validateNestedEventValue(summary, "properties", "last_exception", "\"crash\"");
+
+        // A hit starting a new session ends the previous one
+        tracker.send(new HitBuilders.EventBuilder().setCategory("scroll").setAction("down").build());
+        tracker.send(new HitBuilders.EventBuilder().setCategory("scroll").setAction("down").setNewSession().build());
+        assertEquals(2, summaries.size());
+        EventTestUtils.validateNestedEventValue(summaries.get(1), "properties", "hit_count", "\"1\"");
+
+        tracker.disableSessionRollup();
+        assertEquals(3, summaries.size());
+    }
+
+    @Test
+    public void testExtenderPriorityAndHitTypes() {
+        final List<String> applied = new ArrayList<>();
+
+        GoogleAnalyticsTracker.Extender low = new RecordingExtender("low", applied);
+        GoogleAnalyticsTracker.Extender high = new RecordingExtender("high", applied);
+        GoogleAnalyticsTracker.Extender timingOnly = new RecordingExtender("timing", applied);
+        GoogleAnalyticsTracker.Extender removed = new RecordingExtender("removed", applied);
+
+        tracker.addExtender(low)
+                .addExtender(timingOnly, 5, "timing")
+                .addExtender(high, 10)
+                .addExtender(removed)
+                .removeExtender(removed);
+
+        tracker.send(new HitBuilders.ScreenViewBuilder().build());
+        assertEquals(Arrays.asList("high", "low"), applied);
+
+        applied.clear();
+        tracker.send(new HitBuilders.TimingBuilder().setCategory("category").setValue(5).build());
+        assertEquals(Arrays.asList("high", "timing", "low"), applied);
+    }
+
+    @Test
+    public void testTrackerSnapshot() {
+        final String[] expectedScreenName = { "wrapperScreen" };
+        doAnswer(new Answer() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                CustomEvent customEvent = (CustomEvent) invocation.getArguments()[0];
+                EventTestUtils.validateNestedEventValue(customEvent, "properties", "&cd", "\"" + expectedScreenName[0] + "\"");
+                validateTrackerFields(customEvent);
+                return null;
+            }
+        }).when(analytics).addEvent(any(Event.class));
+
+        tracker.setScreenName("wrapperScreen");
+
+        // Changing the Tracker directly is not picked up until the snapshot is refreshed
+        tracker.getTracker().setScreenName("directScreen");
+        tracker.send(new HitBuilders.ScreenViewBuilder().build());
+
+        expectedScreenName[0] = "directScreen";
+        tracker.refreshTrackerSnapshot();
+        tracker.send(new HitBuilders.ScreenViewBuilder().build());
+
+        verify(analytics, times(2)).addEvent(any(Event.class));
+    }
+
+    @Test
+    public void testMetrics() {
+        GoogleAnalyticsTracker.Extender extender = new GoogleAnalyticsTracker.Extender() {
+            @Override
+            public void extend(CustomEvent.Builder builder, Map<String, String> json, GoogleAnalyticsTracker tracker) {
+                if (json.containsKey("&exd")) {
+                    throw new IllegalStateException("failed");
+                }
+            }
+
+            @Override
+            public String toString() {
+                return "testExtender";
+            }
+        };
+
+        tracker.setMetricsEnabled(true)
+                .setCustomEventSink(new CountingEventSink())
+                .addExtender(extender);
+
+        tracker.send(new HitBuilders.ScreenViewBuilder().build());
+        tracker.send(new HitBuilders.ScreenViewBuilder().build());
+        tracker.send(new HitBuilders.EventBuilder().setCategory("category").setAction("action").build());
+
+        try {
+            tracker.send(new HitBuilders.ExceptionBuilder().setDescription("description").build());
+        } catch (IllegalStateException expected) {
+            // The error is still reported to the caller
+        }
+
+        MetricsSnapshot snapshot = tracker.getMetricsSnapshot();
+        assertEquals(Long.valueOf(2), snapshot.getUrbanAirshipEvents().get("screenview"));
+        assertEquals(Long.valueOf(1), snapshot.getUrbanAirshipEvents().get("event"));
+        assertEquals(3, snapshot.getConversionLatency().getCount());
+        assertEquals(3, snapshot.getSinkLatency().getCount());
+        assertEquals(4, snapshot.getExtenderLatencies().get(extender).getCount());
+        assertEquals(1, snapshot.getErrorCount());
+        assertEquals(0, snapshot.getDroppedCount());
+        assertTrue(snapshot.getGoogleAnalyticsHits().isEmpty());
+    }
+
+    @Test
+    public void testConversionReusesPropertyBuffer() {
+        tracker.setCustomEventSink(new CountingEventSink());
+        tracker.setScreenName("screenName");
+
+        Map<String, String> hit = new HitBuilders.EventBuilder().setCategory("category").setAction("action").build();
+        tracker.send(hit);
+
+        PropertyBuffer buffer = PropertyBuffer.acquire();
+        int capacity = buffer.capacity();
+        for (int i = 0; i < 100; i++) {
+            tracker.send(hit);
+        }
+
+        // Converting on this thread keeps using the same, already sized buffer
+        assertTrue(buffer == PropertyBuffer.acquire());
+        assertEquals(capacity, buffer.capacity());
+
+        // The hit type key is the shared constant, not a copy
+        tracker.collectProperties(hit, buffer, false);
+        boolean found = false;
+        for (int i = 0; i < buffer.size(); i++) {
+            if (buffer.getKey(i).equals(HitParameters.HIT_TYPE)) {
+                assertTrue(buffer.getKey(i) == HitParameters.HIT_TYPE);
+                found = true;
+            }
+        }
+        buffer.clear();
+        assertTrue(found);
+    }
+
+    @Test
+    public void testAsyncDispatchCopiesHit() throws Exception {
+        InMemoryEventSink sink = new InMemoryEventSink();
+        tracker.setCustomEventSink(sink);
+        tracker.enableAsyncDispatch(10, 5, OverflowPolicy.BLOCK);
+
+        // The caller reuses its map once send returns
+        Map<String, String> hit = new HitBuilders.EventBuilder().setCategory("first").setAction("action").build();
+        tracker.send(hit);
+        hit.put("&ec", "second");
+        tracker.send(hit);
+
+        tracker.flush();
+        List<CustomEvent> events = sink.getEvents();
+        assertEquals(2, events.size());
+        assertEquals("first", property(events.get(0), "&ec"));
+        assertEquals("second", property(events.get(1), "&ec"));
+        tracker.shutdown();
+    }
+
+    @Test
+    public void testMetricsDroppedCount() {
+        tracker.setMetricsEnabled(true).setCustomEventSink(new CountingEventSink());
+        tracker.setHitFilter(HitFilter.newBuilder()
+                .drop(HitFilter.rule("debug").hitType("event").prefix("&ec", "debug_"))
+                .build());
+        tracker.enableCoalescing(CoalescingPolicy.newBuilder()
+                .setWindow(1, TimeUnit.MINUTES)
+                .build());
+
+        tracker.send(new HitBuilders.EventBuilder().setCategory("debug_menu").setAction("open").build());
+        tracker.send(new HitBuilders.ScreenViewBuilder().build());
+        tracker.send(new HitBuilders.ScreenViewBuilder().build());
+        assertEquals(2, tracker.getMetricsSnapshot().getDroppedCount());
+
+        // Drops are kept once the filter and the coalescing are gone
+        tracker.setHitFilter(null);
+        tracker.disableCoalescing();
+        assertEquals(2, tracker.getMetricsSnapshot().getDroppedCount());
+    }
+
+    @Test
+    public void testMetricsRemovedExtender() {
+        GoogleAnalyticsTracker.Extender extender = new GoogleAnalyticsTracker.Extender() {
+            @Override
+            public void extend(CustomEvent.Builder builder, Map<String, String> json, GoogleAnalyticsTracker tracker) {}
+
+            @Override
+            public String toString() {
+                return "testExtender";
+            }
+        };
+
+        tracker.setMetricsEnabled(true)
+                .setCustomEventSink(new CountingEventSink())
+                .addExtender(extender);
+
+        tracker.send(new HitBuilders.ScreenViewBuilder().build());
+        assertEquals(1, tracker.getMetricsSnapshot().getExtenderLatencies().get(extender).getCount());
+
+        tracker.removeExtender(extender);
+        assertTrue(tracker.getMetricsSnapshot().getExtenderLatencies().isEmpty());
+    }
+
+    @Test
+    public void testMetricsExtendersWithSameName() {
+        List<String> applied = new ArrayList<>();
+        GoogleAnalyticsTracker.Extender first = new RecordingExtender("extender", applied);
+        GoogleAnalyticsTracker.Extender second = new RecordingExtender("extender", applied);
+
+        tracker.setMetricsEnabled(true)
+                .setCustomEventSink(new CountingEventSink())
+                .addExtender(first)
+                .addExtender(second);
+
+        tracker.send(new HitBuilders.ScreenViewBuilder().build());
+
+        Map<GoogleAnalyticsTracker.Extender, MetricsSnapshot.Latency> latencies = tracker.getMetricsSnapshot().getExtenderLatencies();
+        assertEquals(2, latencies.size());
+        assertEquals(1, latencies.get(first).getCount());
+        assertEquals(1, latencies.get(second).getCount());
+    }
+
+    @Test
+    public void testInMemorySink() throws Exception {
+        InMemoryEventSink sink = new InMemoryEventSink();
+        tracker.setCustomEventSink(sink);
+
+        tracker.send(new HitBuilders.EventBuilder().setCategory("category").setAction("action").build());
+        tracker.send(new HitBuilders.ScreenViewBuilder().build());
+
+        List<CustomEvent> events = sink.getEvents();
+        assertEquals(2, events.size());
+        EventTestUtils.validateEventValue(events.get(0), "event_name", "event");
+        EventTestUtils.validateEventValue(events.get(1), "event_name", "screenview");
+        verify(analytics, times(0)).addEvent(any(Event.class));
+    }
+
+    @Test
+    public void testEcommercePerItem() throws Exception {
+        InMemoryEventSink sink = new InMemoryEventSink();
+        tracker.setCustomEventSink(sink);
+        tracker.setEcommerceMode(EcommerceMode.PER_ITEM);
+
+        Map<String, String> hit = new HashMap<>();
+        hit.put("&t", "event");
+        hit.put("&pa", "purchase");
+        hit.put("&pr1id", "P1");
+        hit.put("&pr1nm", "One");
+        hit.put("&pr2id", "P2");
+        hit.put("&promo1id", "PROMO");
+        tracker.send(hit);
+
+        List<CustomEvent> events = sink.getEvents();
+        assertEquals(3, events.size());
+        EventTestUtils.validateNestedEventValue(events.get(0), "properties", "&pr.id", "\"P1\"");
+        EventTestUtils.validateNestedEventValue(events.get(0), "properties", "&pr.nm", "\"One\"");
+        EventTestUtils.validateNestedEventValue(events.get(0), "properties", "&pa", "\"purchase\"");
+        EventTestUtils.validateNestedEventValue(events.get(1), "properties", "&pr.id", "\"P2\"");
+        EventTestUtils.validateNestedEventValue(events.get(2), "properties", "&promo.id", "\"PROMO\"");
+        assertTrue(EventTestUtils.getEventData(events.get(0)).get("properties").optMap().opt("&pr1id").getString() == null);
+    }
+
+    @Test
+    public void testEcommerceStructured() throws Exception {
+        InMemoryEventSink sink = new InMemoryEventSink();
+        tracker.setCustomEventSink(sink);
+        tracker.setEcommerceMode(EcommerceMode.STRUCTURED);
+
+        Map<String, String> hit = new HashMap<>();
+        hit.put("&t", "event");
+        hit.put("&pr1id", "P1");
+        hit.put("&pr1nm", "One");
+        hit.put("&pr2id", "P2");
+        tracker.send(hit);
+
+        List<CustomEvent> events = sink.getEvents();
+        assertEquals(1, events.size());
+        EventTestUtils.validateNestedEventValue(events.get(0), "properties", "&pr.id", "[\"P1\",\"P2\"]");
+        EventTestUtils.validateNestedEventValue(events.get(0), "properties", "&pr.nm", "[\"One\",\"\"]");
+    }
+
+    @Test
+    public void testTypedProperties() throws Exception {
+        InMemoryEventSink sink = new InMemoryEventSink();
+        tracker.setCustomEventSink(sink);
+        tracker.setTypedProperties(true);
+
+        tracker.send(new HitBuilders.EventBuilder()
+                .setCategory("category")
+                .setAction("action")
+                .setValue(5)
+                .setNonInteraction(true)
+                .build());
+
+        CustomEvent event = sink.getEvents().get(0);
+        EventTestUtils.validateNestedEventValue(event, "properties", "&ev", "5");
+        EventTestUtils.validateNestedEventValue(event, "properties", "&ni", "true");
+        EventTestUtils.validateNestedEventValue(event, "properties", "&ec", "\"category\"");
+        assertEquals(0, new BigDecimal(5).compareTo(event.getEventValue()));
+    }
+
+    @Test
+    public void testFailingPrimaryTracker() {
+        Tracker primary = mock(Tracker.class);
+        Tracker additional = mock(Tracker.class);
+        Map<String, String> hit = new HitBuilders.ScreenViewBuilder().build();
+        doThrow(new IllegalStateException("failed")).when(primary).send(hit);
+
+        GoogleAnalyticsTracker uaTracker = new GoogleAnalyticsTracker(primary, additional)
+                .setGoogleAnalyticsEnabled(true)
+                .setUrbanAirshipEnabled(true);
+
+        // The additional Tracker and the UA leg still get the hit
+        uaTracker.send(hit);
+        verify(additional).send(hit);
+        verify(analytics).addEvent(any(Event.class));
+    }
+
+    @Test
+    public void testFailingPrimaryTrackerOpensCircuit() {
+        Tracker primary = mock(Tracker.class);
+        Tracker additional = mock(Tracker.class);
+        Map<String, String> hit = new HitBuilders.ScreenViewBuilder().build();
+        doThrow(new IllegalStateException("failed")).when(primary).send(hit);
+
+        GoogleAnalyticsTracker uaTracker = new GoogleAnalyticsTracker(primary, additional)
+                .setGoogleAnalyticsEnabled(true)
+                .setUrbanAirshipEnabled(false);
+        uaTracker.enableLegIsolation(IsolationPolicy.newBuilder()
+                .setFailureThreshold(2)
+                .setOpenDuration(1, TimeUnit.HOURS)
+                .build(), IsolationPolicy.newBuilder().build());
+
+        for (int i = 0; i < 2; i++) {
+            uaTracker.send(hit);
+            uaTracker.flush();
+        }
+
+        // The failures opened the GA circuit, so later hits are dropped instead of sent
+        for (int i = 0; i < 3; i++) {
+            uaTracker.send(hit);
+        }
+        uaTracker.flush();
+
+        verify(primary, times(2)).send(hit);
+        verify(additional, times(2)).send(hit);
+        assertEquals(3, uaTracker.getLegDroppedHitCount());
+        uaTracker.disableLegIsolation();
+    }
+
+    @Test
+    public void testAdditionalTrackers() {
+        InMemoryEventSink sink = new InMemoryEventSink();
+        Tracker additional = mock(Tracker.class);
+        tracker.setCustomEventSink(sink);
+        tracker.setGoogleAnalyticsEnabled(true);
+        tracker.addTracker(additional);
+
+        tracker.setScreenName("screen");
+        Map<String, String> hit = new HitBuilders.ScreenViewBuilder().build();
+        tracker.send(hit);
+
+        verify(additional).setScreenName("screen");
+        verify(additional).send(hit);
+        assertEquals(1, sink.getEvents().size());
+        assertEquals(2, tracker.getTrackers().size());
+
+        tracker.removeTracker(additional);
+        tracker.send(hit);
+        verify(additional, times(1)).send(hit);
+        assertEquals(2, sink.getEvents().size());
+    }
+
+    @Test
+    public void testLegIsolation() {
+        InMemoryEventSink sink = new InMemoryEventSink();
+        tracker.setCustomEventSink(sink);
+        tracker.enableLegIsolation(IsolationPolicy.newBuilder().build(), IsolationPolicy.newBuilder().build());
+
+        tracker.send(new HitBuilders.ScreenViewBuilder().build());
+        tracker.flush();
+        assertEquals(1, sink.getEvents().size());
+
+        tracker.disableLegIsolation();
+        tracker.send(new HitBuilders.ScreenViewBuilder().build());
+        assertEquals(2, sink.getEvents().size());
+        assertEquals(0, tracker.getLegDroppedHitCount());
+    }
+
+    @Test
+    public void testExpensiveTrackerFields() throws Exception {
+        InMemoryEventSink sink = new InMemoryEventSink();
+        tracker.setCustomEventSink(sink);
+
+        tracker.awaitExpensiveFields();
+        tracker.send(new HitBuilders.ScreenViewBuilder().build());
+        EventTestUtils.validateNestedEventValue(sink.getEvents().get(0), "properties", "&cid", "\"clientId\"");
+
+        tracker.setClientId("otherClientId");
+        tracker.awaitExpensiveFields();
+        tracker.send(new HitBuilders.ScreenViewBuilder().build());
+        EventTestUtils.validateNestedEventValue(sink.getEvents().get(1), "properties", "&cid", "\"otherClientId\"");
+    }
+
+    @Test
+    public void testDeltaEncoding() throws Exception {
+        InMemoryEventSink sink = new InMemoryEventSink();
+        tracker.setCustomEventSink(sink).setDeltaEncoding(true);
+
+        // Reference tracker converting the same hits with the full tracker fields
+        InMemoryEventSink referenceSink = new InMemoryEventSink();
+        GoogleAnalyticsTracker reference = new GoogleAnalyticsTracker(GoogleAnalytics.getInstance(RuntimeEnvironment.application).newTracker("trackingId"))
+                .setGoogleAnalyticsEnabled(false)
+                .setUrbanAirshipEnabled(true)
+                .setCustomEventSink(referenceSink);
+        reference.setAppName("appName");
+        reference.setClientId("clientId");
+
+        tracker.awaitExpensiveFields();
+        reference.awaitExpensiveFields();
+
+        for (int i = 0; i < 6; i++) {
+            if (i == 1 || i == 3) {
+                tracker.setScreenName("screen" + i);
+                reference.setScreenName("screen" + i);
+            } else if (i == 2) {
+                tracker.setAppVersion("2.0");
+                reference.setAppVersion("2.0");
+            } else if (i == 4) {
+                tracker.setAppName("otherAppName");
+                reference.setAppName("otherAppName");
+            }
+
+            Map<String, String> hit = new HitBuilders.EventBuilder().setCategory("category").setAction("action" + i).build();
+            tracker.send(hit);
+            reference.send(hit);
+        }
+
+        // One full context, then one delta per change. Screen changes stay on the events.
+        List<CustomEvent> events = sink.getEvents();
+        assertEquals(9, events.size());
+        EventTestUtils.validateEventValue(events.get(0), "event_name", GoogleAnalyticsTracker.TRACKER_CONTEXT_HIT_TYPE);
+        assertNull(property(events.get(0), GoogleAnalyticsTracker.CONTEXT_BASE_VERSION_PROPERTY));
+        EventTestUtils.validateNestedEventValue(events.get(0), "properties", "&an", "\"appName\"");
+        assertNull(property(events.get(1), "&an"));
+        EventTestUtils.validateNestedEventValue(events.get(2), "properties", "&cd", "\"screen1\"");
+        assertEquals(property(events.get(1), GoogleAnalyticsTracker.CONTEXT_VERSION_PROPERTY),
+                property(events.get(2), GoogleAnalyticsTracker.CONTEXT_VERSION_PROPERTY));
+
+        EventTestUtils.validateEventValue(events.get(6), "event_name", GoogleAnalyticsTracker.TRACKER_CONTEXT_HIT_TYPE);
+        EventTestUtils.validateNestedEventValue(events.get(6), "properties", "&an", "\"otherAppName\"");
+        assertNull(property(events.get(6), "&tid"));
+        assertNull(property(events.get(6), "&av"));
+
+        // Rebuild the full records the way the server would and compare them to the reference
+        List<String> fields = new ArrayList<>(GoogleAnalyticsTracker.TRACKER_FIELDS);
+        fields.addAll(GoogleAnalyticsTracker.EXPENSIVE_TRACKER_FIELDS);
+
+        Map<String, Map<String, String>> contexts = new HashMap<>();
+        List<Map<String, String>> rebuilt = new ArrayList<>();
+        for (CustomEvent event : events) {
+            String version = property(event, GoogleAnalyticsTracker.CONTEXT_VERSION_PROPERTY);
+            if (GoogleAnalyticsTracker.TRACKER_CONTEXT_HIT_TYPE.equals(event.getEventName())) {
+                String base = property(event, GoogleAnalyticsTracker.CONTEXT_BASE_VERSION_PROPERTY);
+                Map<String, String> context = base == null ? new HashMap<String, String>() : new HashMap<>(contexts.get(base));
+                for (String field : fields) {
+                    if (property(event, field) != null) {
+                        context.put(field, property(event, field));
+                    }
+                }
+                contexts.put(version, context);
+                continue;
+            }
+
+            Map<String, String> record = new HashMap<>(contexts.get(version));
+            record.put("&ea", property(event, "&ea"));
+            for (String field : GoogleAnalyticsTracker.SCREEN_TRACKER_FIELDS) {
+                if (property(event, field) != null) {
+                    record.put(field, property(event, field));
+                }
+            }
+            rebuilt.add(record);
+        }
+
+        List<CustomEvent> referenceEvents = referenceSink.getEvents();
+        assertEquals(referenceEvents.size(), rebuilt.size());
+        for (int i = 0; i < rebuilt.size(); i++) {
+            assertEquals(property(referenceEvents.get(i), "&ea"), rebuilt.get(i).get("&ea"));
+            for (String field : fields) {
+                assertEquals(property(referenceEvents.get(i), field), rebuilt.get(i).get(field));
+            }
+        }
+    }
+
+    @Test
+    public void testDeltaEncodingVersionsDifferAcrossTrackers() throws Exception {
+        InMemoryEventSink sink = new InMemoryEventSink();
+        tracker.setCustomEventSink(sink).setDeltaEncoding(true);
+
+        // A second tracker stands in for the next process, its counter also starts at 1
+        InMemoryEventSink otherSink = new InMemoryEventSink();
+        GoogleAnalyticsTracker other = new GoogleAnalyticsTracker(GoogleAnalytics.getInstance(RuntimeEnvironment.application).newTracker("trackingId"))
+                .setGoogleAnalyticsEnabled(false)
+                .setUrbanAirshipEnabled(true)
+                .setCustomEventSink(otherSink)
+                .setDeltaEncoding(true);
+
+        Map<String, String> hit = new HitBuilders.EventBuilder().setCategory("category").setAction("action").build();
+        tracker.send(hit);
+        other.send(hit);
+
+        String version = property(sink.getEvents().get(0), GoogleAnalyticsTracker.CONTEXT_VERSION_PROPERTY);
+        String otherVersion = property(otherSink.getEvents().get(0), GoogleAnalyticsTracker.CONTEXT_VERSION_PROPERTY);
+        assertTrue(version.endsWith("-1"));
+        assertTrue(otherVersion.endsWith("-1"));
+        assertTrue(!version.equals(otherVersion));
+    }
+
+    @Test
+    public void testHitFilter() {
+        CountingEventSink sink = new CountingEventSink();
+        tracker.setCustomEventSink(sink);
+        tracker.setHitFilter(HitFilter.newBuilder()
+                .drop(HitFilter.rule("debug-screens").hitType("screenview").prefix("&cd", "Debug"))
+                .build());
+
+        // The screen name is a tracker field, read from the snapshot
+        tracker.setScreenName("DebugMenu");
+        tracker.send(new HitBuilders.ScreenViewBuilder().build());
+        tracker.setScreenName("Home");
+        tracker.send(new HitBuilders.ScreenViewBuilder().build());
+
+        assertEquals(1, sink.getEventCount());
+        assertEquals(Long.valueOf(1), tracker.getHitFilter().getMatchCounts().get("debug-screens"));
+    }
+
+    @Test
+    public void testHitCoalescing() throws Exception {
+        InMemoryEventSink sink = new InMemoryEventSink();
+        tracker.setCustomEventSink(sink);
+        tracker.enableCoalescing(CoalescingPolicy.newBuilder()
+                .setWindow(1, TimeUnit.MINUTES)
+                .setMode(CoalescingMode.MERGE)
+                .build());
+
+        // The screen name is a tracker field, read from the snapshot
+        tracker.setScreenName("Home");
+        tracker.send(new HitBuilders.ScreenViewBuilder().build());
+        tracker.send(new HitBuilders.ScreenViewBuilder().build());
+        tracker.setScreenName("Cart");
+        tracker.send(new HitBuilders.ScreenViewBuilder().build());
+        assertTrue(sink.getEvents().isEmpty());
+
+        tracker.flush();
+        List<CustomEvent> events = sink.getEvents();
+        assertEquals(2, events.size());
+        assertEquals("Home", property(events.get(0), "&cd"));
+        assertEquals("2", property(events.get(0), GoogleAnalyticsTracker.REPEAT_COUNT_PROPERTY));
+        assertEquals("Cart", property(events.get(1), "&cd"));
+        assertEquals(1, tracker.getCoalescedHitCount());
+
+        // Merged duplicates are forwarded as the repeat count, not dropped
+        assertEquals(0, tracker.getMetricsSnapshot().getDroppedCount());
+
+        tracker.disableCoalescing();
+        tracker.send(new HitBuilders.ScreenViewBuilder().build());
+        assertEquals(3, sink.getEvents().size());
+    }
+
+    @Test
+    public void testAsyncDispatchSubmitsBatches() throws Exception {
+        final CountDownLatch held = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        CountingEventSink sink = new CountingEventSink() {
+            @Override
+            public void submit(List<CustomEvent> events) {
+                held.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.submit(events);
+            }
+        };
+
+        tracker.setCustomEventSink(sink);
+        tracker.enableAsyncDispatch(100, 50, OverflowPolicy.BLOCK);
+
+        // Hold the worker in the sink so the following hits queue up behind it
+        tracker.send(new HitBuilders.ScreenViewBuilder().build());
+        assertTrue(held.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 99; i++) {
+            tracker.send(new HitBuilders.ScreenViewBuilder().build());
+        }
+        release.countDown();
+
+        tracker.flush();
+        assertEquals(100, sink.getEventCount());
+        assertTrue(sink.getBatchCount() < sink.getEventCount());
+        tracker.shutdown();
+    }
+
+    @Test
+    public void testCreateLazily() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        InMemoryEventSink sink = new InMemoryEventSink();
+
+        GoogleAnalyticsTracker lazyTracker = GoogleAnalyticsTracker.createLazily(new GoogleAnalyticsTracker.TrackerFactory() {
+            @Override
+            public Tracker createTracker() {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return GoogleAnalytics.getInstance(RuntimeEnvironment.application).newTracker("trackingId");
+            }
+        }, 2);
+
+        lazyTracker.setGoogleAnalyticsEnabled(false).setCustomEventSink(sink);
+        lazyTracker.setScreenName("screenName");
+        lazyTracker.setAppName("appName");
+
+        // The buffer only holds the 2 newest hits
+        lazyTracker.send(new HitBuilders.EventBuilder().setCategory("dropped").build());
+        lazyTracker.send(new HitBuilders.EventBuilder().setCategory("first").build());
+        lazyTracker.send(new HitBuilders.EventBuilder().setCategory("second").build());
+
+        assertNull(lazyTracker.getTracker());
+        assertTrue(sink.getEvents().isEmpty());
+
+        release.countDown();
+        lazyTracker.onAirshipReady();
+
+        for (int i = 0; i < 100 && !lazyTracker.isReady(); i++) {
+            Thread.sleep(10);
+        }
+
+        assertTrue(lazyTracker.isReady());
+        assertEquals("screenName", lazyTracker.get("&cd"));
+
+        List<CustomEvent> events = sink.getEvents();
+        assertEquals(2, events.size());
+        EventTestUtils.validateNestedEventValue(events.get(0), "properties", "&ec", "\"first\"");
+        EventTestUtils.validateNestedEventValue(events.get(1), "properties", "&ec", "\"second\"");
+        EventTestUtils.validateNestedEventValue(events.get(1), "properties", "&cd", "\"screenName\"");
+        validateTrackerFields(events.get(1));
+        assertEquals(1, lazyTracker.getMetricsSnapshot().getDroppedCount());
+    }
+
+    @Test
+    public void testCreateLazilyFailure() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+
+        GoogleAnalyticsTracker lazyTracker = GoogleAnalyticsTracker.createLazily(new GoogleAnalyticsTracker.TrackerFactory() {
+            @Override
+            public Tracker createTracker() {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                throw new IllegalStateException("failed");
+            }
+        }, 4);
+
+        lazyTracker.setGoogleAnalyticsEnabled(false).setCustomEventSink(new CountingEventSink());
+        lazyTracker.setScreenName("first");
+        lazyTracker.send(new HitBuilders.ScreenViewBuilder().build());
+        lazyTracker.send(new HitBuilders.ScreenViewBuilder().build());
+
+        release.countDown();
+        for (int i = 0; i < 100 && !lazyTracker.isFailed(); i++) {
+            Thread.sleep(10);
+        }
+
+        assertTrue(lazyTracker.isFailed());
+        assertTrue(!lazyTracker.isReady());
+        assertEquals(2, lazyTracker.getMetricsSnapshot().getDroppedCount());
+
+        // Later hits and setters are dropped instead of piling up
+        lazyTracker.setScreenName("second");
+        lazyTracker.send(new HitBuilders.ScreenViewBuilder().build());
+        assertNull(lazyTracker.getTracker());
+        assertEquals(3, lazyTracker.getMetricsSnapshot().getDroppedCount());
+    }
+
+    @Test
+    public void testCreateLazilyKeepsScreenOfBufferedHits() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        InMemoryEventSink sink = new InMemoryEventSink();
+
+        GoogleAnalyticsTracker lazyTracker = GoogleAnalyticsTracker.createLazily(new GoogleAnalyticsTracker.TrackerFactory() {
+            @Override
+            public Tracker createTracker() {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return GoogleAnalytics.getInstance(RuntimeEnvironment.application).newTracker("trackingId");
+            }
+        }, 4);
+
+        lazyTracker.setGoogleAnalyticsEnabled(false).setCustomEventSink(sink);
+        lazyTracker.setScreenName("home");
+        lazyTracker.setTitle("Home");
+        lazyTracker.send(new HitBuilders.ScreenViewBuilder().build());
+        lazyTracker.setScreenName("cart");
+        lazyTracker.set("&dt", "Cart");
+        lazyTracker.send(new HitBuilders.ScreenViewBuilder().build());
+
+        release.countDown();
+        for (int i = 0; i < 100 && lazyTracker.getTracker() == null; i++) {
+            Thread.sleep(10);
+        }
+
+        // Buffered after the GA Tracker was created, before UA is ready
+        lazyTracker.setScreenName("checkout");
+        lazyTracker.send(new HitBuilders.ScreenViewBuilder().build());
+        lazyTracker.setScreenName("done");
+
+        lazyTracker.onAirshipReady();
+        for (int i = 0; i < 100 && !lazyTracker.isReady(); i++) {
+            Thread.sleep(10);
+        }
+
+        List<CustomEvent> events = sink.getEvents();
+        assertEquals(3, events.size());
+        EventTestUtils.validateNestedEventValue(events.get(0), "properties", "&cd", "\"home\"");
+        EventTestUtils.validateNestedEventValue(events.get(0), "properties", "&dt", "\"Home\"");
+        EventTestUtils.validateNestedEventValue(events.get(1), "properties", "&cd", "\"cart\"");
+        EventTestUtils.validateNestedEventValue(events.get(1), "properties", "&dt", "\"Cart\"");
+        EventTestUtils.validateNestedEventValue(events.get(2), "properties", "&cd", "\"checkout\"");
+    }
+
+    @Test
+    public void testCreateLazilyKeepsLastSetterCall() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+
+        GoogleAnalyticsTracker lazyTracker = GoogleAnalyticsTracker.createLazily(new GoogleAnalyticsTracker.TrackerFactory() {
+            @Override
+            public Tracker createTracker() {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return GoogleAnalytics.getInstance(RuntimeEnvironment.application).newTracker("trackingId");
+            }
+        }, 2);
+
+        lazyTracker.setScreenName("first");
+        lazyTracker.set("&cd", "second");
+        lazyTracker.setScreenName("third");
+        lazyTracker.setAppName("appName");
+
+        release.countDown();
+        for (int i = 0; i < 100 && lazyTracker.getTracker() == null; i++) {
+            Thread.sleep(10);
+        }
+
+        assertEquals("third", lazyTracker.get("&cd"));
+        assertEquals("appName", lazyTracker.get("&an"));
+    }
+
+    @Test
+    public void testAsyncDispatch() {
+        tracker.enableAsyncDispatch(10, 5, OverflowPolicy.BLOCK);
+
+        for (int i = 0; i < 20; i++) {
+            tracker.send(new HitBuilders.ScreenViewBuilder().build());
+        }
+
+        tracker.flush();
+        verify(analytics, times(20)).addEvent(any(Event.class));
+
+        tracker.shutdown();
+        tracker.send(new HitBuilders.ScreenViewBuilder().build());
+        verify(analytics, times(21)).addEvent(any(Event.class));
+    }
+
+    @Test
+    public void testAsyncDispatchDropNewest() throws Exception {
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        tracker.addExtender(new GoogleAnalyticsTracker.Extender() {
+            @Override
+            public void extend(CustomEvent.Builder builder, Map<String, String> json, GoogleAnalyticsTracker tracker) {
+                entered.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+
+        tracker.enableAsyncDispatch(1, 1, OverflowPolicy.DROP_NEWEST);
+
+        // First hit occupies the worker, second fills the queue, third is dropped
+        tracker.send(new HitBuilders.ScreenViewBuilder().build());
+        entered.await();
+        tracker.send(new HitBuilders.ScreenViewBuilder().build());
+        tracker.send(new HitBuilders.ScreenViewBuilder().build());
+        release.countDown();
+
+        tracker.flush();
+        assertEquals(1, tracker.getAsyncDroppedHitCount());
+        verify(analytics, times(2)).addEvent(any(Event.class));
+        tracker.shutdown();
+    }
+
+    @Test
+    public void testAsyncDispatchKeepsFieldsOfSend() throws Exception {
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        InMemoryEventSink sink = new InMemoryEventSink();
+        tracker.setCustomEventSink(sink);
+
+        tracker.addExtender(new GoogleAnalyticsTracker.Extender() {
+            @Override
+            public void extend(CustomEvent.Builder builder, Map<String, String> json, GoogleAnalyticsTracker tracker) {
+                entered.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+
+        tracker.enableAsyncDispatch(10, 1, OverflowPolicy.BLOCK);
+
+        // The second hit waits in the queue while the screen changes
+        tracker.setScreenName("first");
+        tracker.send(new HitBuilders.ScreenViewBuilder().build());
+        entered.await();
+        tracker.setScreenName("second");
+        tracker.send(new HitBuilders.ScreenViewBuilder().build());
+        tracker.setScreenName("third");
+        release.countDown();
+
+        tracker.flush();
+        List<CustomEvent> events = sink.getEvents();
+        assertEquals(2, events.size());
+        assertEquals("first", property(events.get(0), "&cd"));
+        assertEquals("second", property(events.get(1), "&cd"));
+        tracker.shutdown();
+    }
+
+    @Test
+    public void testAsyncDispatchShutdownConvertsAcceptedHits() throws Exception {
+        CountingEventSink sink = new CountingEventSink();
+        tracker.setCustomEventSink(sink);
+        tracker.enableAsyncDispatch(1000, 10, OverflowPolicy.BLOCK);
+
+        final int threads = 4;
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 250; i++) {
+                        tracker.send(new HitBuilders.ScreenViewBuilder().build());
+                    }
+                    done.countDown();
+                }
+            }).start();
+        }
+
+        // Hits racing the shutdown are either converted by the worker or on the sending thread
+        tracker.shutdown();
+        done.await();
+        assertEquals(1000, sink.getEventCount());
+    }
+
+    private static class RecordingExtender implements GoogleAnalyticsTracker.Extender {
+        private final String name;
+        private final List<String> applied;
+
+        RecordingExtender(String name, List<String> applied) {
+            this.name = name;
+            this.applied = applied;
+        }
+
+        @Override
+        public void extend(CustomEvent.Builder builder, Map<String, String> json, GoogleAnalyticsTracker tracker) {
+            applied.add(name);
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    private static String property(CustomEvent customEvent, String key) throws Exception {
+        return EventTestUtils.getEventData(customEvent).get("properties").optMap().opt(key).getString();
+    }
+
     private void validateTrackerFields(CustomEvent customEvent) throws Exception {
         EventTestUtils.validateNestedEventValue(customEvent, "properties", "&an", "\"appName\"");
         EventTestUtils.validateNestedEventValue(customEvent, "properties", "&tid", "\"trackingId\"");